@@ -0,0 +1,36 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so every result also shows the allocation rate
+ * and the bytes allocated per operation. Results are also written to jmh-result.json, to be
+ * compared with an earlier run. Accepts the same arguments as the standard JMH main class,
+ * for example a benchmark name pattern or -p shapeCount=1000 to choose parameters.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public class BenchmarkMain {
+
+    /**
+     * Run the benchmarks.
+     * @param args JMH command line options.
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("jmh-result.json")
+                .build();
+        new Runner(options).run();
+    }
+}
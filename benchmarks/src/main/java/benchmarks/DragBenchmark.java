@@ -0,0 +1,139 @@
+package benchmarks;
+
+import model.DrawingHandler;
+import model.Shape;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import view.DrawingPanel;
+import javax.swing.SwingUtilities;
+import java.awt.Graphics2D;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of one mouseDragged event while a shape is being drawn over an existing drawing,
+ * with and without painting the area the event changes. Events are dispatched on the event
+ * dispatch thread like real mouse events, so the panel's frame timer runs as it does for a user;
+ * edtRoundTrip() measures the cost of getting onto that thread, to subtract from the other results.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true", "-Dsun.java2d.renderer.clip.subdivider=false"})
+public class DragBenchmark {
+    private static final int START_X = 400; // where the drag starts
+    private static final int START_Y = 300;
+
+    @Param({"0", "10000", "100000"})
+    private int shapeCount;
+
+    @Param({"rectangleBtn", "ellipseBtn"})
+    private String tool;
+
+    private DrawingHandler handler;
+    private DrawingPanel panel;
+    private BufferedImage image;
+    private Graphics2D g2d;
+    private MouseEvent[] drags; // the drag events, moving back and forth
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException, InvocationTargetException {
+        handler = Scenes.drawing(shapeCount, 8, "object");
+        image = new BufferedImage(Scenes.WIDTH, Scenes.HEIGHT, BufferedImage.TYPE_INT_RGB);
+        g2d = image.createGraphics();
+        SwingUtilities.invokeAndWait(() -> {
+            panel = new DrawingPanel(handler);
+            panel.setSize(Scenes.WIDTH, Scenes.HEIGHT);
+            panel.paint(g2d); // draw the cached image once
+            panel.buttonSelected(tool);
+            drags = new MouseEvent[64];
+            for (int i = 0; i < drags.length; i++) {
+                int step = i < drags.length / 2 ? i : drags.length - i;
+                drags[i] = new MouseEvent(panel, MouseEvent.MOUSE_DRAGGED, 0, InputEvent.BUTTON1_DOWN_MASK,
+                        START_X + 10 * step, START_Y + 6 * step, 0, false);
+            }
+            MouseEvent press = new MouseEvent(panel, MouseEvent.MOUSE_PRESSED, 0, 0, START_X, START_Y, 1, false,
+                    MouseEvent.BUTTON1);
+            for (MouseListener listener : panel.getMouseListeners()) {
+                listener.mousePressed(press);
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        g2d.dispose();
+    }
+
+    /**
+     * Handle one mouseDragged event.
+     */
+    @Benchmark
+    public void drag() throws InterruptedException, InvocationTargetException {
+        SwingUtilities.invokeAndWait(this::dispatchDrag);
+    }
+
+    /**
+     * Handle one mouseDragged event and paint the area covered by the shape being drawn.
+     */
+    @Benchmark
+    public void dragAndPaint() throws InterruptedException, InvocationTargetException {
+        SwingUtilities.invokeAndWait(() -> {
+            Shape before = handler.getCurrentShape();
+            int minX = before == null ? START_X : before.getX();
+            int minY = before == null ? START_Y : before.getY();
+            int maxX = before == null ? START_X : minX + before.getWidth();
+            int maxY = before == null ? START_Y : minY + before.getHeight();
+            dispatchDrag();
+            Shape after = handler.getCurrentShape();
+            if (after != null) {
+                minX = Math.min(minX, after.getX());
+                minY = Math.min(minY, after.getY());
+                maxX = Math.max(maxX, after.getX() + after.getWidth());
+                maxY = Math.max(maxY, after.getY() + after.getHeight());
+            }
+            // paint the same area that the panel asks to repaint
+            Graphics2D clipped = (Graphics2D) g2d.create(minX - 2, minY - 2, maxX - minX + 5, maxY - minY + 5);
+            clipped.translate(-(minX - 2), -(minY - 2));
+            panel.paint(clipped);
+            clipped.dispose();
+        });
+    }
+
+    /**
+     * Get onto the event dispatch thread and back, without doing anything there.
+     */
+    @Benchmark
+    public void edtRoundTrip() throws InterruptedException, InvocationTargetException {
+        SwingUtilities.invokeAndWait(() -> { });
+    }
+
+    private void dispatchDrag() {
+        MouseEvent drag = drags[next];
+        next = (next + 1) % drags.length;
+        for (MouseMotionListener listener : panel.getMouseMotionListeners()) {
+            listener.mouseDragged(drag);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package benchmarks;
+
+import model.Command;
+import model.DrawingHandler;
+import model.Shape;
+import model.SimpleColour;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the changes a user makes to a drawing through the DrawingHandler: adding a shape,
+ * undoing and redoing it, and clearing the canvas and undoing the clear, on drawings of 1K to 10M shapes.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+public class HandlerBenchmark {
+    private static final int NEW_SHAPES = 1024; // shapes which are added in turn by addShape()
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int shapeCount;
+
+    @Param({"object", "primitive", "compressed"})
+    private String store;
+
+    @Param({"8"})
+    private int colourCount;
+
+    private DrawingHandler handler;
+    private Shape[] newShapes;
+    private int next;
+
+    /**
+     * Build the drawing again before every iteration, since addShape() makes it grow.
+     */
+    @Setup(Level.Iteration)
+    public void setup() {
+        handler = Scenes.drawing(shapeCount, colourCount, store);
+        SimpleColour[] colours = Scenes.colours(colourCount);
+        Random random = new Random(Scenes.SEED + 1);
+        newShapes = new Shape[NEW_SHAPES];
+        for (int i = 0; i < NEW_SHAPES; i++) {
+            newShapes[i] = Scenes.randomShape(random, colours);
+        }
+        handler.addShape(newShapes[0].copy()); // so there is something to undo
+    }
+
+    /**
+     * Add a copy of a shape, as the panel does when the user releases the mouse.
+     */
+    @Benchmark
+    public void addShape() {
+        handler.addShape(newShapes[next].copy());
+        next = (next + 1) % NEW_SHAPES;
+    }
+
+    /**
+     * Undo the last added shape and redo it again.
+     * @return the redone command.
+     */
+    @Benchmark
+    public Command undoRedo() {
+        handler.undo();
+        return handler.redo();
+    }
+
+    /**
+     * Clear every shape and undo the clear.
+     * @return the undone command.
+     */
+    @Benchmark
+    public Command clearUndo() {
+        handler.clearShapes();
+        return handler.undo();
+    }
+}
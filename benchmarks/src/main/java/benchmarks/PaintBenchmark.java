@@ -0,0 +1,153 @@
+package benchmarks;
+
+import model.DrawingHandler;
+import model.Shape;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import view.DrawingPanel;
+import view.ShapeBatchRenderer;
+import view.TileRenderer;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures painting a drawing of mixed shape types and colours into an offscreen image:
+ * DrawingPanel.paintComponent() with an up to date cached image, paintComponent() when the
+ * whole cached image has to be redrawn, drawing every shape serially and in parallel tiles, and picking
+ * the shape under a pixel.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true", "-Dsun.java2d.renderer.clip.subdivider=false"})
+public class PaintBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int shapeCount;
+
+    @Param({"8", "64"})
+    private int colourCount;
+
+    private DrawingPanel panel;
+    private List<Shape> shapes;
+    private BufferedImage image;
+    private Graphics2D g2d;
+    private ShapeBatchRenderer renderer;
+    private TileRenderer tileRenderer;
+    private boolean resized;
+    private int pickPixel; // pixel picked last, counted row by row
+
+    @Setup(Level.Trial)
+    public void setup() {
+        DrawingHandler handler = Scenes.drawing(shapeCount, colourCount, "object");
+        shapes = handler.getShapes();
+        panel = new DrawingPanel(handler);
+        panel.setSize(Scenes.WIDTH, Scenes.HEIGHT);
+        image = new BufferedImage(Scenes.WIDTH, Scenes.HEIGHT, BufferedImage.TYPE_INT_RGB);
+        g2d = image.createGraphics();
+        renderer = new ShapeBatchRenderer();
+        tileRenderer = new TileRenderer();
+        panel.paint(g2d); // draw the cached image once
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        g2d.dispose();
+    }
+
+    /**
+     * Paint the panel when nothing has changed, which copies the cached image.
+     */
+    @Benchmark
+    public void paintCached() {
+        panel.paint(g2d);
+    }
+
+    /**
+     * Paint the panel after it has been resized, which redraws the whole cached image.
+     */
+    @Benchmark
+    public void paintResized() {
+        // alternate between two heights so that every paint sees a new size
+        resized = !resized;
+        panel.setSize(Scenes.WIDTH, Scenes.HEIGHT - (resized ? 1 : 0));
+        panel.paint(g2d);
+    }
+
+    /**
+     * Paint the panel zoomed out to an eighth after zooming, which redraws the whole cached image
+     * with the smallest shapes as dots.
+     */
+    @Benchmark
+    public void paintZoomedOut() {
+        // alternate between two nearby zooms so that every paint redraws
+        resized = !resized;
+        panel.resetZoom();
+        panel.zoom(resized ? 0.125 : 0.126, 0, 0);
+        panel.paint(g2d);
+    }
+
+    /**
+     * Paint the panel after panning, which moves the cached image and draws the uncovered edges.
+     */
+    @Benchmark
+    public void paintPanned() {
+        resized = !resized;
+        panel.pan(resized ? 8 : -8, resized ? 8 : -8);
+        panel.paint(g2d);
+    }
+
+    /**
+     * Find the topmost shape under a pixel, stepping across the panel so every tile of the pick buffer is used.
+     * @return the shape, so the lookup is not optimised away.
+     */
+    @Benchmark
+    public Shape pick() {
+        pickPixel = (pickPixel + 7919) % (Scenes.WIDTH * Scenes.HEIGHT);
+        return panel.getShapeAt(pickPixel % Scenes.WIDTH, pickPixel / Scenes.WIDTH);
+    }
+
+    /**
+     * Draw every shape on the calling thread.
+     */
+    @Benchmark
+    public void renderSerial() {
+        clear();
+        renderer.render(g2d, shapes);
+    }
+
+    /**
+     * Draw every shape in parallel tiles.
+     */
+    @Benchmark
+    public void renderTiled() {
+        clear();
+        tileRenderer.render(image, new Rectangle(0, 0, Scenes.WIDTH, Scenes.HEIGHT), shapes);
+    }
+
+    private void clear() {
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, Scenes.WIDTH, Scenes.HEIGHT);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    }
+}
@@ -0,0 +1,88 @@
+package benchmarks;
+
+import model.CompressedShapeStore;
+import model.DrawingHandler;
+import model.ObjectShapeStore;
+import model.PrimitiveShapeStore;
+import model.Shape;
+import model.ShapeStore;
+import model.ShapeType;
+import model.SimpleColour;
+import java.util.Random;
+
+/**
+ * Builds synthetic drawings for the benchmarks. A scene is a mix of every type of shape with
+ * colours from a small set, spread over a canvas. Most shapes are small, like shapes drawn by hand,
+ * and one in a hundred covers a large part of the canvas. The same seed always gives the same scene.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public final class Scenes {
+    public static final int WIDTH = 1920; // canvas width of every scene
+    public static final int HEIGHT = 1080; // canvas height of every scene
+    public static final long SEED = 42;
+
+    private static final int SMALL_SIZE = 100; // largest width and height of most shapes
+    private static final int LARGE_SIZE = 800; // largest width and height of the large shapes
+
+    private Scenes() {
+        // only static methods
+    }
+
+    /**
+     * Create a random shape inside the canvas.
+     * @param random the source of randomness.
+     * @param colours the colours to choose from.
+     * @return a new shape with a random type, position, size, border and fill colour.
+     */
+    public static Shape randomShape(Random random, SimpleColour[] colours) {
+        ShapeType[] types = ShapeType.values();
+        int size = random.nextInt(100) == 0 ? LARGE_SIZE : SMALL_SIZE;
+        int x = random.nextInt(WIDTH);
+        int y = random.nextInt(HEIGHT);
+        Shape shape = types[random.nextInt(types.length)].create(x, y,
+                Math.min(x + random.nextInt(size), WIDTH - 1), Math.min(y + random.nextInt(size), HEIGHT - 1));
+        shape.setBorderColour(colours[random.nextInt(colours.length)]);
+        shape.setFillColour(colours[random.nextInt(colours.length)]);
+        return shape;
+    }
+
+    /**
+     * Create a set of distinct colours.
+     * @param count number of colours.
+     * @return the colours.
+     */
+    public static SimpleColour[] colours(int count) {
+        Random random = new Random(SEED);
+        SimpleColour[] colours = new SimpleColour[count];
+        for (int i = 0; i < count; i++) {
+            colours[i] = new SimpleColour(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+        }
+        return colours;
+    }
+
+    /**
+     * Create a drawing holding a random scene.
+     * @param shapeCount number of shapes in the scene.
+     * @param colourCount number of different colours used by the shapes.
+     * @param store "primitive" to keep the shapes in a PrimitiveShapeStore, "compressed" for a
+     *              CompressedShapeStore, anything else for an ObjectShapeStore.
+     * @return a handler with every shape of the scene visible and no undo history.
+     */
+    public static DrawingHandler drawing(int shapeCount, int colourCount, String store) {
+        SimpleColour[] colours = colours(colourCount);
+        Random random = new Random(SEED);
+        ShapeStore shapes;
+        if (store.equals("primitive")) {
+            shapes = new PrimitiveShapeStore(shapeCount);
+        } else if (store.equals("compressed")) {
+            shapes = new CompressedShapeStore();
+        } else {
+            shapes = new ObjectShapeStore();
+        }
+        for (int i = 0; i < shapeCount; i++) {
+            shapes.add(randomShape(random, colours));
+        }
+        return new DrawingHandler(shapes);
+    }
+}
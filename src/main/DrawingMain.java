@@ -1,6 +1,17 @@
 package main;
 
+import model.AutosaveJournal;
+import model.DrawingHandler;
+import net.DrawingServer;
 import view.DrawingGUIView;
+import view.DrawingRasterizer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This class is the entry point for the program.
@@ -12,9 +23,126 @@ public class DrawingMain {
     /**
      * The main method for the program.
      * A new graphical user interface for the drawing application is created here.
-     * @param args - no command line arguments are needed for this program.
+     * If the previous session did not finish, its drawing is recovered from the autosave. A window showing a
+     * shared drawing does not autosave, and leaves the autosave of an unfinished session to be recovered later.
+     * With the arguments --render in.vgd out.png [in2.vgd out2.png ...] [--size WxH] no window
+     * is shown, and the drawing files are written as PNG images instead.
+     * With --serve PORT no window is shown, and a new drawing is shared on the port until the program is stopped.
+     * With --host PORT the drawing is shared on the port and shown in a window, and with --connect HOST:PORT
+     * the window shows a drawing shared by another program.
+     * @param args - no command line arguments are needed to start the drawing program.
      */
     public static void main(String[] args) {
-        DrawingGUIView gui = new DrawingGUIView();
+        // Curves cut by a clip must be drawn exactly as uncut ones, so parallel tiles match a serial drawing.
+        // Must be set before anything is drawn, since the rasterizer reads it once.
+        System.setProperty("sun.java2d.renderer.clip.subdivider", "false");
+        if (args.length > 0 && args[0].equals("--render")) {
+            System.exit(render(args));
+        }
+        InetSocketAddress shared = null; // address of the shared drawing to show, or null
+        if (args.length == 2 && (args[0].equals("--serve") || args[0].equals("--host"))) {
+            DrawingServer server = startServer(args[1]);
+            if (server == null) {
+                System.exit(1);
+            }
+            if (args[0].equals("--serve")) {
+                return; // the server's thread keeps running
+            }
+            shared = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+        } else if (args.length == 2 && args[0].equals("--connect")) {
+            int colon = args[1].lastIndexOf(':');
+            try {
+                shared = new InetSocketAddress(args[1].substring(0, colon), Integer.parseInt(args[1].substring(colon + 1)));
+            } catch (IllegalArgumentException | StringIndexOutOfBoundsException e) {
+                System.err.println("Usage: --connect HOST:PORT");
+                System.exit(2);
+            }
+        }
+        AutosaveJournal autosave = null;
+        DrawingHandler dh = null;
+        // The shared drawing replaces the local one, so recovering into it would throw the recovered shapes away
+        if (shared == null) {
+            try {
+                autosave = AutosaveJournal.open(AutosaveJournal.defaultDirectory()); // null if another window autosaves
+                if (autosave != null) {
+                    dh = autosave.recover();
+                }
+            } catch (IOException e) {
+                System.err.println("Could not recover autosave: " + e.getMessage());
+            }
+        }
+        if (dh == null) {
+            dh = new DrawingHandler();
+        }
+        DrawingGUIView gui = new DrawingGUIView(dh, autosave);
+        if (shared != null) {
+            try {
+                gui.shareDrawing(shared);
+            } catch (IOException e) {
+                System.err.println("Could not connect to the shared drawing: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Share a new drawing with the windows which connect to a port.
+     * @param port the port number, 0 for any free port.
+     * @return the running server, or null if it could not be started.
+     */
+    private static DrawingServer startServer(String port) {
+        try {
+            DrawingServer server = DrawingServer.start(new InetSocketAddress(Integer.parseInt(port)), new DrawingHandler());
+            System.out.println("Sharing a drawing on port " + server.getPort());
+            return server;
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println("Could not share a drawing: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Rasterize drawing files without showing a window.
+     * @param args the command line arguments, starting with --render.
+     * @return the exit status, 0 if every file was written.
+     */
+    private static int render(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        List<Path> inputs = new ArrayList<>();
+        List<Path> outputs = new ArrayList<>();
+        int width = 0;
+        int height = 0;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--size") && i + 1 < args.length) {
+                String[] size = args[++i].split("x");
+                try {
+                    width = Integer.parseInt(size[0]);
+                    height = Integer.parseInt(size[1]);
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    width = 0;
+                }
+                if (width <= 0 || height <= 0) {
+                    return usage();
+                }
+            } else if (i + 1 < args.length && !args[i + 1].equals("--size")) {
+                inputs.add(Paths.get(args[i]));
+                outputs.add(Paths.get(args[++i]));
+            } else {
+                return usage();
+            }
+        }
+        if (inputs.isEmpty()) {
+            return usage();
+        }
+        return DrawingRasterizer.renderFiles(inputs, outputs, width, height) == 0 ? 0 : 1;
+    }
+
+    /**
+     * Print how to use the command line arguments.
+     * @return the exit status for wrong arguments.
+     */
+    private static int usage() {
+        System.err.println("Usage: --render in.vgd out.png [in2.vgd out2.png ...] [--size WIDTHxHEIGHT]");
+        System.err.println("       --serve PORT | --host PORT | --connect HOST:PORT");
+        return 2;
     }
 }
@@ -0,0 +1,45 @@
+package model;
+
+/**
+ * The command for adding a shape on top of the visible shapes.
+ * Undoing it hides the shape again, and redoing it makes it visible again.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public class AddShapeCommand extends Command {
+    private final Shape shape; // the added shape
+    private int position; // position of the shape in the store
+
+    /**
+     * Create the command for a shape which was added at a store position.
+     * @param shape the added shape.
+     * @param position position of the shape in the store.
+     */
+    AddShapeCommand(Shape shape, int position) {
+        this.shape = shape;
+        this.position = position;
+    }
+
+    /**
+     * Get the shape which was added.
+     * @return the added shape.
+     */
+    public Shape getShape() {
+        return shape;
+    }
+
+    @Override
+    void undo(DrawingHandler handler) {
+        handler.setVisibleRange(handler.getVisibleStart(), position);
+    }
+
+    @Override
+    void redo(DrawingHandler handler) {
+        handler.setVisibleRange(handler.getVisibleStart(), position + 1);
+    }
+
+    @Override
+    void shiftPositions(int count) {
+        position -= count;
+    }
+}
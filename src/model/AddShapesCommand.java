@@ -0,0 +1,63 @@
+package model;
+
+/**
+ * The command for adding a run of shapes on top of the visible shapes at once, such as an imported drawing.
+ * Undoing it hides all of the shapes again, and redoing it makes them all visible again.
+ * A run added in several batches is extended by each batch, so it is undone in one step.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public class AddShapesCommand extends Command {
+    private int start; // store position of the first added shape
+    private int end; // store position after the last added shape
+
+    /**
+     * Create the command for shapes which were added at a range of store positions.
+     * @param start store position of the first added shape.
+     * @param end store position after the last added shape.
+     */
+    AddShapesCommand(int start, int end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Get the number of shapes which were added.
+     * @return number of added shapes.
+     */
+    public int getAddedCount() {
+        return end - start;
+    }
+
+    /**
+     * Get the store position after the last added shape.
+     * @return store position.
+     */
+    int getEnd() {
+        return end;
+    }
+
+    /**
+     * Include shapes which were added right after the last shape of this command.
+     * @param newEnd store position after the last added shape.
+     */
+    void extend(int newEnd) {
+        end = newEnd;
+    }
+
+    @Override
+    void undo(DrawingHandler handler) {
+        handler.setVisibleRange(handler.getVisibleStart(), start);
+    }
+
+    @Override
+    void redo(DrawingHandler handler) {
+        handler.setVisibleRange(handler.getVisibleStart(), end);
+    }
+
+    @Override
+    void shiftPositions(int count) {
+        start -= count;
+        end -= count;
+    }
+}
@@ -0,0 +1,489 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * The AutosaveJournal keeps an on-disk copy of a drawing so that it can be recovered after a crash.
+ * Every change to the DrawingHandler's store is encoded as it happens and appended to a journal file
+ * by a background thread, which writes the changes in batches and forces them to disk a few times a
+ * second, so the thread making the changes never waits for the disk.
+ * <p>
+ * The journal starts from a checkpoint, a drawing file holding every stored shape. Once the journal
+ * holds more changes than there are stored shapes a new checkpoint is written and the old journal is
+ * deleted, so the cost of writing checkpoints is spread over the changes and does not grow with the
+ * size of the drawing. Each checkpoint and its journal share a generation number; a journal file is
+ * only created after its checkpoint is complete, so the newest journal always has a valid checkpoint.
+ * Checkpoints are written from a DrawingSnapshot, so the drawing is not copied by the thread changing it.
+ * <p>
+ * If a file cannot be written, the failure listener is told and the changes are dropped until the next
+ * checkpoint, such as the one written when another drawing is attached, which starts a new generation.
+ * <p>
+ * The journal files are deleted when the journal is closed. Files which are still there when the
+ * program starts belong to a session which did not finish, and recover() replays them.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public class AutosaveJournal implements StoreListener {
+    private static final int FLUSH_MILLIS = 200; // time between writes to the journal file
+    private static final int MIN_CHECKPOINT_CHANGES = 10000; // changes before a new checkpoint is considered
+    private static final int JOURNAL_MAGIC = 0x56474A4C; // "VGJL"
+    private static final int MAX_FRAME_BYTES = 1 << 28;
+    private static final byte APPEND = 1;
+    private static final byte RANGE = 2;
+    private static final byte COMPACT = 3;
+
+    private final Path directory;
+    private final FileChannel lockChannel;
+    private final FileLock fileLock; // stops a second program from using the same directory
+    private final Object lock = new Object(); // guards pending, current and closed
+    private List<Batch> pending; // batches waiting for the writer thread, current is the last one
+    private Batch current; // batch which new changes are encoded into
+    private boolean closed;
+    private final Thread writer;
+
+    private DrawingHandler handler; // the drawing being saved
+    private volatile Consumer<IOException> failureListener; // told when saving stops, or null
+    private int changesSinceCheckpoint;
+
+    // Only used by the writer thread
+    private FileChannel journalChannel;
+    private int generation;
+    private boolean failed; // true after a write failed, until the next checkpoint is written
+
+    /**
+     * Create an AutosaveJournal which has locked its directory.
+     */
+    private AutosaveJournal(Path directory, FileChannel lockChannel, FileLock fileLock) {
+        this.directory = directory;
+        this.lockChannel = lockChannel;
+        this.fileLock = fileLock;
+        current = new Batch(null);
+        pending = new ArrayList<>();
+        pending.add(current);
+        generation = findLatestGeneration(directory);
+        writer = new Thread(this::writeLoop, "autosave-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Get the default directory for autosave files, in the user's home directory.
+     * @return path of the directory.
+     */
+    public static Path defaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".vector-drawing-autosave");
+    }
+
+    /**
+     * Open the autosave journal in a directory, creating the directory if needed.
+     * @param directory the directory for the checkpoint and journal files.
+     * @return the journal, or null if another program is already using the directory.
+     * @throws IOException if the directory cannot be used.
+     */
+    public static AutosaveJournal open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        FileChannel lockChannel = FileChannel.open(directory.resolve("autosave.lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock fileLock = lockChannel.tryLock();
+        if (fileLock == null) {
+            lockChannel.close();
+            return null;
+        }
+        return new AutosaveJournal(directory, lockChannel, fileLock);
+    }
+
+    /**
+     * Rebuild the drawing of a session which did not finish from its newest checkpoint and journal.
+     * Must be called before attach().
+     * @return the recovered drawing, or null if there is nothing to recover.
+     * @throws IOException if the files cannot be read.
+     */
+    public DrawingHandler recover() throws IOException {
+        int latest = findLatestGeneration(directory);
+        if (latest == 0) {
+            return null;
+        }
+        DrawingHandler recovered = new DrawingHandler(DrawingFile.read(checkpointPath(latest)));
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalPath(latest))))) {
+            if (in.readInt() != JOURNAL_MAGIC) {
+                throw new IOException("Not an autosave journal: " + journalPath(latest));
+            }
+            recovered.applyVisibleRange(in.readInt(), in.readInt());
+            CRC32 crc = new CRC32();
+            while (true) {
+                // Stop at the first incomplete or damaged frame, it was being written during the crash
+                int length;
+                int checksum;
+                byte[] frame;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if (length < 0 || length > MAX_FRAME_BYTES) {
+                        break;
+                    }
+                    frame = new byte[length];
+                    in.readFully(frame);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(frame);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                try {
+                    replay(ByteBuffer.wrap(frame), recovered);
+                } catch (RuntimeException e) {
+                    break; // the frame does not fit the drawing, keep the changes before it
+                }
+            }
+        }
+        return recovered;
+    }
+
+    /**
+     * Start saving a drawing. A checkpoint of the drawing is written first, then every change to it.
+     * If another drawing was attached before, its changes are no longer saved.
+     * If autosaving stopped after a failure, it starts again from this checkpoint.
+     * Must be called on the thread which changes the drawing.
+     * @param drawing the drawing to save.
+     */
+    public void attach(DrawingHandler drawing) {
+        if (handler != null) {
+            handler.removeStoreListener(this);
+        }
+        handler = drawing;
+        handler.addStoreListener(this);
+        checkpoint();
+    }
+
+    /**
+     * Set the listener which is told when a file cannot be written and autosaving stops until the next checkpoint.
+     * The listener is told on the writer thread, once for each time autosaving stops.
+     * @param listener the listener, or null.
+     */
+    public void setFailureListener(Consumer<IOException> listener) {
+        failureListener = listener;
+    }
+
+    /**
+     * Write the remaining changes, stop the writer thread and delete the journal files,
+     * since the session has finished normally.
+     * @throws IOException if the journal files cannot be removed.
+     */
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (handler != null) {
+            handler.removeStoreListener(this);
+        }
+        closeJournalChannel();
+        deleteGenerationsBelow(Integer.MAX_VALUE);
+        fileLock.release();
+        lockChannel.close();
+    }
+
+    @Override
+    public void shapeAppended(int position, Shape shape) {
+        synchronized (lock) {
+            try {
+                DataOutputStream out = current.out;
+                out.writeByte(APPEND);
+                out.writeInt(position);
+                out.writeByte(shape.getType().ordinal());
+                out.writeInt(shape.getStartX());
+                out.writeInt(shape.getStartY());
+                out.writeInt(shape.getEndX());
+                out.writeInt(shape.getEndY());
+                out.writeInt(shape.getBorderColour().getRGB());
+                out.writeInt(shape.getFillColour().getRGB());
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // writing to memory cannot fail
+            }
+        }
+        changed();
+    }
+
+    @Override
+    public void visibleRangeChanged(int start, int end) {
+        synchronized (lock) {
+            try {
+                current.out.writeByte(RANGE);
+                current.out.writeInt(start);
+                current.out.writeInt(end);
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // writing to memory cannot fail
+            }
+        }
+        changed();
+    }
+
+    @Override
+    public void storeCompacted(int count) {
+        synchronized (lock) {
+            try {
+                current.out.writeByte(COMPACT);
+                current.out.writeInt(count);
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // writing to memory cannot fail
+            }
+        }
+        changed();
+    }
+
+    /**
+     * Count a change and start a new checkpoint once the journal holds more changes than there are shapes.
+     */
+    private void changed() {
+        changesSinceCheckpoint++;
+        if (changesSinceCheckpoint > Math.max(MIN_CHECKPOINT_CHANGES, handler.getStoreSize())) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Take a snapshot of the drawing and queue it as a new checkpoint. Later changes go into the new journal.
+     */
+    private void checkpoint() {
+        Checkpoint checkpoint = new Checkpoint(handler.snapshot());
+        synchronized (lock) {
+            current = new Batch(checkpoint);
+            pending.add(current);
+        }
+        changesSinceCheckpoint = 0;
+    }
+
+    /**
+     * The writer thread: every FLUSH_MILLIS take the pending batches and write them to disk.
+     */
+    private void writeLoop() {
+        boolean stop = false;
+        while (!stop) {
+            List<Batch> batches;
+            synchronized (lock) {
+                if (!closed) {
+                    try {
+                        lock.wait(FLUSH_MILLIS);
+                    } catch (InterruptedException e) {
+                        closed = true;
+                    }
+                }
+                stop = closed;
+                batches = pending;
+                current = new Batch(null);
+                pending = new ArrayList<>();
+                pending.add(current);
+            }
+            try {
+                boolean written = false;
+                for (Batch batch : batches) {
+                    if (batch.checkpoint != null) {
+                        startGeneration(batch.checkpoint);
+                        failed = false; // the new generation holds the whole drawing again
+                    }
+                    if (failed) {
+                        continue; // autosave has stopped, drop the changes until the next checkpoint
+                    }
+                    if (batch.bytes.size() > 0 && journalChannel != null) {
+                        writeFrame(batch.bytes.toByteArray());
+                        written = true;
+                    }
+                }
+                if (written) {
+                    journalChannel.force(false);
+                }
+            } catch (IOException e) {
+                if (!failed) {
+                    failed = true;
+                    Consumer<IOException> listener = failureListener;
+                    if (listener != null) {
+                        listener.accept(e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Write a checkpoint and an empty journal for the next generation, then delete the older files.
+     */
+    private void startGeneration(Checkpoint checkpoint) throws IOException {
+        int next = generation + 1;
+        Path temporary = directory.resolve("checkpoint-" + next + ".tmp");
+        DrawingFile.write(checkpoint.snapshot.getStore(), temporary);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, checkpointPath(next), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        FileChannel channel = FileChannel.open(journalPath(next), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(12);
+        header.putInt(JOURNAL_MAGIC).putInt(checkpoint.snapshot.getStart()).putInt(checkpoint.snapshot.getEnd()).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(true);
+        closeJournalChannel();
+        journalChannel = channel;
+        generation = next;
+        deleteGenerationsBelow(next);
+    }
+
+    /**
+     * Append one frame to the journal: its length, its CRC32 and the encoded changes.
+     */
+    private void writeFrame(byte[] frame) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(frame);
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putInt(frame.length).putInt((int) crc.getValue()).flip();
+        ByteBuffer[] buffers = {header, ByteBuffer.wrap(frame)};
+        while (buffers[1].hasRemaining()) {
+            journalChannel.write(buffers);
+        }
+    }
+
+    private void closeJournalChannel() throws IOException {
+        if (journalChannel != null) {
+            journalChannel.close();
+            journalChannel = null;
+        }
+    }
+
+    /**
+     * Apply the changes encoded in a journal frame to a drawing.
+     */
+    private static void replay(ByteBuffer frame, DrawingHandler drawing) throws IOException {
+        ShapeType[] types = ShapeType.values();
+        while (frame.hasRemaining()) {
+            byte change = frame.get();
+            if (change == APPEND) {
+                int position = frame.getInt();
+                int type = frame.get();
+                if (type < 0 || type >= types.length) {
+                    throw new IOException("Corrupt autosave journal");
+                }
+                Shape shape = types[type].create(frame.getInt(), frame.getInt(), frame.getInt(), frame.getInt());
+                try {
+                    shape.setBorderColourIndex(ColourPalette.intern(frame.getInt()));
+                    shape.setFillColourIndex(ColourPalette.intern(frame.getInt()));
+                } catch (UncheckedIOException e) {
+                    throw e.getCause(); // the colour palette is full
+                }
+                drawing.applyAppend(position, shape);
+            } else if (change == RANGE) {
+                drawing.applyVisibleRange(frame.getInt(), frame.getInt());
+            } else if (change == COMPACT) {
+                drawing.applyCompaction(frame.getInt());
+            } else {
+                throw new IOException("Corrupt autosave journal");
+            }
+        }
+    }
+
+    /**
+     * Find the newest generation which has both a journal and a checkpoint.
+     * @return the generation number, or 0 if there is none.
+     */
+    private static int findLatestGeneration(Path directory) {
+        int latest = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "journal-*.log")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    int number = Integer.parseInt(name.substring("journal-".length(), name.length() - ".log".length()));
+                    if (number > latest && Files.exists(checkpointPath(directory, number))) {
+                        latest = number;
+                    }
+                } catch (NumberFormatException e) {
+                    // not one of our files
+                }
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+        return latest;
+    }
+
+    /**
+     * Delete the checkpoint and journal files of every generation below a number.
+     */
+    private void deleteGenerationsBelow(int number) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "{journal-*.log,checkpoint-*.vgd,checkpoint-*.tmp}")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String digits = name.substring(name.indexOf('-') + 1, name.indexOf('.'));
+                try {
+                    if (Integer.parseInt(digits) < number) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (NumberFormatException e) {
+                    // not one of our files
+                }
+            }
+        }
+    }
+
+    private Path checkpointPath(int number) {
+        return checkpointPath(directory, number);
+    }
+
+    private static Path checkpointPath(Path directory, int number) {
+        return directory.resolve("checkpoint-" + number + "." + DrawingFile.EXTENSION);
+    }
+
+    private Path journalPath(int number) {
+        return directory.resolve("journal-" + number + ".log");
+    }
+
+    /**
+     * A snapshot of the drawing to write as a checkpoint.
+     */
+    private static class Checkpoint {
+        private final DrawingSnapshot snapshot; // the store and visible range, which the writer thread can read
+
+        private Checkpoint(DrawingSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * Changes encoded in memory, waiting to be written by the writer thread.
+     * If the batch has a checkpoint, the checkpoint is written before the changes.
+     */
+    private static class Batch {
+        private final Checkpoint checkpoint;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        private Batch(Checkpoint checkpoint) {
+            this.checkpoint = checkpoint;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package model;
+
+/**
+ * The command for clearing all visible shapes.
+ * Clearing does not remove any shapes from the store, it only moves the start of the visible
+ * shapes up to the end of them, so both clearing and undoing a clear take constant time.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public class ClearCommand extends Command {
+    private int start; // store position of the first visible shape before the clear
+    private int end; // store position after the last visible shape before the clear
+
+    /**
+     * Create the command for clearing the visible shapes.
+     * @param start store position of the first visible shape before the clear.
+     * @param end store position after the last visible shape before the clear.
+     */
+    ClearCommand(int start, int end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Get the number of shapes which were cleared.
+     * @return number of cleared shapes.
+     */
+    public int getClearedCount() {
+        return end - start;
+    }
+
+    @Override
+    void undo(DrawingHandler handler) {
+        handler.setVisibleRange(start, end);
+    }
+
+    @Override
+    void redo(DrawingHandler handler) {
+        handler.setVisibleRange(end, end);
+    }
+
+    @Override
+    int getLowestPosition() {
+        return start;
+    }
+
+    @Override
+    void shiftPositions(int count) {
+        start -= count;
+        end -= count;
+    }
+}
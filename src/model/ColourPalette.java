@@ -0,0 +1,91 @@
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The ColourPalette class interns every colour used by shapes.
+ * Each distinct r,g,b colour is stored once and identified by a small palette index,
+ * so shapes only need to store two ints for their colours and code which converts
+ * colours for drawing can cache the converted colour per palette index.
+ * Palette index 0 is always black, the default colour of a shape.
+ * The palette is shared by the whole program and never shrinks, so it holds at most MAX_COLOURS colours.
+ * A new colour after that is refused rather than changed, so a peer of a shared drawing or an imported
+ * file which uses too many colours fails with an error instead of growing the palette without limit.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public final class ColourPalette {
+    public static final int BLACK = 0; // palette index of black
+    public static final int MAX_COLOURS = 1 << 18; // palette indexes available, far more than a drawing needs
+
+    private static final Map<Integer, Integer> indexes = new HashMap<>(); // packed rgb -> palette index
+    private static volatile SimpleColour[] colours = new SimpleColour[16]; // palette index -> colour
+    private static volatile int size;
+
+    static {
+        intern(0); // black is palette index 0
+    }
+
+    private ColourPalette() {
+        // only static methods
+    }
+
+    /**
+     * Get the palette index of a colour, adding the colour to the palette if it is new.
+     * @param rgb the colour packed as 0xRRGGBB.
+     * @return the palette index of the colour.
+     * @throws UncheckedIOException if the colour is new and the palette is full.
+     */
+    public static synchronized int intern(int rgb) {
+        rgb &= 0xFFFFFF;
+        Integer index = indexes.get(rgb);
+        if (index != null) {
+            return index;
+        }
+        if (size == MAX_COLOURS) {
+            throw new UncheckedIOException(new IOException("Cannot use more than " + MAX_COLOURS + " colours"));
+        }
+        SimpleColour[] table = colours;
+        if (size == table.length) {
+            table = Arrays.copyOf(table, size * 2);
+        }
+        table[size] = new SimpleColour(rgb >> 16, (rgb >> 8) & 0xFF, rgb & 0xFF);
+        colours = table; // publish the new entry before the new size
+        indexes.put(rgb, size);
+        return size++;
+    }
+
+    /**
+     * Get the palette index of a colour, adding the colour to the palette if it is new.
+     * @param colour the colour.
+     * @return the palette index of the colour.
+     * @throws UncheckedIOException if the colour is new and the palette is full.
+     */
+    public static int intern(SimpleColour colour) {
+        return intern(colour.getRGB());
+    }
+
+    /**
+     * Get the interned colour for a palette index.
+     * @param index a palette index returned by intern().
+     * @return the colour, shared by every user of this palette index.
+     */
+    public static SimpleColour get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("No colour with palette index " + index);
+        }
+        return colours[index];
+    }
+
+    /**
+     * Get the number of colours in the palette.
+     * @return the number of palette indexes in use.
+     */
+    public static int size() {
+        return size;
+    }
+}
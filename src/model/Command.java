@@ -0,0 +1,41 @@
+package model;
+
+/**
+ * A Command is one undoable change to the shapes of a DrawingHandler.
+ * Commands are recorded in the DrawingHandler's command journal in the order they were made,
+ * and are undone and redone in that order. Commands refer to shapes by their position
+ * in the DrawingHandler's ShapeStore rather than holding copies of the shapes.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public abstract class Command {
+
+    /**
+     * Reverse the change. The DrawingHandler is in the state right after the change was made.
+     * @param handler the DrawingHandler which the change was made to.
+     */
+    abstract void undo(DrawingHandler handler);
+
+    /**
+     * Make the change again. The DrawingHandler is in the state right before the change was made.
+     * @param handler the DrawingHandler which the change was made to.
+     */
+    abstract void redo(DrawingHandler handler);
+
+    /**
+     * Get the lowest store position which undoing or redoing this command can make visible.
+     * Shapes below the lowest position of every command in the journal can be discarded.
+     * @return lowest store position, or Integer.MAX_VALUE if the command does not hide shapes.
+     */
+    int getLowestPosition() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Update the store positions held by this command after the bottom of the store was discarded.
+     * @param count the number of shapes which were discarded.
+     */
+    void shiftPositions(int count) {
+        // no store positions by default
+    }
+}
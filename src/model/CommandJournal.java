@@ -0,0 +1,174 @@
+package model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The CommandJournal records the commands made to a DrawingHandler in order,
+ * together with a cursor separating the commands which can be undone from those which can be redone.
+ * The number of recorded commands is limited; when the limit is reached the oldest commands
+ * are forgotten and can no longer be undone.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+class CommandJournal {
+    private final List<Command> commands;
+    private final ArrayDeque<Command> hiding; // recorded commands which can reveal hidden shapes, oldest first
+    private int cursor; // number of commands which can be undone
+    private int limit; // maximum number of recorded commands
+
+    /**
+     * Create an empty CommandJournal.
+     * @param limit maximum number of recorded commands.
+     */
+    CommandJournal(int limit) {
+        commands = new ArrayList<>();
+        hiding = new ArrayDeque<>();
+        setLimit(limit);
+    }
+
+    /**
+     * Record a command which has just been made. Commands which could have been redone are forgotten.
+     * @param command the command.
+     */
+    void record(Command command) {
+        List<Command> redoable = commands.subList(cursor, commands.size());
+        for (Command forgotten : redoable) {
+            if (forgotten.getLowestPosition() != Integer.MAX_VALUE) {
+                hiding.removeLastOccurrence(forgotten);
+            }
+        }
+        redoable.clear();
+        commands.add(command);
+        if (command.getLowestPosition() != Integer.MAX_VALUE) {
+            hiding.addLast(command);
+        }
+        cursor++;
+        trim(limit);
+    }
+
+    /**
+     * Move the cursor back over the last command which can be undone.
+     * @return the command to undo, or null if there is none.
+     */
+    Command undo() {
+        if (cursor == 0) {
+            return null;
+        }
+        return commands.get(--cursor);
+    }
+
+    /**
+     * Get the last recorded command if it is the next one to undo and nothing can be redone.
+     * @return the last command, or null if there is none or commands can be redone.
+     */
+    Command getLast() {
+        if (cursor == 0 || cursor != commands.size()) {
+            return null;
+        }
+        return commands.get(cursor - 1);
+    }
+
+    /**
+     * Move the cursor forward over the next command which can be redone.
+     * @return the command to redo, or null if there is none.
+     */
+    Command redo() {
+        if (cursor == commands.size()) {
+            return null;
+        }
+        return commands.get(cursor++);
+    }
+
+    /**
+     * Forget the oldest commands until at most the given number remain.
+     * @param maxCommands number of commands to keep.
+     */
+    void trim(int maxCommands) {
+        int excess = commands.size() - maxCommands;
+        if (excess > 0) {
+            excess = Math.min(excess, cursor); // commands which can be redone are never forgotten first
+            for (int i = 0; i < excess; i++) {
+                if (commands.get(i) == hiding.peekFirst()) {
+                    hiding.pollFirst();
+                }
+            }
+            commands.subList(0, excess).clear();
+            cursor -= excess;
+        }
+    }
+
+    /**
+     * Forget the oldest command.
+     * @return true if a command was forgotten.
+     */
+    boolean trimOldest() {
+        if (cursor == 0) {
+            return false;
+        }
+        if (commands.remove(0) == hiding.peekFirst()) {
+            hiding.pollFirst();
+        }
+        cursor--;
+        return true;
+    }
+
+    /**
+     * Get the lowest store position which any recorded command can make visible.
+     * Commands are recorded in order of the positions they hide, so this is the lowest position
+     * of the oldest command which hides shapes.
+     * @return lowest store position, or Integer.MAX_VALUE if no command hides shapes.
+     */
+    int getLowestPosition() {
+        Command oldest = hiding.peekFirst();
+        return oldest == null ? Integer.MAX_VALUE : oldest.getLowestPosition();
+    }
+
+    /**
+     * Update the store positions held by the commands after the bottom of the store was discarded.
+     * @param count the number of shapes which were discarded.
+     */
+    void shiftPositions(int count) {
+        for (Command command : commands) {
+            command.shiftPositions(count);
+        }
+    }
+
+    /**
+     * Forget every recorded command.
+     */
+    void clear() {
+        commands.clear();
+        hiding.clear();
+        cursor = 0;
+    }
+
+    /**
+     * Set the maximum number of recorded commands.
+     * @param limit maximum number of commands, at least 1.
+     */
+    void setLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Command limit must be at least 1: " + limit);
+        }
+        this.limit = limit;
+        trim(limit);
+    }
+
+    /**
+     * Get the number of commands which can be undone.
+     * @return number of undoable commands.
+     */
+    int getUndoCount() {
+        return cursor;
+    }
+
+    /**
+     * Get the number of commands which can be redone.
+     * @return number of redoable commands.
+     */
+    int getRedoCount() {
+        return commands.size() - cursor;
+    }
+}
@@ -0,0 +1,451 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A ShapeStore which keeps shapes compressed, for large drawings which are mostly viewed rather than edited.
+ * Shapes are stored in z-order blocks of BLOCK_SHAPES shapes. A full block is encoded into a byte array:
+ * for each shape a type tag, the start point as the difference from the start point of the shape before,
+ * the end point as the difference from the start point, and the palette indexes of its colours, every number
+ * packed as a variable-length integer of 7 bits per byte. A shape then takes under 10 bytes instead of the 25 bytes
+ * of a PrimitiveShapeStore, and fewer when shapes drawn one after another are near each other.
+ * Blocks are decoded when they are read, and the most recently used MAX_CACHED_BLOCKS decoded blocks are kept,
+ * so drawing the same region again does not decode it again. The bounding box of each block is kept as well,
+ * so findIn() skips the blocks outside the rectangle, and a DrawingHandler searches the store without a spatial
+ * index, which would take several times the memory of the shapes.
+ * The shapes after the last full block are kept decoded.
+ * Encoded blocks are never changed, so snapshots share them, and have a block cache of their own. The cache is
+ * locked while it is read, so any number of threads may read a snapshot at the same time.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public class CompressedShapeStore implements ShapeStore {
+    private static final ShapeType[] TYPES = ShapeType.values();
+    private static final int BLOCK_BITS = 10;
+    private static final int BLOCK_SHAPES = 1 << BLOCK_BITS; // shapes per block
+    private static final int BLOCK_MASK = BLOCK_SHAPES - 1;
+    private static final int MAX_SHAPE_BYTES = 1 + 6 * 5; // type tag and six numbers of at most 5 bytes each
+    private static final int MAX_CACHED_BLOCKS = 64; // decoded blocks kept before the least recently used is evicted
+
+    private byte[][] blocks; // the encoded full blocks
+    private int[] blockBounds; // minX, minY, maxX, maxY of the shapes of each full block
+    private int blockCount; // number of full blocks
+    private Block tail; // the shapes after the last full block, decoded
+    private int tailSize; // number of shapes in the tail
+    private int first; // slot of position 0, counted from the start of the first block
+    private final boolean snapshot; // true if this store is a snapshot, which cannot be changed
+    private int sharedBlocks; // blocks below this may be seen by a snapshot, so the arrays are copied before changing them
+    private int sharedTail; // tail slots below this may be seen by a snapshot, so the tail is copied before changing them
+    private byte[] encoding; // room for encoding a block, reused for every block
+
+    private final Map<Integer, Block> cache = new LinkedHashMap<>(16, 0.75f, true); // decoded blocks, least recently used first
+    private volatile Block last; // the block read last, which is read again most often, or null
+
+    /**
+     * Create a new, empty CompressedShapeStore.
+     */
+    public CompressedShapeStore() {
+        blocks = new byte[16][];
+        blockBounds = new int[16 * 4];
+        tail = new Block();
+        snapshot = false;
+    }
+
+    /**
+     * Create a snapshot sharing the blocks and the tail of a store.
+     */
+    private CompressedShapeStore(CompressedShapeStore store) {
+        blocks = store.blocks;
+        blockBounds = store.blockBounds;
+        blockCount = store.blockCount;
+        tail = store.tail;
+        tailSize = store.tailSize;
+        first = store.first;
+        snapshot = true;
+    }
+
+    @Override
+    public int size() {
+        return (blockCount << BLOCK_BITS) + tailSize - first;
+    }
+
+    @Override
+    public Shape get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        int slot = first + index;
+        int blockNumber = slot >>> BLOCK_BITS;
+        Block block = blockNumber < blockCount ? block(blockNumber) : tail;
+        int i = slot & BLOCK_MASK;
+        int c = i * 4;
+        Shape shape = TYPES[block.types[i]].create(block.coordinates[c], block.coordinates[c + 1],
+                block.coordinates[c + 2], block.coordinates[c + 3]);
+        shape.setBorderColourIndex(block.colours[i * 2]);
+        shape.setFillColourIndex(block.colours[i * 2 + 1]);
+        shape.freeze(); // changing the view would not change the store
+        return shape;
+    }
+
+    @Override
+    public void add(Shape shape) {
+        add(shape.getType(), shape.getStartX(), shape.getStartY(), shape.getEndX(), shape.getEndY(),
+                shape.getBorderColourIndex(), shape.getFillColourIndex());
+    }
+
+    /**
+     * Append a shape given its values, without creating a Shape object.
+     * @param type the type of shape.
+     * @param startX start coordinate on x axis
+     * @param startY start coordinate on y axis
+     * @param endX end coordinate on x axis
+     * @param endY end coordinate on y axis
+     * @param borderColour palette index of the border colour.
+     * @param fillColour palette index of the fill colour.
+     */
+    public void add(ShapeType type, int startX, int startY, int endX, int endY, int borderColour, int fillColour) {
+        checkWritable();
+        if (tailSize < sharedTail) {
+            tail = new Block(tail); // a snapshot can see the slot about to be overwritten
+            sharedTail = 0;
+        }
+        int i = tailSize;
+        tail.types[i] = (byte) type.ordinal();
+        int c = i * 4;
+        tail.coordinates[c] = startX;
+        tail.coordinates[c + 1] = startY;
+        tail.coordinates[c + 2] = endX;
+        tail.coordinates[c + 3] = endY;
+        tail.colours[i * 2] = borderColour;
+        tail.colours[i * 2 + 1] = fillColour;
+        tailSize++;
+        if (tailSize == BLOCK_SHAPES) {
+            seal();
+        }
+    }
+
+    @Override
+    public void truncate(int size) {
+        checkWritable();
+        if (size < 0 || size > size()) {
+            throw new IndexOutOfBoundsException("Size: " + size);
+        }
+        int slot = first + size;
+        int blockNumber = slot >>> BLOCK_BITS;
+        if (blockNumber < blockCount) {
+            // the block holding the new end becomes the tail again, and the blocks after it are dropped
+            tail = decode(blockNumber);
+            sharedTail = 0;
+            blockCount = blockNumber;
+            synchronized (cache) {
+                cache.keySet().removeIf(b -> b >= blockNumber);
+            }
+            last = null;
+        }
+        tailSize = slot - (blockCount << BLOCK_BITS); // the values above the new size are overwritten by later adds
+    }
+
+    @Override
+    public void removeFirst(int count) {
+        checkWritable();
+        if (count < 0 || count > size()) {
+            throw new IndexOutOfBoundsException("Count: " + count);
+        }
+        first += count;
+        int dropped = first >>> BLOCK_BITS;
+        if (dropped > 0) {
+            // new arrays of blocks, so snapshots keep the dropped blocks and their own order
+            int length = blocks.length;
+            blocks = Arrays.copyOfRange(blocks, dropped, length + dropped);
+            blockBounds = Arrays.copyOfRange(blockBounds, dropped * 4, (length + dropped) * 4);
+            blockCount -= dropped;
+            first -= dropped << BLOCK_BITS;
+            sharedBlocks = 0;
+            // every block number moved
+            synchronized (cache) {
+                cache.clear();
+            }
+            last = null;
+        }
+    }
+
+    /**
+     * Take a snapshot of the store in constant time. The snapshot shares the encoded blocks, which never
+     * change, and the tail, which is copied before this store overwrites a shape the snapshot can see.
+     * The snapshot must be handed to other threads in a way which makes the store's writes visible,
+     * such as a volatile field or an executor.
+     * @return an unchangeable store with the same shapes, which later changes to this store do not affect.
+     */
+    @Override
+    public ShapeStore snapshot() {
+        if (snapshot) {
+            return this;
+        }
+        sharedBlocks = Math.max(sharedBlocks, blockCount);
+        sharedTail = Math.max(sharedTail, tailSize);
+        return new CompressedShapeStore(this);
+    }
+
+    /**
+     * Find the shapes in a range of positions whose bounding box intersects a rectangle.
+     * Only the blocks whose bounds intersect the rectangle are decoded.
+     */
+    @Override
+    public int[] findIn(int start, int end, int minX, int minY, int maxX, int maxY) {
+        int[] found = new int[16];
+        int count = 0;
+        int endSlot = first + end;
+        for (int slot = first + start; slot < endSlot; ) {
+            int blockNumber = slot >>> BLOCK_BITS;
+            int blockEnd = Math.min(endSlot, (blockNumber + 1) << BLOCK_BITS);
+            Block block;
+            if (blockNumber < blockCount) {
+                int b = blockNumber * 4;
+                if (blockBounds[b] > maxX || blockBounds[b + 2] < minX
+                        || blockBounds[b + 1] > maxY || blockBounds[b + 3] < minY) {
+                    slot = blockEnd; // no shape of the block is inside the rectangle
+                    continue;
+                }
+                block = block(blockNumber);
+            } else {
+                block = tail;
+            }
+            for (; slot < blockEnd; slot++) {
+                int c = (slot & BLOCK_MASK) * 4;
+                int x = Math.min(block.coordinates[c], block.coordinates[c + 2]);
+                int y = Math.min(block.coordinates[c + 1], block.coordinates[c + 3]);
+                int right = Math.max(block.coordinates[c], block.coordinates[c + 2]);
+                int bottom = Math.max(block.coordinates[c + 1], block.coordinates[c + 3]);
+                if (x <= maxX && right >= minX && y <= maxY && bottom >= minY) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = slot - first;
+                }
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    @Override
+    public boolean findsByBounds() {
+        return true;
+    }
+
+    /**
+     * Get the number of bytes taken by the encoded blocks, not counting the tail and the block cache.
+     * @return number of bytes.
+     */
+    public long getEncodedBytes() {
+        long bytes = 0;
+        for (int b = 0; b < blockCount; b++) {
+            bytes += blocks[b].length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Encode the full tail as the next block, and start a new tail.
+     */
+    private void seal() {
+        if (blockCount == blocks.length || blockCount < sharedBlocks) {
+            // new arrays, so the snapshots keep the old ones
+            int length = blockCount == blocks.length ? blocks.length * 2 : blocks.length;
+            blocks = Arrays.copyOf(blocks, length);
+            blockBounds = Arrays.copyOf(blockBounds, length * 4);
+            sharedBlocks = 0;
+        }
+        if (encoding == null) {
+            encoding = new byte[BLOCK_SHAPES * MAX_SHAPE_BYTES];
+        }
+        int length = 0;
+        int previousX = 0;
+        int previousY = 0;
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < BLOCK_SHAPES; i++) {
+            int c = i * 4;
+            int startX = tail.coordinates[c];
+            int startY = tail.coordinates[c + 1];
+            int endX = tail.coordinates[c + 2];
+            int endY = tail.coordinates[c + 3];
+            encoding[length++] = tail.types[i];
+            length = writeNumber(encoding, length, zigzag(startX - previousX));
+            length = writeNumber(encoding, length, zigzag(startY - previousY));
+            length = writeNumber(encoding, length, zigzag(endX - startX));
+            length = writeNumber(encoding, length, zigzag(endY - startY));
+            length = writeNumber(encoding, length, tail.colours[i * 2]);
+            length = writeNumber(encoding, length, tail.colours[i * 2 + 1]);
+            previousX = startX;
+            previousY = startY;
+            minX = Math.min(minX, Math.min(startX, endX));
+            minY = Math.min(minY, Math.min(startY, endY));
+            maxX = Math.max(maxX, Math.max(startX, endX));
+            maxY = Math.max(maxY, Math.max(startY, endY));
+        }
+        blocks[blockCount] = Arrays.copyOf(encoding, length);
+        int b = blockCount * 4;
+        blockBounds[b] = minX;
+        blockBounds[b + 1] = minY;
+        blockBounds[b + 2] = maxX;
+        blockBounds[b + 3] = maxY;
+        blockCount++;
+        tail = new Block(); // the snapshots may still see the old tail
+        tailSize = 0;
+        sharedTail = 0;
+    }
+
+    /**
+     * Get a decoded full block, decoding it and evicting the least recently used block if it is not cached.
+     * Several threads may call this at once on a snapshot: the block is decoded outside the lock, so two
+     * threads may both decode it, and only one of the decoded blocks is kept.
+     * @param blockNumber the block.
+     * @return the decoded block.
+     */
+    private Block block(int blockNumber) {
+        Block block = last;
+        if (block != null && block.number == blockNumber) {
+            return block;
+        }
+        synchronized (cache) {
+            block = cache.get(blockNumber); // moves the block to the end of the access order
+        }
+        if (block == null) {
+            Block decoded = decode(blockNumber);
+            synchronized (cache) {
+                block = cache.putIfAbsent(blockNumber, decoded);
+                if (block == null) {
+                    block = decoded;
+                    if (cache.size() > MAX_CACHED_BLOCKS) {
+                        Iterator<Integer> leastRecentlyUsed = cache.keySet().iterator();
+                        leastRecentlyUsed.next();
+                        leastRecentlyUsed.remove();
+                    }
+                }
+            }
+        }
+        last = block;
+        return block;
+    }
+
+    /**
+     * Decode a full block into new arrays.
+     * @param blockNumber the block.
+     * @return the decoded block.
+     */
+    private Block decode(int blockNumber) {
+        byte[] encoded = blocks[blockNumber];
+        Block block = new Block(blockNumber);
+        int[] position = {0};
+        int previousX = 0;
+        int previousY = 0;
+        for (int i = 0; i < BLOCK_SHAPES; i++) {
+            block.types[i] = encoded[position[0]++];
+            int startX = previousX + unzigzag(readNumber(encoded, position));
+            int startY = previousY + unzigzag(readNumber(encoded, position));
+            int c = i * 4;
+            block.coordinates[c] = startX;
+            block.coordinates[c + 1] = startY;
+            block.coordinates[c + 2] = startX + unzigzag(readNumber(encoded, position));
+            block.coordinates[c + 3] = startY + unzigzag(readNumber(encoded, position));
+            block.colours[i * 2] = readNumber(encoded, position);
+            block.colours[i * 2 + 1] = readNumber(encoded, position);
+            previousX = startX;
+            previousY = startY;
+        }
+        return block;
+    }
+
+    /**
+     * Map a signed number to an unsigned one, so that numbers near zero take few bytes: 0, -1, 1, -2, ...
+     * become 0, 1, 2, 3, ...
+     */
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Reverse zigzag().
+     */
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Write an unsigned number 7 bits per byte, lowest first, with the top bit set on every byte but the last.
+     * @param bytes the array to write into.
+     * @param position where to write.
+     * @param value the number.
+     * @return the position after the number.
+     */
+    private static int writeNumber(byte[] bytes, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[position++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * Read a number written by writeNumber().
+     * @param bytes the array to read from.
+     * @param position where to read, moved past the number.
+     * @return the number.
+     */
+    private static int readNumber(byte[] bytes, int[] position) {
+        int p = position[0];
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[p++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        position[0] = p;
+        return value;
+    }
+
+    /**
+     * Refuse to change a snapshot.
+     */
+    private void checkWritable() {
+        if (snapshot) {
+            throw new UnsupportedOperationException("A snapshot cannot be changed");
+        }
+    }
+
+    /**
+     * The decoded shapes of one block, in the same layout as a chunk of a PrimitiveShapeStore.
+     */
+    private static class Block {
+        private final int number; // block number the shapes were decoded from, or -1 for a new tail
+        private final byte[] types; // ShapeType ordinal of each shape
+        private final int[] coordinates; // startX, startY, endX, endY of each shape
+        private final int[] colours; // border and fill palette index of each shape
+
+        private Block() {
+            this(-1);
+        }
+
+        private Block(int number) {
+            this.number = number;
+            types = new byte[BLOCK_SHAPES];
+            coordinates = new int[BLOCK_SHAPES * 4];
+            colours = new int[BLOCK_SHAPES * 2];
+        }
+
+        private Block(Block block) {
+            number = block.number;
+            types = block.types.clone();
+            coordinates = block.coordinates.clone();
+            colours = block.colours.clone();
+        }
+    }
+}
@@ -19,6 +19,29 @@ public class DiagonalCross extends Shape {
         super(startX, startY, endX, endY);
     }
 
+    /**
+     * Get the type of this shape.
+     * @return ShapeType.DIAGONAL_CROSS.
+     */
+    @Override
+    public ShapeType getType() {
+        return ShapeType.DIAGONAL_CROSS;
+    }
+
+    /**
+     * Check whether a point is within half the border width and the tolerance of either line of the cross.
+     * @param x x coordinate of the point.
+     * @param y y coordinate of the point.
+     * @param tolerance distance from the lines which still counts as on them.
+     * @return true if the point is on the cross.
+     */
+    @Override
+    public boolean hitTest(double x, double y, double tolerance) {
+        double limit = 0.5 + tolerance;
+        return distanceToSegment(x, y, startX, startY, endX, endY) <= limit
+                || distanceToSegment(x, y, startX, endY, endX, startY) <= limit;
+    }
+
     /**
      * Creates the first line for the diagonal cross.
      * @return the created line.
@@ -0,0 +1,96 @@
+package model;
+
+/**
+ * A DrawingChange summarises the changes made to the visible shapes of a DrawingHandler
+ * by one change or one batch of changes: how many shapes were added on top and the
+ * bounding box of every shape which appeared or disappeared.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public final class DrawingChange {
+    private final int addedCount;
+    private final boolean appendOnly;
+    private final boolean bounded;
+    private final int minX;
+    private final int minY;
+    private final int maxX;
+    private final int maxY;
+
+    /**
+     * Create a summary of changes.
+     * @param addedCount number of shapes added on top of the visible shapes.
+     * @param appendOnly true if shapes were only added on top of the visible shapes.
+     * @param bounded true if the dirty bounds cover every changed shape.
+     * @param minX left edge of the dirty bounds.
+     * @param minY top edge of the dirty bounds.
+     * @param maxX right edge of the dirty bounds (inclusive).
+     * @param maxY bottom edge of the dirty bounds (inclusive).
+     */
+    DrawingChange(int addedCount, boolean appendOnly, boolean bounded, int minX, int minY, int maxX, int maxY) {
+        this.addedCount = addedCount;
+        this.appendOnly = appendOnly;
+        this.bounded = bounded;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Check whether the only change was adding shapes on top of the visible shapes, in which case they
+     * are the last getAddedCount() visible shapes and can be drawn over a picture of the drawing before.
+     * @return true if shapes were only added on top.
+     */
+    public boolean isAppendOnly() {
+        return appendOnly;
+    }
+
+    /**
+     * Get the number of shapes added on top of the visible shapes. Only counted while isAppendOnly() is true.
+     * @return number of added shapes.
+     */
+    public int getAddedCount() {
+        return addedCount;
+    }
+
+    /**
+     * Check whether the dirty bounds cover every shape which appeared or disappeared. They do not when
+     * too many shapes were hidden or shown at once to measure them, such as when a large drawing is cleared.
+     * @return true if only the dirty bounds have to be drawn again.
+     */
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    /**
+     * Get the left edge of the dirty bounds.
+     * @return x coordinate in the drawing.
+     */
+    public int getMinX() {
+        return minX;
+    }
+
+    /**
+     * Get the top edge of the dirty bounds.
+     * @return y coordinate in the drawing.
+     */
+    public int getMinY() {
+        return minY;
+    }
+
+    /**
+     * Get the right edge of the dirty bounds (inclusive).
+     * @return x coordinate in the drawing.
+     */
+    public int getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Get the bottom edge of the dirty bounds (inclusive).
+     * @return y coordinate in the drawing.
+     */
+    public int getMaxY() {
+        return maxY;
+    }
+}
@@ -0,0 +1,356 @@
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The DrawingFile class saves and loads drawings in a compact binary format.
+ * A file consists of a header, a colour table, one fixed-width record per shape and a page table:
+ * <pre>
+ * header:  int magic ("VGDF"), int version, int shape count, int colour count
+ * colours: one int 0xRRGGBB per colour table entry
+ * shapes:  int startX, int startY, int endX, int endY, int type, int colours
+ * pages:   int shapes per page, then int minX, int minY, int maxX, int maxY per page
+ * </pre>
+ * The colours int of a shape holds the low 16 bits of the colour table index of its border colour in
+ * its high 16 bits and of its fill colour in its low 16 bits. The type int holds the ShapeType ordinal in
+ * its lowest byte, then the high 8 bits of the border colour's table index, then those of the fill colour's,
+ * so a table can hold every 24-bit colour. Before version 3 table indexes had 16 bits and the type int only
+ * the ordinal. All values are big-endian.
+ * The page table holds the bounding box of each run of shapes per page, so that open() can find the
+ * shapes inside a region without reading the others. Version 1 files have no page table.
+ * Files are loaded a block of records at a time straight into a PrimitiveShapeStore, so no
+ * Shape objects or stream reads are needed per record, or opened as a PagedShapeStore which
+ * reads pages of records from the open file when they are needed. Files are never memory mapped,
+ * since on Windows a mapped file cannot be replaced until the mapping is garbage collected.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public final class DrawingFile {
+    public static final String EXTENSION = "vgd"; // file name extension of drawing files
+
+    private static final int MAGIC = 0x56474446; // "VGDF"
+    private static final int VERSION = 3;
+    private static final int FIRST_PAGED_VERSION = 2; // the first version with a page table
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_INTS = 6;
+    private static final int RECORD_BYTES = RECORD_INTS * 4;
+    private static final int MAX_COLOURS = 1 << 24; // one table entry per 24-bit colour
+    private static final int WRITE_BUFFER_BYTES = RECORD_BYTES * 4096;
+    private static final int READ_BUFFER_RECORDS = 4096; // records read at a time
+    private static final int MAX_PAGE_SHAPES = 1 << 20; // largest page of a valid file, read at once
+    private static final int PAGE_SHAPES = 4096; // shapes per page of the page table
+
+    private DrawingFile() {
+        // only static methods
+    }
+
+    /**
+     * Save shapes to a file, replacing any existing file.
+     * @param shapes the shapes to save, lowest z-order first.
+     * @param path the file to write.
+     * @throws IOException if the file cannot be written or the shapes use too many colours.
+     */
+    public static void write(List<Shape> shapes, Path path) throws IOException {
+        // Build the colour table from the palette indexes which are used
+        ColourTable colours = new ColourTable();
+        for (Shape shape : shapes) {
+            colours.add(shape.getBorderColourIndex());
+            colours.add(shape.getFillColourIndex());
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(shapes.size()).putInt(colours.count);
+            for (int i = 0; i < colours.count; i++) {
+                if (buffer.remaining() < 4) {
+                    drain(buffer, channel);
+                }
+                buffer.putInt(colours.rgb[i]);
+            }
+            int[] pageBounds = new int[(shapes.size() + PAGE_SHAPES - 1) / PAGE_SHAPES * 4];
+            int i = 0;
+            for (Shape shape : shapes) {
+                if (buffer.remaining() < RECORD_BYTES) {
+                    drain(buffer, channel);
+                }
+                int border = colours.tableIndex[shape.getBorderColourIndex()];
+                int fill = colours.tableIndex[shape.getFillColourIndex()];
+                buffer.putInt(shape.getStartX()).putInt(shape.getStartY())
+                        .putInt(shape.getEndX()).putInt(shape.getEndY())
+                        .putInt(shape.getType().ordinal() | border >>> 16 << 8 | fill >>> 16 << 16)
+                        .putInt(border << 16 | fill & 0xFFFF);
+                // grow the bounds of the shape's page, starting from the first shape of the page
+                int b = i / PAGE_SHAPES * 4;
+                boolean firstOfPage = i % PAGE_SHAPES == 0;
+                pageBounds[b] = firstOfPage ? shape.getX() : Math.min(pageBounds[b], shape.getX());
+                pageBounds[b + 1] = firstOfPage ? shape.getY() : Math.min(pageBounds[b + 1], shape.getY());
+                pageBounds[b + 2] = firstOfPage ? shape.getX() + shape.getWidth()
+                        : Math.max(pageBounds[b + 2], shape.getX() + shape.getWidth());
+                pageBounds[b + 3] = firstOfPage ? shape.getY() + shape.getHeight()
+                        : Math.max(pageBounds[b + 3], shape.getY() + shape.getHeight());
+                i++;
+            }
+            if (buffer.remaining() < 4) {
+                drain(buffer, channel);
+            }
+            buffer.putInt(PAGE_SHAPES);
+            for (int bound : pageBounds) {
+                if (buffer.remaining() < 4) {
+                    drain(buffer, channel);
+                }
+                buffer.putInt(bound);
+            }
+            drain(buffer, channel);
+        }
+    }
+
+    /**
+     * Save every shape of a store to a file, replacing any existing file.
+     * @param store the shapes to save.
+     * @param path the file to write.
+     * @throws IOException if the file cannot be written or the shapes use too many colours.
+     */
+    public static void write(ShapeStore store, Path path) throws IOException {
+        write(new AbstractList<Shape>() {
+            @Override
+            public Shape get(int i) {
+                return store.get(i);
+            }
+
+            @Override
+            public int size() {
+                return store.size();
+            }
+        }, path);
+    }
+
+    /**
+     * Load the shapes of a file.
+     * @param path the file to read.
+     * @return a store holding the shapes of the file, lowest z-order first.
+     * @throws IOException if the file cannot be read or is not a valid drawing file.
+     */
+    public static PrimitiveShapeStore read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = readHeader(channel, path);
+            int shapeCount = header.getInt(8);
+            int colourCount = header.getInt(12);
+            long recordsStart = HEADER_BYTES + 4L * colourCount;
+            int[] palette = readPalette(header, colourCount);
+            PrimitiveShapeStore store = new PrimitiveShapeStore(shapeCount);
+            ShapeType[] types = ShapeType.values();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_BYTES * READ_BUFFER_RECORDS);
+            for (int first = 0; first < shapeCount; first += READ_BUFFER_RECORDS) {
+                buffer.clear().limit(RECORD_BYTES * Math.min(READ_BUFFER_RECORDS, shapeCount - first));
+                readFully(channel, buffer, recordsStart + (long) RECORD_BYTES * first, path);
+                IntBuffer records = buffer.asIntBuffer();
+                int ints = records.limit();
+                for (int i = 0; i < ints; i += RECORD_INTS) {
+                    int type = shapeType(records.get(i + 4));
+                    int border = borderColour(records.get(i + 4), records.get(i + 5));
+                    int fill = fillColour(records.get(i + 4), records.get(i + 5));
+                    if (type < 0 || type >= types.length || border >= colourCount || fill >= colourCount) {
+                        throw new IOException("Corrupt drawing file: " + path);
+                    }
+                    store.add(types[type], records.get(i), records.get(i + 1), records.get(i + 2), records.get(i + 3),
+                            palette[border], palette[fill]);
+                }
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Open a drawing file without loading its shapes. The shapes are read from the file when they are needed,
+     * a page at a time, so opening takes about as long for any size of file. Files without a page table, saved
+     * by version 1, are loaded in full by read() instead.
+     * The file stays open, and must not be changed, while the store is in use. To save over it, call the store's
+     * releaseFile(), which reads the shapes into memory and closes the file, then write another file and move it
+     * into place.
+     * @param path the file to open.
+     * @return a store holding the shapes of the file, lowest z-order first.
+     * @throws IOException if the file cannot be read or is not a valid drawing file.
+     */
+    public static ShapeStore open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = readHeader(channel, path);
+            if (header.getInt(4) < FIRST_PAGED_VERSION) {
+                channel.close();
+                return read(path);
+            }
+            int shapeCount = header.getInt(8);
+            int colourCount = header.getInt(12);
+            long recordsStart = HEADER_BYTES + 4L * colourCount;
+            int[] palette = readPalette(header, colourCount);
+            // Read the page table after the records
+            long pagesStart = recordsStart + (long) RECORD_BYTES * shapeCount;
+            ByteBuffer pageHeader = ByteBuffer.allocate(4);
+            readFully(channel, pageHeader, pagesStart, path);
+            int pageShapes = pageHeader.getInt(0);
+            if (pageShapes <= 0 || pageShapes > MAX_PAGE_SHAPES) {
+                throw new IOException("Corrupt drawing file: " + path);
+            }
+            int pageCount = (int) ((shapeCount + (long) pageShapes - 1) / pageShapes);
+            ByteBuffer pageTable = ByteBuffer.allocate(16 * pageCount);
+            readFully(channel, pageTable, pagesStart + 4, path);
+            int[] pageBounds = new int[pageCount * 4];
+            pageTable.asIntBuffer().get(pageBounds);
+            return new PagedShapeStore(channel, recordsStart, shapeCount, pageShapes, pageBounds, palette, path);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read from a position of a file until a buffer is full, then flip the buffer, ready to be read.
+     * Only the given position is read, not the channel's own position, so several threads may read a
+     * channel at once.
+     * @param channel the open file.
+     * @param buffer the buffer to fill up to its limit.
+     * @param position where to read from.
+     * @param path the file, for error messages.
+     * @throws IOException if the file cannot be read or ends first.
+     */
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position, Path path) throws IOException {
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new IOException("Corrupt drawing file: " + path);
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Get the ShapeType ordinal of a record.
+     * @param type the type int of the record.
+     * @return the ordinal, or -1 if the type int is not valid.
+     */
+    static int shapeType(int type) {
+        return type >>> 24 == 0 ? type & 0xFF : -1;
+    }
+
+    /**
+     * Get the colour table index of the border colour of a record.
+     * @param type the type int of the record.
+     * @param colours the colours int of the record.
+     * @return the table index.
+     */
+    static int borderColour(int type, int colours) {
+        return (type >>> 8 & 0xFF) << 16 | colours >>> 16;
+    }
+
+    /**
+     * Get the colour table index of the fill colour of a record.
+     * @param type the type int of the record.
+     * @param colours the colours int of the record.
+     * @return the table index.
+     */
+    static int fillColour(int type, int colours) {
+        return (type >>> 16 & 0xFF) << 16 | colours & 0xFFFF;
+    }
+
+    /**
+     * Read the header and colour table of a drawing file and check that they are valid.
+     * @param channel the open file.
+     * @param path the file, for error messages.
+     * @return the header and colour table, positioned at the colour table.
+     * @throws IOException if the file is not a valid drawing file.
+     */
+    private static ByteBuffer readHeader(FileChannel channel, Path path) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < HEADER_BYTES) {
+            throw new IOException("Not a drawing file: " + path);
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(channel, header, 0, path);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a drawing file: " + path);
+        }
+        int version = header.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported drawing file version " + version + ": " + path);
+        }
+        int shapeCount = header.getInt();
+        int colourCount = header.getInt();
+        long recordsStart = HEADER_BYTES + 4L * colourCount;
+        if (shapeCount < 0 || colourCount < 0 || colourCount > MAX_COLOURS
+                || fileSize < recordsStart + (long) RECORD_BYTES * shapeCount) {
+            throw new IOException("Corrupt drawing file: " + path);
+        }
+        ByteBuffer table = ByteBuffer.allocate((int) recordsStart);
+        table.put(header.array());
+        readFully(channel, table, HEADER_BYTES, path);
+        table.position(HEADER_BYTES);
+        return table;
+    }
+
+    /**
+     * Map the colour table of a drawing file to palette indexes.
+     * @param header the buffer returned by readHeader().
+     * @param colourCount number of colour table entries.
+     * @return the palette index of each entry.
+     * @throws IOException if the colour palette has no room for the colours.
+     */
+    private static int[] readPalette(ByteBuffer header, int colourCount) throws IOException {
+        int[] palette = new int[colourCount];
+        try {
+            for (int i = 0; i < colourCount; i++) {
+                palette[i] = ColourPalette.intern(header.getInt());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return palette;
+    }
+
+    /**
+     * Write the contents of a buffer to a channel and empty the buffer.
+     */
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * The colour table of a file being written, mapping palette indexes to table indexes.
+     */
+    private static class ColourTable {
+        private final int[] tableIndex; // table index of each palette index, -1 if not in the table
+        private int[] rgb = new int[16]; // colour of each table entry
+        private int count;
+
+        private ColourTable() {
+            tableIndex = new int[ColourPalette.size()];
+            Arrays.fill(tableIndex, -1);
+        }
+
+        private void add(int paletteIndex) throws IOException {
+            if (tableIndex[paletteIndex] >= 0) {
+                return;
+            }
+            if (count == MAX_COLOURS) {
+                throw new IOException("Drawing uses more than " + MAX_COLOURS + " colours");
+            }
+            if (count == rgb.length) {
+                rgb = Arrays.copyOf(rgb, count * 2);
+            }
+            rgb[count] = ColourPalette.get(paletteIndex).getRGB();
+            tableIndex[paletteIndex] = count++;
+        }
+    }
+}
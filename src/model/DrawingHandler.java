@@ -1,88 +1,792 @@
 package model;
 
-import java.util.EmptyStackException;
-import java.util.Stack;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The DrawingHandler class is responsible for storing the user's vector graphics,
  * including the border colour and fill colour.
- * The stored graphics may be undone (removed) and redone (re-added).
+ * Every change to the stored graphics is recorded as a Command in a journal, so that
+ * adding shapes and clearing the drawing may be undone and redone.
+ * Shapes are kept in a ShapeStore, and the visible shapes are a range of positions in it.
+ * Undone shapes stay in the store above the visible range and cleared shapes stay below it,
+ * so undo, redo and clear only move the ends of the range.
+ * The journal has a limit on the number of commands and on the number of hidden shapes
+ * kept for undoing clears, after which the oldest history is forgotten and compacted away.
+ * StoreListeners are told about every change to the store and the visible range.
+ * DrawingListeners are told once per change to the visible shapes, with a summary of it. Changes made
+ * between beginBatch() and commit() are summarised together, so they are told once for the whole batch.
+ * A spatial index over the stored shapes allows finding the shapes inside a region
+ * without visiting every stored shape. Shapes are only added to the index when it is next queried,
+ * so adding many shapes updates it once. Stores which find shapes by the bounds of groups of shapes,
+ * such as a PagedShapeStore or a CompressedShapeStore, are searched without the index, which would take
+ * more memory than their shapes. The index of a large drawing in another store can be built in the
+ * background by buildIndex(); until it is ready, queries check the shapes through the store. For a
+ * PagedShapeStore, buildIndex() decodes the pages of the file into its cache in the background instead.
+ * A DrawingHandler belongs to one thread, normally the event dispatch thread. Other threads read
+ * it through a DrawingSnapshot, which the owner takes in constant time, and add shapes by offering
+ * them: offering is lock free and never waits for the owner, which takes the offered shapes in
+ * batches when it is ready.
  *
  * @author Lesleyjane J https://github.com/lesleyjanej
  */
 public class DrawingHandler {
     private Shape currentShape; // shape currently being drawn
-    private SimpleColour chosenBorderColour; // selected border colour
-    private SimpleColour chosenFillColour; // selected fill colour
-    private Stack<model.Shape> shapes;
-    private Stack<model.Shape> undoList;
+    private int chosenBorderColour; // palette index of the selected border colour
+    private int chosenFillColour; // palette index of the selected fill colour
+    private static final int DEFAULT_UNDO_LIMIT = 1000; // commands kept in the journal by default
+    private static final int DEFAULT_HISTORY_SHAPE_LIMIT = 1000000; // hidden cleared shapes kept by default
+    private static final int MAX_MEASURED_SHAPES = 10000; // most shapes hidden or shown at once which are measured
+
+    private ShapeStore shapes; // cleared shapes, then visible shapes, then the shapes which can be redone
+    private int base; // store position of the first visible shape, shapes below it have been cleared
+    private int top; // store position after the last visible shape, shapes from here on have been undone
+    private ShapeIndex index; // spatial index of the stored shapes, ids are positions in the store
+    private int indexed; // store positions below this are in the index, the others are added by the next query
+    private IndexBuild indexBuild; // index being built in the background, or null
+    private CommandJournal journal; // commands which can be undone and redone
+    private int historyShapeLimit; // maximum number of cleared shapes kept for undo
+    private final List<StoreListener> storeListeners = new ArrayList<>();
+    private final List<DrawingListener> drawingListeners = new ArrayList<>();
+    private int batchDepth; // beginBatch() calls not yet committed
+    private boolean changed; // true if the visible shapes changed since the last DrawingChange was sent
+    private int changeAdded; // shapes added on top since then
+    private boolean changeAppendOnly; // true while shapes were only added on top since then
+    private boolean changeBounded; // true while the dirty bounds cover every shape which appeared or disappeared
+    private int changeMinX; // dirty bounds of the shapes which appeared or disappeared since then
+    private int changeMinY;
+    private int changeMaxX;
+    private int changeMaxY;
+    private long version; // grows with every change to the store or the visible range
+    private DrawingSnapshot snapshot; // the last snapshot taken, returned again until the drawing changes
+    private final AtomicReference<Offer> offers = new AtomicReference<>(); // shapes offered, newest first
+    private final ArrayDeque<Shape> offered = new ArrayDeque<>(); // offered shapes not yet taken, oldest first
+    private volatile Runnable offerListener; // told when shapes are offered to an empty queue, or null
 
     /**
      * Create a new DrawingHandler. Border colour and fill colour are set to black by default.
      */
     public DrawingHandler() {
+        this(new ObjectShapeStore());
+    }
+
+    /**
+     * Create a new DrawingHandler which keeps its shapes in the given store.
+     * Any shapes already in the store are visible.
+     * @param store the store for the shapes, for example a PrimitiveShapeStore for very large drawings,
+     *              or a CompressedShapeStore for large drawings which are mostly viewed.
+     */
+    public DrawingHandler(ShapeStore store) {
         currentShape = null; // null until a new shape is drawn
-        shapes = new Stack<>();
-        undoList = new Stack<>();
-        chosenBorderColour = new SimpleColour(0,0,0); // black by default
-        chosenFillColour = new SimpleColour(0,0,0); // black by default
+        shapes = store;
+        base = 0;
+        top = store.size();
+        journal = new CommandJournal(DEFAULT_UNDO_LIMIT);
+        historyShapeLimit = DEFAULT_HISTORY_SHAPE_LIMIT;
+        index = new ShapeIndex(); // the shapes are indexed by the first query
+        chosenBorderColour = ColourPalette.BLACK; // black by default
+        chosenFillColour = ColourPalette.BLACK; // black by default
     }
 
     /**
-     * Add a new shape to the stack of shapes.
+     * Add a new shape on top of the visible shapes.
+     * Shapes which were undone can no longer be redone afterwards.
      * @param shape - the new shape to be added.
      */
     public void addShape(Shape shape) {
-        shapes.push(shape);
+        beginBatch();
+        try {
+            // discard the shapes which could have been redone
+            truncate(top);
+            shapes.add(shape);
+            journal.record(new AddShapeCommand(shape, top));
+            top++;
+            version++;
+            shapeAdded(shape);
+            for (StoreListener listener : storeListeners) {
+                listener.shapeAppended(top - 1, shape);
+            }
+            trimHistory();
+        } finally {
+            commit();
+        }
     }
 
     /**
-     * Get the stack of shapes.
-     * @return stack of shapes.
+     * Add several shapes on top of the visible shapes, in order, as one command.
+     * Shapes which were undone can no longer be redone afterwards.
+     * A large drawing can be added in batches which continue the previous call, so that
+     * the whole drawing is undone and redone in one step.
+     * @param newShapes the shapes to add, lowest z-order first.
+     * @param continueLast true to include the shapes in the command of the last addShapes() call,
+     *                     if no other command has been made since.
      */
-    public Stack<Shape> getShapes() {
-        return shapes;
+    public void addShapes(Collection<Shape> newShapes, boolean continueLast) {
+        if (newShapes.isEmpty()) {
+            return;
+        }
+        beginBatch();
+        try {
+            int start = top;
+            Command last = journal.getLast();
+            // discard the shapes which could have been redone
+            truncate(top);
+            for (Shape shape : newShapes) {
+                shapes.add(shape);
+                top++;
+                shapeAdded(shape);
+                for (StoreListener listener : storeListeners) {
+                    listener.shapeAppended(top - 1, shape);
+                }
+            }
+            version++;
+            if (continueLast && last instanceof AddShapesCommand && ((AddShapesCommand) last).getEnd() == start) {
+                ((AddShapesCommand) last).extend(top);
+            } else {
+                journal.record(new AddShapesCommand(start, top));
+            }
+            trimHistory();
+        } finally {
+            commit();
+        }
     }
 
     /**
-     * Attempt to undo the last created Shape by removing it from the stack.
-     * The removed shape will be added to the undoList. redo() will allow for re-adding the shape.
-     * @return null if there are no shapes to be removed from the stack, otherwise returns the removed shape.
+     * Add several shapes on top of the visible shapes, in order, as one command which is undone in one step.
+     * DrawingListeners are told once, however many shapes are added.
+     * @param newShapes the shapes to add, lowest z-order first.
      */
-    public Shape undo() {
-        try {
-            Shape removedShape = shapes.pop(); // remove and return last added shape
-            currentShape = null; // current shape has been removed, set to null
-            undoList.add(removedShape); // add removed shape to undoList
-            return removedShape;
-        } catch (EmptyStackException e) { //Stack is empty
-            return null;
+    public void addShapes(Collection<Shape> newShapes) {
+        addShapes(newShapes, false);
+    }
+
+    /**
+     * Start a batch of changes. DrawingListeners are not told about the changes made until the batch
+     * is committed, and then they are told once about all of them. Batches may be nested, in which case
+     * the listeners are told when the outermost batch is committed.
+     */
+    public void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * End a batch started with beginBatch(), and tell the DrawingListeners about its changes
+     * if it was the outermost batch and the visible shapes changed.
+     * @throws IllegalStateException if no batch was started.
+     */
+    public void commit() {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("No batch to commit");
+        }
+        batchDepth--;
+        if (batchDepth > 0 || !changed) {
+            return;
+        }
+        changed = false;
+        DrawingChange change = new DrawingChange(changeAdded, changeAppendOnly, changeBounded,
+                changeMinX, changeMinY, changeMaxX, changeMaxY);
+        for (DrawingListener listener : new ArrayList<>(drawingListeners)) {
+            listener.drawingChanged(change);
         }
     }
 
     /**
-     * Attempt to re-add the last removed shape by getting it from the undoList and adding
-     * it back to the shapes list.
-     * @return null if the undoList is empty, otherwise returns the last removed shape.
+     * Add a listener which is told about changes to the visible shapes, once per change or batch.
+     * @param listener the listener to add.
      */
-    public Shape redo() {
-        try {
-            Shape lastRemovedShape = undoList.pop(); // remove and return last shape to be removed
-            shapes.add(lastRemovedShape); // add shape back to shapes list
-            return lastRemovedShape;
-        } catch (EmptyStackException e) { // Stack is empty
-            return null;
+    public void addDrawingListener(DrawingListener listener) {
+        drawingListeners.add(listener);
+    }
+
+    /**
+     * Remove a listener added with addDrawingListener().
+     * @param listener the listener to remove.
+     */
+    public void removeDrawingListener(DrawingListener listener) {
+        drawingListeners.remove(listener);
+    }
+
+    /**
+     * Add a listener which is told about every change to the stored shapes.
+     * @param listener the listener to add.
+     */
+    public void addStoreListener(StoreListener listener) {
+        storeListeners.add(listener);
+    }
+
+    /**
+     * Remove a listener added with addStoreListener().
+     * @param listener the listener to remove.
+     */
+    public void removeStoreListener(StoreListener listener) {
+        storeListeners.remove(listener);
+    }
+
+    /**
+     * Describe the whole store to a listener as if it had watched the drawing from the start:
+     * one append for every stored shape, including cleared and undone shapes, then the visible range.
+     * Applying the calls in order to an empty drawing reproduces this one, without its command history.
+     * @param listener the listener to tell, which does not need to be added with addStoreListener().
+     */
+    public void describeTo(StoreListener listener) {
+        for (int i = 0; i < shapes.size(); i++) {
+            listener.shapeAppended(i, shapes.get(i));
+        }
+        listener.visibleRangeChanged(base, top);
+    }
+
+    /**
+     * Take an unchangeable snapshot of the visible shapes in constant time, for other threads to read.
+     * @return the snapshot, the same one as last time if the drawing has not changed since.
+     */
+    public DrawingSnapshot snapshot() {
+        if (snapshot == null || snapshot.getVersion() != version) {
+            snapshot = new DrawingSnapshot(shapes.snapshot(), base, top, version);
         }
+        return snapshot;
+    }
+
+    /**
+     * Get the version of the drawing, which grows with every change to its shapes.
+     * @return the version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Offer shapes to be added on top of the drawing. May be called by any thread, and never waits:
+     * the shapes are pushed onto a lock free queue, which the owner of the drawing empties with
+     * takeOfferedShapes(). Shapes offered by one thread are taken in the order they were offered.
+     * @param newShapes the shapes to add, lowest z-order first. The list is copied.
+     */
+    public void offerShapes(List<Shape> newShapes) {
+        if (newShapes.isEmpty()) {
+            return;
+        }
+        Offer offer = new Offer(new ArrayList<>(newShapes));
+        Offer head;
+        do {
+            head = offers.get();
+            offer.next = head;
+        } while (!offers.compareAndSet(head, offer));
+        Runnable listener = offerListener;
+        if (head == null && listener != null) {
+            listener.run(); // the queue was empty, so the owner may not know there are shapes to take
+        }
+    }
+
+    /**
+     * Set the task which is run when shapes are offered while none are waiting in the lock free queue,
+     * for example one which asks the owner of the drawing to take them. It is run by the offering thread.
+     * @param listener the task, or null for none.
+     */
+    public void setOfferListener(Runnable listener) {
+        offerListener = listener;
     }
 
     /**
-     * Delete all currently stored user shapes.
+     * Take shapes offered by other threads, oldest first. The shapes are not added to the drawing,
+     * so the caller can add them with addShapes() or send them elsewhere.
+     * @param max the most shapes to take, the rest stay offered.
+     * @return the shapes taken, empty if none were offered.
+     */
+    public List<Shape> takeOfferedShapes(int max) {
+        // the queue holds the newest offer first, so reverse it before moving it to the offered shapes
+        Offer reversed = null;
+        for (Offer offer = offers.getAndSet(null); offer != null; ) {
+            Offer next = offer.next;
+            offer.next = reversed;
+            reversed = offer;
+            offer = next;
+        }
+        for (Offer offer = reversed; offer != null; offer = offer.next) {
+            offered.addAll(offer.shapes);
+        }
+        List<Shape> taken = new ArrayList<>(Math.min(max, offered.size()));
+        while (taken.size() < max && !offered.isEmpty()) {
+            taken.add(offered.poll());
+        }
+        return taken;
+    }
+
+    /**
+     * Check whether any offered shapes have not been taken yet.
+     * @return true if takeOfferedShapes() would return shapes.
+     */
+    public boolean hasOfferedShapes() {
+        return !offered.isEmpty() || offers.get() != null;
+    }
+
+    /**
+     * Get the visible shapes, in the order they were added.
+     * @return read-only list of shapes.
+     */
+    public List<Shape> getShapes() {
+        return new AbstractList<Shape>() {
+            @Override
+            public Shape get(int i) {
+                if (i < 0 || i >= top - base) {
+                    throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + (top - base));
+                }
+                return shapes.get(base + i);
+            }
+
+            @Override
+            public int size() {
+                return top - base;
+            }
+        };
+    }
+
+    /**
+     * Get the number of visible shapes.
+     * @return number of shapes.
+     */
+    public int getShapeCount() {
+        return top - base;
+    }
+
+    /**
+     * Get the stored shapes whose bounding box intersects a rectangle.
+     * @param x left edge of the rectangle.
+     * @param y top edge of the rectangle.
+     * @param width width of the rectangle.
+     * @param height height of the rectangle.
+     * @return the intersecting shapes, in the order they were added.
+     */
+    public List<Shape> getShapesIn(int x, int y, int width, int height) {
+        int[] ids = query(x, y, width, height);
+        List<Shape> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            result.add(shapes.get(id));
+        }
+        return result;
+    }
+
+    /**
+     * Get the positions in getShapes() of the visible shapes whose bounding box intersects a rectangle.
+     * Positions stay the same until shapes are undone, cleared or replaced by opening a drawing.
+     * @param x left edge of the rectangle.
+     * @param y top edge of the rectangle.
+     * @param width width of the rectangle.
+     * @param height height of the rectangle.
+     * @return the positions of the intersecting shapes, in ascending order.
+     */
+    public int[] getShapeIndexesIn(int x, int y, int width, int height) {
+        int[] ids = query(x, y, width, height);
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] -= base;
+        }
+        return ids;
+    }
+
+    /**
+     * Build the spatial index of the stored shapes in the background, instead of on the first query.
+     * Until it is ready, queries check the shapes through the store, and the index is used from the first
+     * query after it is ready. This suits a large drawing just opened, whose shapes would otherwise all be
+     * indexed by the first query. Nothing is built for a store which is searched without the index; the
+     * pages of a PagedShapeStore are decoded into its cache instead, while the cache has room, so that
+     * they need not be decoded when they come into view.
+     * @param executor runs the build, on a thread other than the owner of the drawing.
+     */
+    public void buildIndex(Executor executor) {
+        if (shapes instanceof PagedShapeStore) {
+            executor.execute(((PagedShapeStore) shapes.snapshot())::prefetch);
+        }
+        if (indexBuild != null || shapes.findsByBounds()) {
+            return; // already building, or no index is needed
+        }
+        ShapeStore store = shapes.snapshot();
+        IndexBuild build = new IndexBuild(store.size());
+        indexBuild = build;
+        executor.execute(() -> {
+            ShapeIndex built = new ShapeIndex();
+            for (int i = 0; i < build.end; i++) {
+                built.insert(i, store.get(i));
+            }
+            build.index = built;
+        });
+    }
+
+    /**
+     * Attempt to undo the last command, such as adding a shape or clearing the drawing.
+     * redo() will allow for making the command again.
+     * @return null if there is no command to undo, otherwise returns the undone command.
+     */
+    public Command undo() {
+        Command command = journal.undo();
+        if (command != null) {
+            beginBatch();
+            try {
+                command.undo(this);
+            } finally {
+                commit();
+            }
+            currentShape = null; // current shape may have been removed, set to null
+        }
+        return command;
+    }
+
+    /**
+     * Attempt to make the last undone command again.
+     * @return null if there is no command to redo, otherwise returns the redone command.
+     */
+    public Command redo() {
+        Command command = journal.redo();
+        if (command != null) {
+            beginBatch();
+            try {
+                command.redo(this);
+            } finally {
+                commit();
+            }
+        }
+        return command;
+    }
+
+    /**
+     * Delete all currently visible user shapes. The shapes stay in the store so that
+     * the clear can be undone.
      */
     public void clearShapes() {
-        this.shapes.clear();
+        if (top > base) {
+            beginBatch();
+            try {
+                journal.record(new ClearCommand(base, top));
+                setVisibleRange(top, top);
+                trimHistory();
+            } finally {
+                commit();
+            }
+        }
         currentShape = null;
     }
 
+    /**
+     * Set the maximum number of commands which can be undone.
+     * @param limit maximum number of commands, at least 1.
+     */
+    public void setUndoLimit(int limit) {
+        journal.setLimit(limit);
+        trimHistory();
+    }
+
+    /**
+     * Set the maximum number of cleared shapes which are kept so that clearing can be undone.
+     * Once more cleared shapes are kept, the oldest commands are forgotten until the cleared
+     * shapes they refer to can be discarded.
+     * @param limit maximum number of hidden cleared shapes.
+     */
+    public void setHistoryShapeLimit(int limit) {
+        historyShapeLimit = limit;
+        trimHistory();
+    }
+
+    /**
+     * Get the number of commands which can be undone.
+     * @return number of undoable commands.
+     */
+    public int getUndoCount() {
+        return journal.getUndoCount();
+    }
+
+    /**
+     * Get the number of commands which can be redone.
+     * @return number of redoable commands.
+     */
+    public int getRedoCount() {
+        return journal.getRedoCount();
+    }
+
+    /**
+     * Set the range of store positions which are visible. Used by commands to undo and redo changes.
+     * @param start store position of the first visible shape.
+     * @param end store position after the last visible shape.
+     */
+    void setVisibleRange(int start, int end) {
+        if (start == base && end >= top) {
+            shapesAdded(top, end);
+        } else {
+            // the shapes in only one of the old and new range appeared or disappeared
+            shapesChanged(Math.min(base, start), Math.max(base, start));
+            shapesChanged(Math.min(top, end), Math.max(top, end));
+        }
+        base = start;
+        top = end;
+        version++;
+        for (StoreListener listener : storeListeners) {
+            listener.visibleRangeChanged(start, end);
+        }
+    }
+
+    /**
+     * Get the number of stored shapes, including cleared and undone shapes.
+     * @return number of shapes in the store.
+     */
+    int getStoreSize() {
+        return shapes.size();
+    }
+
+    /**
+     * Repeat a change reported by StoreListener.shapeAppended(), for example on a copy of a drawing.
+     * The command history is forgotten, since it does not describe changes made this way.
+     * @param position store position of the new shape, at most the number of stored shapes.
+     * @param shape the new shape.
+     */
+    public void applyAppend(int position, Shape shape) {
+        if (position < 0 || position > shapes.size()) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", Size: " + shapes.size());
+        }
+        beginBatch();
+        try {
+            journal.clear();
+            if (position >= top) {
+                shapesAdded(top, position); // undone shapes below the new shape become visible again
+            } else {
+                shapesChanged(Math.max(base, position), top); // replaced by the new shape
+            }
+            truncate(position);
+            shapes.add(shape);
+            base = Math.min(base, position);
+            top = position + 1;
+            version++;
+            shapeAdded(shape);
+            for (StoreListener listener : storeListeners) {
+                listener.shapeAppended(position, shape);
+            }
+        } finally {
+            commit();
+        }
+    }
+
+    /**
+     * Repeat a change reported by StoreListener.visibleRangeChanged().
+     * The command history is forgotten, since it does not describe changes made this way.
+     * @param start store position of the first visible shape.
+     * @param end store position after the last visible shape.
+     */
+    public void applyVisibleRange(int start, int end) {
+        if (start < 0 || start > end || end > shapes.size()) {
+            throw new IndexOutOfBoundsException("Range: " + start + " to " + end + ", Size: " + shapes.size());
+        }
+        beginBatch();
+        try {
+            journal.clear();
+            setVisibleRange(start, end);
+        } finally {
+            commit();
+        }
+    }
+
+    /**
+     * Repeat a change reported by StoreListener.storeCompacted().
+     * The command history is forgotten, since it does not describe changes made this way.
+     * @param count number of shapes to remove from the start of the store, at most the first visible position.
+     */
+    public void applyCompaction(int count) {
+        if (count < 0 || count > base) {
+            throw new IndexOutOfBoundsException("Count: " + count + ", First visible: " + base);
+        }
+        journal.clear();
+        compact(count);
+    }
+
+    /**
+     * Get the store position of the first visible shape.
+     * @return store position.
+     */
+    int getVisibleStart() {
+        return base;
+    }
+
+    /**
+     * Forget the oldest commands while too many cleared shapes are kept for them,
+     * then discard the shapes which no command can make visible again.
+     */
+    private void trimHistory() {
+        if (base == 0) {
+            return; // no cleared shapes are kept
+        }
+        while (Math.min(base, journal.getLowestPosition()) < base - historyShapeLimit && journal.trimOldest()) {
+            // forget commands until the cleared shapes still referred to fit within the limit
+        }
+        int lowest = Math.min(base, journal.getLowestPosition());
+        // Only compact once at least half of the store can be discarded, so the copying is amortized
+        if (lowest > 0 && lowest >= shapes.size() / 2) {
+            compact(lowest);
+        }
+    }
+
+    /**
+     * Discard shapes from the start of the store and move every position down.
+     * @param count number of shapes to discard.
+     */
+    private void compact(int count) {
+        shapes.removeFirst(count);
+        base -= count;
+        top -= count;
+        journal.shiftPositions(count);
+        version++;
+        index = new ShapeIndex(); // every position moved, so the next query indexes the shapes again
+        indexed = 0;
+        if (indexBuild != null) {
+            indexBuild.compacted = true; // the positions of the index being built moved too
+        }
+        for (StoreListener listener : storeListeners) {
+            listener.storeCompacted(count);
+        }
+    }
+
+    /**
+     * Remove the shapes from a store position on from the store and the index.
+     * @param size store position of the first shape to remove.
+     */
+    private void truncate(int size) {
+        if (indexed > size) {
+            index.removeFrom(size);
+            indexed = size;
+        }
+        if (indexBuild != null) {
+            indexBuild.limit = Math.min(indexBuild.limit, size);
+        }
+        shapes.truncate(size);
+    }
+
+    /**
+     * Find the positions in the store of the visible shapes whose bounding box intersects a rectangle.
+     * The positions in the index are found through it, the others are checked through the store.
+     * A store which finds shapes by the bounds of groups of shapes is searched without the index.
+     * @param x left edge of the rectangle.
+     * @param y top edge of the rectangle.
+     * @param width width of the rectangle.
+     * @param height height of the rectangle.
+     * @return store positions of the intersecting shapes, in ascending order.
+     */
+    private int[] query(int x, int y, int width, int height) {
+        if (shapes.findsByBounds()) {
+            return shapes.findIn(base, top, x, y, x + width, y + height);
+        }
+        updateIndex();
+        int[] ids = index.query(x, y, x + width, y + height, base, Math.min(top, indexed));
+        if (indexed >= top) {
+            return ids;
+        }
+        int[] unindexed = shapes.findIn(Math.max(base, indexed), top, x, y, x + width, y + height);
+        int[] result = Arrays.copyOf(ids, ids.length + unindexed.length);
+        System.arraycopy(unindexed, 0, result, ids.length, unindexed.length);
+        return result;
+    }
+
+    /**
+     * Add the shapes stored since the index was last queried to the index, once any index being
+     * built in the background is ready.
+     */
+    private void updateIndex() {
+        if (indexBuild != null) {
+            ShapeIndex built = indexBuild.index;
+            if (built == null) {
+                return; // still building, so queries check the unindexed shapes through the store
+            }
+            if (!indexBuild.compacted) {
+                // use the built index in place of the shapes indexed since it was started
+                built.removeFrom(indexBuild.limit);
+                index = built;
+                indexed = Math.min(indexBuild.end, indexBuild.limit);
+            }
+            indexBuild = null;
+        }
+        for (; indexed < shapes.size(); indexed++) {
+            index.insert(indexed, shapes.get(indexed));
+        }
+    }
+
+    /**
+     * Start summarising the changes for the DrawingListeners, unless there are changes not yet sent.
+     */
+    private void startChange() {
+        if (!changed) {
+            changed = true;
+            changeAdded = 0;
+            changeAppendOnly = true;
+            changeBounded = true;
+            changeMinX = Integer.MAX_VALUE;
+            changeMinY = Integer.MAX_VALUE;
+            changeMaxX = Integer.MIN_VALUE;
+            changeMaxY = Integer.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Note that a shape was added on top of the visible shapes.
+     * @param shape the new shape.
+     */
+    private void shapeAdded(Shape shape) {
+        startChange();
+        changeAdded++;
+        addDirtyBounds(shape);
+    }
+
+    /**
+     * Note that the stored shapes at a range of positions became visible on top of the visible shapes.
+     * @param start store position of the first shape.
+     * @param end store position after the last shape.
+     */
+    private void shapesAdded(int start, int end) {
+        if (start >= end) {
+            return;
+        }
+        startChange();
+        changeAdded += end - start;
+        measureShapes(start, end);
+    }
+
+    /**
+     * Note that the stored shapes at a range of positions appeared or disappeared other than on top.
+     * @param start store position of the first shape.
+     * @param end store position after the last shape.
+     */
+    private void shapesChanged(int start, int end) {
+        if (start >= end) {
+            return;
+        }
+        startChange();
+        changeAppendOnly = false;
+        measureShapes(start, end);
+    }
+
+    /**
+     * Add the bounding boxes of stored shapes to the dirty bounds, unless there are too many to measure quickly.
+     * @param start store position of the first shape.
+     * @param end store position after the last shape.
+     */
+    private void measureShapes(int start, int end) {
+        if (!changeBounded || end - start > MAX_MEASURED_SHAPES) {
+            changeBounded = false;
+            return;
+        }
+        for (int i = start; i < end; i++) {
+            addDirtyBounds(shapes.get(i));
+        }
+    }
+
+    /**
+     * Grow the dirty bounds to cover the bounding box of a shape.
+     * @param shape the shape which appeared or disappeared.
+     */
+    private void addDirtyBounds(Shape shape) {
+        changeMinX = Math.min(changeMinX, shape.getX());
+        changeMinY = Math.min(changeMinY, shape.getY());
+        changeMaxX = Math.max(changeMaxX, shape.getX() + shape.getWidth());
+        changeMaxY = Math.max(changeMaxY, shape.getY() + shape.getHeight());
+    }
+
     /**
      * Sets a new shape to be the current shape that the user is drawing.
      * @param currentShape the new shape.
@@ -98,8 +802,8 @@ public class DrawingHandler {
      */
     public void newShape(Shape newShape) {
         setCurrentShape(newShape);
-        currentShape.setBorderColour(chosenBorderColour);
-        currentShape.setFillColour(chosenFillColour);
+        currentShape.setBorderColourIndex(chosenBorderColour);
+        currentShape.setFillColourIndex(chosenFillColour);
     }
 
     /**
@@ -113,17 +817,19 @@ public class DrawingHandler {
     /**
      * Set the border colour. New shapes will have this border colour.
      * @param chosenBorderColour the selected border colour.
+     * @throws java.io.UncheckedIOException if the colour is new and the colour palette is full.
      */
     public void setChosenBorderColour(SimpleColour chosenBorderColour) {
-        this.chosenBorderColour = chosenBorderColour;
+        this.chosenBorderColour = ColourPalette.intern(chosenBorderColour);
     }
 
     /**
      * Set the fill colour. New shapes will have this fill colour.
      * @param chosenFillColour the selected fill colour.
+     * @throws java.io.UncheckedIOException if the colour is new and the colour palette is full.
      */
     public void setChosenFillColour(SimpleColour chosenFillColour) {
-        this.chosenFillColour = chosenFillColour;
+        this.chosenFillColour = ColourPalette.intern(chosenFillColour);
     }
 
     /**
@@ -131,7 +837,7 @@ public class DrawingHandler {
      * @return chosenBorderColour.
      */
     public SimpleColour getChosenBorderColour() {
-        return chosenBorderColour;
+        return ColourPalette.get(chosenBorderColour);
     }
 
     /**
@@ -139,6 +845,33 @@ public class DrawingHandler {
      * @return chosenFillColour.
      */
     public SimpleColour getChosenFillColour() {
-        return chosenFillColour;
+        return ColourPalette.get(chosenFillColour);
+    }
+
+    /**
+     * A spatial index being built in the background from a snapshot of the store.
+     */
+    private static class IndexBuild {
+        private final int end; // store positions below this are indexed by the build
+        private volatile ShapeIndex index; // the built index, or null until it is ready
+        private int limit; // lowest size of the store since the build started, positions from here are stale
+        private boolean compacted; // true if the store was compacted since, so the built positions are wrong
+
+        private IndexBuild(int end) {
+            this.end = end;
+            limit = end;
+        }
+    }
+
+    /**
+     * Shapes offered together, in the lock free queue of offered shapes.
+     */
+    private static class Offer {
+        private final List<Shape> shapes;
+        private Offer next; // the offer made before this one
+
+        private Offer(List<Shape> shapes) {
+            this.shapes = shapes;
+        }
     }
 }
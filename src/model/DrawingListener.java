@@ -0,0 +1,18 @@
+package model;
+
+/**
+ * A DrawingListener is told when the visible shapes of a DrawingHandler change.
+ * Unlike a StoreListener, which is told about every shape, a DrawingListener is told once for each
+ * change made outside a batch and once for a whole batch, with a summary of what changed,
+ * so adding many shapes costs the listener one redraw rather than one per shape.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public interface DrawingListener {
+
+    /**
+     * Called after the visible shapes changed, once the outermost batch was committed.
+     * @param change summary of the changes.
+     */
+    void drawingChanged(DrawingChange change);
+}
@@ -0,0 +1,130 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A DrawingSnapshot is an unchangeable version of the visible shapes of a DrawingHandler.
+ * Taking one costs constant time, since it shares the store of the drawing, which copies what a
+ * snapshot can see before changing it. Any thread can read a snapshot while the drawing goes on
+ * changing, for example to draw it in the background, without locking and without copying the shapes.
+ * A snapshot must be handed to another thread in a way which makes the drawing's writes visible,
+ * such as a volatile field, an executor or a SwingWorker.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public final class DrawingSnapshot {
+    private final ShapeStore store; // an unchangeable store
+    private final int start; // store position of the first visible shape
+    private final int end; // store position after the last visible shape
+    private final long version; // the drawing's version when the snapshot was taken
+
+    /**
+     * Create a snapshot of part of an unchangeable store.
+     * @param store a snapshot of the drawing's store.
+     * @param start store position of the first visible shape.
+     * @param end store position after the last visible shape.
+     * @param version the drawing's version.
+     */
+    DrawingSnapshot(ShapeStore store, int start, int end, long version) {
+        this.store = store;
+        this.start = start;
+        this.end = end;
+        this.version = version;
+    }
+
+    /**
+     * Get the version of the drawing the snapshot was taken from, which grows with every change.
+     * @return the version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the number of visible shapes.
+     * @return number of shapes.
+     */
+    public int getShapeCount() {
+        return end - start;
+    }
+
+    /**
+     * Get the visible shapes, in the order they were added.
+     * @return read-only list of shapes.
+     */
+    public List<Shape> getShapes() {
+        return new AbstractList<Shape>() {
+            @Override
+            public Shape get(int i) {
+                if (i < 0 || i >= end - start) {
+                    throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + (end - start));
+                }
+                return store.get(start + i);
+            }
+
+            @Override
+            public int size() {
+                return end - start;
+            }
+        };
+    }
+
+    /**
+     * Get the visible shapes whose bounding box intersects a rectangle, the same shapes as
+     * DrawingHandler.getShapesIn() returned when the snapshot was taken.
+     * The snapshot has no spatial index, so the store checks every shape, or every page of shapes
+     * of a PagedShapeStore, which suits background threads.
+     * @param x left edge of the rectangle.
+     * @param y top edge of the rectangle.
+     * @param width width of the rectangle.
+     * @param height height of the rectangle.
+     * @return the intersecting shapes, in the order they were added.
+     */
+    public List<Shape> getShapesIn(int x, int y, int width, int height) {
+        int[] positions = store.findIn(start, end, x, y, x + width, y + height);
+        List<Shape> result = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            result.add(store.get(position));
+        }
+        return result;
+    }
+
+    /**
+     * Stop reading the shapes of the drawing from a file which is about to be replaced, if the drawing was
+     * opened from it, by reading them into memory. This can take a while for a large drawing, and any thread
+     * may call it; the shapes of the drawing and of its snapshots do not change.
+     * @param file the file to be replaced.
+     * @throws IOException if the shapes cannot be read from the file, or the file cannot be closed.
+     */
+    public void releaseFile(Path file) throws IOException {
+        store.releaseFile(file);
+    }
+
+    /**
+     * Get every stored shape, including cleared and undone shapes.
+     * @return the unchangeable store.
+     */
+    ShapeStore getStore() {
+        return store;
+    }
+
+    /**
+     * Get the store position of the first visible shape.
+     * @return store position.
+     */
+    int getStart() {
+        return start;
+    }
+
+    /**
+     * Get the store position after the last visible shape.
+     * @return store position.
+     */
+    int getEnd() {
+        return end;
+    }
+}
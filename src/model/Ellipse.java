@@ -20,34 +20,30 @@ public class Ellipse extends Shape {
     }
 
     /**
-     * X coordinate for the start of the ellipse
-     * @return int X coordinate
+     * Get the type of this shape.
+     * @return ShapeType.ELLIPSE.
      */
-    public int getX() {
-        return Math.min(startX, endX);
+    @Override
+    public ShapeType getType() {
+        return ShapeType.ELLIPSE;
     }
 
     /**
-     * Y coordinate for the end of the ellipse.
-     * @return int Y coordinate
+     * Check whether a point is on the border of the ellipse or inside its filled interior,
+     * using the equation of the ellipse (x / a)^2 + (y / b)^2 <= 1 with the radii a and b grown
+     * by half the border width and the tolerance, so points near the corners of the bounding box miss.
+     * @param x x coordinate of the point.
+     * @param y y coordinate of the point.
+     * @param tolerance distance outside the border which still counts as on it.
+     * @return true if the point is on the ellipse.
      */
-    public int getY() {
-        return Math.min(startY, endY);
-    }
-
-    /**
-     * Find the height of the ellipse.
-     * @return int height of ellipse.
-     */
-    public int getHeight() {
-        return Math.max(startY, endY) - getY();
-    }
-
-    /**
-     * Find the width of the ellipse.
-     * @return int width of ellipse.
-     */
-    public int getWidth() {
-        return Math.max(startX, endX) - getX();
+    @Override
+    public boolean hitTest(double x, double y, double tolerance) {
+        double limit = 0.5 + tolerance;
+        double radiusX = getWidth() / 2.0;
+        double radiusY = getHeight() / 2.0;
+        double nx = (x - (getX() + radiusX)) / (radiusX + limit);
+        double ny = (y - (getY() + radiusY)) / (radiusY + limit);
+        return nx * nx + ny * ny <= 1;
     }
 }
@@ -0,0 +1,22 @@
+package model;
+
+import java.util.List;
+
+/**
+ * An ImportListener receives the shapes of a drawing file in batches while the file is read,
+ * so a large file never has to be held in memory as a whole before its shapes are stored.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public interface ImportListener {
+
+    /**
+     * Called with each batch of shapes which has been read, and once more when the end of the file is reached.
+     * The list is reused for the next batch, so the shapes must be copied out of it before returning.
+     * @param batch the shapes read since the last call, lowest z-order first, possibly empty.
+     * @param bytesRead number of bytes of the file read so far.
+     * @param totalBytes size of the file in bytes.
+     * @return true to continue reading, false to stop.
+     */
+    boolean shapesRead(List<Shape> batch, long bytesRead, long totalBytes);
+}
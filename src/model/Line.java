@@ -17,4 +17,25 @@ public class Line extends Shape {
     public Line(int startX, int startY, int endX, int endY) {
         super(startX, startY, endX, endY);
     }
+
+    /**
+     * Get the type of this shape.
+     * @return ShapeType.LINE.
+     */
+    @Override
+    public ShapeType getType() {
+        return ShapeType.LINE;
+    }
+
+    /**
+     * Check whether a point is within half the border width and the tolerance of the line.
+     * @param x x coordinate of the point.
+     * @param y y coordinate of the point.
+     * @param tolerance distance from the line which still counts as on it.
+     * @return true if the point is on the line.
+     */
+    @Override
+    public boolean hitTest(double x, double y, double tolerance) {
+        return distanceToSegment(x, y, startX, startY, endX, endY) <= 0.5 + tolerance;
+    }
 }
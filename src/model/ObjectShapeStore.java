@@ -0,0 +1,109 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * A ShapeStore which keeps every shape as a separate object in an array.
+ * This is the default store of a DrawingHandler. Added shapes are frozen, since the store keeps them.
+ * Snapshots share the array: appending only writes past the end of every snapshot, and the array is
+ * copied before a shape a snapshot can see is overwritten or moved. Very large drawings are better kept
+ * in a PrimitiveShapeStore, which copies a chunk of the store instead of all of it.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public class ObjectShapeStore implements ShapeStore {
+    private Shape[] shapes;
+    private int size;
+    private final boolean snapshot; // true if this store is a snapshot, which cannot be changed
+    private int sharedEnd; // positions below this may be seen by a snapshot, 0 once the array is copied
+
+    /**
+     * Create a new, empty ObjectShapeStore.
+     */
+    public ObjectShapeStore() {
+        shapes = new Shape[16];
+        snapshot = false;
+    }
+
+    /**
+     * Create a snapshot sharing the array of a store.
+     */
+    private ObjectShapeStore(ObjectShapeStore store) {
+        shapes = store.shapes;
+        size = store.size;
+        snapshot = true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Shape get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return shapes[index];
+    }
+
+    @Override
+    public void add(Shape shape) {
+        checkWritable();
+        if (size == shapes.length || size < sharedEnd) {
+            // a new array, so the snapshots keep the old one
+            Shape[] copy = new Shape[size == shapes.length ? size * 2 : shapes.length];
+            System.arraycopy(shapes, 0, copy, 0, size);
+            shapes = copy;
+            sharedEnd = 0;
+        }
+        shape.freeze(); // the stored shape must not change under the index and the snapshots
+        shapes[size++] = shape;
+    }
+
+    @Override
+    public void truncate(int size) {
+        checkWritable();
+        if (size < 0 || size > this.size) {
+            throw new IndexOutOfBoundsException("Size: " + size);
+        }
+        // let the removed shapes be collected, unless a snapshot can see them
+        Arrays.fill(shapes, Math.min(Math.max(size, sharedEnd), this.size), this.size, null);
+        this.size = size;
+    }
+
+    @Override
+    public void removeFirst(int count) {
+        checkWritable();
+        if (count < 0 || count > size) {
+            throw new IndexOutOfBoundsException("Count: " + count);
+        }
+        int remaining = size - count;
+        if (sharedEnd > 0) {
+            shapes = Arrays.copyOfRange(shapes, count, count + Math.max(shapes.length - count, 16));
+            sharedEnd = 0;
+        } else {
+            System.arraycopy(shapes, count, shapes, 0, remaining);
+            Arrays.fill(shapes, remaining, size, null);
+        }
+        size = remaining;
+    }
+
+    @Override
+    public ShapeStore snapshot() {
+        if (snapshot) {
+            return this;
+        }
+        sharedEnd = Math.max(sharedEnd, size);
+        return new ObjectShapeStore(this);
+    }
+
+    /**
+     * Refuse to change a snapshot.
+     */
+    private void checkWritable() {
+        if (snapshot) {
+            throw new UnsupportedOperationException("A snapshot cannot be changed");
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A ShapeStore which reads the shapes of a drawing file straight from the open file, a page at a time,
+ * instead of loading every shape when the file is opened. The file's page table holds the bounding box of
+ * each page, so findIn() only decodes the pages which overlap the rectangle, and opening a file and drawing
+ * the part of it in view takes about as long however large the rest of the file is.
+ * Decoded pages are kept in a cache of up to an eighth of the heap, from which the least recently used
+ * page is evicted, so a view of the whole of a file of a few million shapes decodes each page once rather
+ * than on every repaint. prefetch() decodes the pages in the background while the cache has room.
+ * Shapes added after the records of the file are kept in a CompressedShapeStore, which also skips
+ * the shapes outside the rectangle by their bounds, so a DrawingHandler searches the store without an index.
+ * Snapshots share the open file, the page cache and the added shapes. The cache is locked while it is read,
+ * so any number of threads may read a store's snapshots, and each snapshot, at the same time.
+ * releaseFile() copies the records into a CompressedShapeStore and closes the file, for the store and all
+ * of its snapshots at once, so that the file can be replaced.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public class PagedShapeStore implements ShapeStore {
+    private static final ShapeType[] TYPES = ShapeType.values();
+    private static final int CACHE_HEAP_SHARE = 8; // the page cache takes up to this fraction of the maximum heap
+    private static final int MIN_CACHED_PAGES = 16; // decoded pages kept however small the heap
+    private static final int PAGE_SHAPE_BYTES = 25; // bytes of a decoded shape: type, coordinates and colours
+    private static final int RECORD_INTS = 6; // startX, startY, endX, endY, type, colours
+    private static final int RECORD_BYTES = RECORD_INTS * 4;
+
+    private final Pages pages; // the records of the file and their decoded pages, shared with the snapshots
+    private int first; // record at position 0
+    private int records; // positions held by records of the file, the added shapes come after them
+    private ShapeStore added; // shapes added after the records of the file
+    private final boolean snapshot; // true if this store is a snapshot, which cannot be changed
+    private volatile Page last; // the page read last, which is read again most often, or null
+
+    /**
+     * Create a store over the records of an open drawing file.
+     * @param channel the open file, which the store closes once the records are released.
+     * @param recordsStart position of the first record in the file.
+     * @param recordCount number of records in the file.
+     * @param pageShapes records per page.
+     * @param pageBounds minX, minY, maxX, maxY of the records of each page.
+     * @param palette palette index of each entry of the file's colour table.
+     * @param path the file, for error messages and for releaseFile().
+     */
+    PagedShapeStore(FileChannel channel, long recordsStart, int recordCount, int pageShapes, int[] pageBounds,
+                    int[] palette, Path path) {
+        pages = new Pages(channel, recordsStart, recordCount, pageShapes, pageBounds, palette, path);
+        records = recordCount;
+        added = new CompressedShapeStore();
+        snapshot = false;
+    }
+
+    /**
+     * Create a snapshot sharing the open file, the page cache and the added shapes of a store.
+     */
+    private PagedShapeStore(PagedShapeStore store) {
+        pages = store.pages;
+        first = store.first;
+        records = store.records;
+        added = store.added.snapshot();
+        snapshot = true;
+    }
+
+    @Override
+    public int size() {
+        return records + added.size();
+    }
+
+    @Override
+    public Shape get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        if (index >= records) {
+            return added.get(index - records);
+        }
+        int record = first + index;
+        Page page = page(record / pages.pageShapes);
+        int i = record % pages.pageShapes;
+        int c = i * 4;
+        Shape shape = TYPES[page.types[i]].create(page.coordinates[c], page.coordinates[c + 1],
+                page.coordinates[c + 2], page.coordinates[c + 3]);
+        shape.setBorderColourIndex(page.colours[i * 2]);
+        shape.setFillColourIndex(page.colours[i * 2 + 1]);
+        shape.freeze(); // changing the view would not change the store
+        return shape;
+    }
+
+    @Override
+    public void add(Shape shape) {
+        checkWritable();
+        added.add(shape);
+    }
+
+    @Override
+    public void truncate(int size) {
+        checkWritable();
+        if (size < 0 || size > size()) {
+            throw new IndexOutOfBoundsException("Size: " + size);
+        }
+        if (size < records) {
+            records = size; // the records above are no longer part of the store
+            added.truncate(0);
+        } else {
+            added.truncate(size - records);
+        }
+    }
+
+    @Override
+    public void removeFirst(int count) {
+        checkWritable();
+        if (count < 0 || count > size()) {
+            throw new IndexOutOfBoundsException("Count: " + count);
+        }
+        int fromRecords = Math.min(count, records);
+        first += fromRecords;
+        records -= fromRecords;
+        added.removeFirst(count - fromRecords);
+    }
+
+    @Override
+    public ShapeStore snapshot() {
+        if (snapshot) {
+            return this;
+        }
+        return new PagedShapeStore(this);
+    }
+
+    /**
+     * Find the shapes in a range of positions whose bounding box intersects a rectangle.
+     * Only the pages of the file whose bounds intersect the rectangle are decoded.
+     */
+    @Override
+    public int[] findIn(int start, int end, int minX, int minY, int maxX, int maxY) {
+        int[] found = new int[16];
+        int count = 0;
+        int recordsEnd = Math.min(end, records);
+        int pageShapes = pages.pageShapes;
+        int[] pageBounds = pages.pageBounds;
+        if (start < recordsEnd) {
+            int lastPageNumber = (first + recordsEnd - 1) / pageShapes;
+            for (int pageNumber = (first + start) / pageShapes; pageNumber <= lastPageNumber; pageNumber++) {
+                int b = pageNumber * 4;
+                if (pageBounds[b] > maxX || pageBounds[b + 2] < minX
+                        || pageBounds[b + 1] > maxY || pageBounds[b + 3] < minY) {
+                    continue; // no shape of the page is inside the rectangle
+                }
+                Page page = page(pageNumber);
+                int from = Math.max(first + start, pageNumber * pageShapes);
+                int to = Math.min(first + recordsEnd, (pageNumber + 1) * pageShapes);
+                for (int record = from; record < to; record++) {
+                    int c = (record % pageShapes) * 4;
+                    int x = Math.min(page.coordinates[c], page.coordinates[c + 2]);
+                    int y = Math.min(page.coordinates[c + 1], page.coordinates[c + 3]);
+                    int right = Math.max(page.coordinates[c], page.coordinates[c + 2]);
+                    int bottom = Math.max(page.coordinates[c + 1], page.coordinates[c + 3]);
+                    if (x <= maxX && right >= minX && y <= maxY && bottom >= minY) {
+                        if (count == found.length) {
+                            found = Arrays.copyOf(found, count * 2);
+                        }
+                        found[count++] = record - first;
+                    }
+                }
+            }
+        }
+        if (end > records) {
+            // the added shapes after the records of the file
+            for (int position : added.findIn(Math.max(start, records) - records, end - records, minX, minY, maxX, maxY)) {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = position + records;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    @Override
+    public boolean findsByBounds() {
+        return true;
+    }
+
+    /**
+     * Stop reading the records from the file if it is the file to be replaced: the records are read into a
+     * CompressedShapeStore, and then the file is closed. The store and all of its snapshots read the copy from
+     * then on, including those being read by other threads, and their shapes do not change.
+     */
+    @Override
+    public void releaseFile(Path file) throws IOException {
+        if (Files.exists(file) && Files.isSameFile(pages.path, file)) {
+            pages.release();
+        }
+    }
+
+    /**
+     * Decode the pages of the file in order into the shared page cache, until the cache is full, so that they
+     * are ready when they come into view. Pages already cached are kept, and none are evicted. This reads the
+     * whole file if the cache can hold it, so it is meant for a snapshot on a background thread.
+     */
+    void prefetch() {
+        if (records == 0) {
+            return;
+        }
+        int pageShapes = pages.pageShapes;
+        int lastPageNumber = (first + records - 1) / pageShapes;
+        for (int pageNumber = first / pageShapes; pageNumber <= lastPageNumber; pageNumber++) {
+            if (!pages.prefetch(pageNumber)) {
+                return; // the cache is full
+            }
+        }
+    }
+
+    /**
+     * Get a decoded page, through the page read last by this store or the shared page cache.
+     * @param pageNumber the page.
+     * @return the decoded page.
+     */
+    private Page page(int pageNumber) {
+        Page page = last;
+        if (page == null || page.number != pageNumber) {
+            page = pages.page(pageNumber);
+            last = page;
+        }
+        return page;
+    }
+
+    /**
+     * Refuse to change a snapshot.
+     */
+    private void checkWritable() {
+        if (snapshot) {
+            throw new UnsupportedOperationException("A snapshot cannot be changed");
+        }
+    }
+
+    /**
+     * The records of an opened file and the cache of their decoded pages, shared by a store and its snapshots.
+     * The records never change, so a page decoded for one store is right for all of them.
+     * Pages are read from the file under the read lock, so that release() can switch every reader to the
+     * copy of the records and close the file under the write lock.
+     */
+    private static class Pages {
+        private final FileChannel channel; // the open file, closed once the records are copied
+        private final long recordsStart; // position of the first record in the file
+        private final int recordCount; // records in the file
+        private final int pageShapes; // records per page
+        private final int[] pageBounds; // minX, minY, maxX, maxY of the records of each page
+        private final int[] palette; // palette index of each entry of the file's colour table
+        private final Path path; // the file the records are read from
+        private final Map<Integer, Page> cache = new LinkedHashMap<>(16, 0.75f, true); // least recently used first
+        private final int maxCachedPages; // decoded pages kept before the least recently used is evicted
+        private final ReadWriteLock lock = new ReentrantReadWriteLock(); // guards the channel and the copy
+        private ShapeStore copy; // the records once they are released, or null while they are read from the file
+
+        private Pages(FileChannel channel, long recordsStart, int recordCount, int pageShapes, int[] pageBounds,
+                      int[] palette, Path path) {
+            this.channel = channel;
+            this.recordsStart = recordsStart;
+            this.recordCount = recordCount;
+            this.pageShapes = pageShapes;
+            this.pageBounds = pageBounds;
+            this.palette = palette;
+            this.path = path;
+            long pageBytes = (long) PAGE_SHAPE_BYTES * pageShapes;
+            maxCachedPages = (int) Math.max(MIN_CACHED_PAGES,
+                    Math.min(pageBounds.length / 4, Runtime.getRuntime().maxMemory() / CACHE_HEAP_SHARE / pageBytes));
+        }
+
+        /**
+         * Get a decoded page, decoding it and evicting the least recently used page if it is not cached.
+         * The page is decoded outside the lock, so two threads may both decode it, and only one of the
+         * decoded pages is kept.
+         * @param pageNumber the page.
+         * @return the decoded page.
+         */
+        private Page page(int pageNumber) {
+            Page page;
+            synchronized (cache) {
+                page = cache.get(pageNumber); // moves the page to the end of the access order
+            }
+            if (page == null) {
+                Page decoded = decode(pageNumber);
+                synchronized (cache) {
+                    page = cache.putIfAbsent(pageNumber, decoded);
+                    if (page == null) {
+                        page = decoded;
+                        if (cache.size() > maxCachedPages) {
+                            Iterator<Integer> leastRecentlyUsed = cache.keySet().iterator();
+                            leastRecentlyUsed.next();
+                            leastRecentlyUsed.remove();
+                        }
+                    }
+                }
+            }
+            return page;
+        }
+
+        /**
+         * Decode a page into the cache if it is not cached and the cache has room, without evicting a page.
+         * @param pageNumber the page.
+         * @return false if the cache is full.
+         */
+        private boolean prefetch(int pageNumber) {
+            synchronized (cache) {
+                if (cache.containsKey(pageNumber)) {
+                    return true;
+                }
+                if (cache.size() >= maxCachedPages) {
+                    return false;
+                }
+            }
+            Page decoded = decode(pageNumber);
+            synchronized (cache) {
+                if (cache.size() >= maxCachedPages) {
+                    return false;
+                }
+                cache.putIfAbsent(pageNumber, decoded);
+            }
+            return true;
+        }
+
+        /**
+         * Copy every record into a CompressedShapeStore, which every store sharing the records reads from
+         * then on, and close the file. Does nothing if the records were released already.
+         * @throws IOException if the file cannot be read or closed.
+         */
+        private void release() throws IOException {
+            lock.readLock().lock();
+            try {
+                if (copy != null) {
+                    return;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            CompressedShapeStore records = new CompressedShapeStore();
+            try {
+                for (int pageNumber = 0; pageNumber < pageBounds.length / 4; pageNumber++) {
+                    Page page;
+                    synchronized (cache) {
+                        page = cache.get(pageNumber);
+                    }
+                    if (page == null) {
+                        page = decode(pageNumber);
+                    }
+                    for (int i = 0; i < page.types.length; i++) {
+                        int c = i * 4;
+                        records.add(TYPES[page.types[i]], page.coordinates[c], page.coordinates[c + 1],
+                                page.coordinates[c + 2], page.coordinates[c + 3],
+                                page.colours[i * 2], page.colours[i * 2 + 1]);
+                    }
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            lock.writeLock().lock();
+            try {
+                if (copy == null) {
+                    copy = records.snapshot();
+                    channel.close();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Decode the records of a page, from the file or from the copy of the records once they are released.
+         * The file is only read at absolute positions, so any number of threads may decode pages at once.
+         * @param pageNumber the page.
+         * @return the decoded page.
+         * @throws UncheckedIOException if the file cannot be read or a record is not valid.
+         */
+        private Page decode(int pageNumber) {
+            int firstRecord = pageNumber * pageShapes;
+            int count = Math.min(pageShapes, recordCount - firstRecord);
+            Page page = new Page(pageNumber, count);
+            lock.readLock().lock();
+            try {
+                if (copy != null) {
+                    for (int i = 0; i < count; i++) {
+                        Shape shape = copy.get(firstRecord + i);
+                        page.types[i] = (byte) shape.getType().ordinal();
+                        page.coordinates[i * 4] = shape.getStartX();
+                        page.coordinates[i * 4 + 1] = shape.getStartY();
+                        page.coordinates[i * 4 + 2] = shape.getEndX();
+                        page.coordinates[i * 4 + 3] = shape.getEndY();
+                        page.colours[i * 2] = shape.getBorderColourIndex();
+                        page.colours[i * 2 + 1] = shape.getFillColourIndex();
+                    }
+                    return page;
+                }
+                ByteBuffer bytes = ByteBuffer.allocate(count * RECORD_BYTES);
+                DrawingFile.readFully(channel, bytes, recordsStart + (long) RECORD_BYTES * firstRecord, path);
+                IntBuffer records = bytes.asIntBuffer();
+                for (int i = 0; i < count; i++) {
+                    int r = i * RECORD_INTS;
+                    int type = DrawingFile.shapeType(records.get(r + 4));
+                    int border = DrawingFile.borderColour(records.get(r + 4), records.get(r + 5));
+                    int fill = DrawingFile.fillColour(records.get(r + 4), records.get(r + 5));
+                    if (type < 0 || type >= TYPES.length || border >= palette.length || fill >= palette.length) {
+                        throw new IOException("Corrupt drawing file: " + path);
+                    }
+                    page.types[i] = (byte) type;
+                    for (int c = 0; c < 4; c++) {
+                        page.coordinates[i * 4 + c] = records.get(r + c);
+                    }
+                    page.colours[i * 2] = palette[border];
+                    page.colours[i * 2 + 1] = palette[fill];
+                }
+                return page;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * The decoded records of one page, in the same layout as a chunk of a PrimitiveShapeStore.
+     */
+    private static class Page {
+        private final int number; // page number of the records
+        private final byte[] types; // ShapeType ordinal of each shape
+        private final int[] coordinates; // startX, startY, endX, endY of each shape
+        private final int[] colours; // border and fill palette index of each shape
+
+        private Page(int number, int count) {
+            this.number = number;
+            types = new byte[count];
+            coordinates = new int[count * 4];
+            colours = new int[count * 2];
+        }
+    }
+}
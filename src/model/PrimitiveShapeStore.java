@@ -0,0 +1,216 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * A ShapeStore which keeps shapes in parallel primitive arrays instead of one object per shape:
+ * a type tag, four coordinates and two palette indexes per shape.
+ * This avoids an object header and two references per shape, which matters for drawings
+ * with millions of shapes. get() returns a new, frozen Shape object as a lightweight view of the stored values.
+ * The arrays are split into chunks of CHUNK_SHAPES shapes, so a snapshot can share them: appending only
+ * writes past the end of every snapshot, and a chunk which a snapshot can see is copied before a shape in
+ * it is overwritten, which costs one chunk rather than the whole store. Removing shapes from the start
+ * drops whole chunks instead of moving the remaining shapes.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public class PrimitiveShapeStore implements ShapeStore {
+    private static final ShapeType[] TYPES = ShapeType.values();
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SHAPES = 1 << CHUNK_BITS; // shapes per chunk
+    private static final int CHUNK_MASK = CHUNK_SHAPES - 1;
+
+    private byte[][] types; // ShapeType ordinal of each shape, a chunk at a time
+    private int[][] coordinates; // startX, startY, endX, endY of each shape
+    private int[][] colours; // border and fill palette index of each shape
+    private int first; // slot of position 0, counted from the start of the first chunk
+    private int size;
+    private final boolean snapshot; // true if this store is a snapshot, which cannot be changed
+    private int sharedEnd; // slots below this may be seen by a snapshot, so are copied before being overwritten
+    private boolean chunksShared; // true if a snapshot shares the arrays of chunks
+    private int[] chunkEpochs; // the epoch in which each chunk was allocated or last copied
+    private int epoch; // number of snapshots taken, chunks of an older epoch may be shared
+
+    /**
+     * Create a new, empty PrimitiveShapeStore.
+     */
+    public PrimitiveShapeStore() {
+        this(1024);
+    }
+
+    /**
+     * Create a new, empty PrimitiveShapeStore with room for a number of shapes.
+     * @param capacity number of shapes that can be added before the arrays of chunks grow.
+     */
+    public PrimitiveShapeStore(int capacity) {
+        int chunks = Math.max((capacity + CHUNK_MASK) >>> CHUNK_BITS, 1);
+        types = new byte[chunks][];
+        coordinates = new int[chunks][];
+        colours = new int[chunks][];
+        chunkEpochs = new int[chunks];
+        snapshot = false;
+    }
+
+    /**
+     * Create a snapshot sharing the chunks of a store.
+     */
+    private PrimitiveShapeStore(PrimitiveShapeStore store) {
+        types = store.types;
+        coordinates = store.coordinates;
+        colours = store.colours;
+        first = store.first;
+        size = store.size;
+        snapshot = true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Shape get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int slot = first + index;
+        int chunk = slot >>> CHUNK_BITS;
+        int i = slot & CHUNK_MASK;
+        int[] chunkCoordinates = coordinates[chunk];
+        int[] chunkColours = colours[chunk];
+        int c = i * 4;
+        Shape shape = TYPES[types[chunk][i]].create(chunkCoordinates[c], chunkCoordinates[c + 1],
+                chunkCoordinates[c + 2], chunkCoordinates[c + 3]);
+        shape.setBorderColourIndex(chunkColours[i * 2]);
+        shape.setFillColourIndex(chunkColours[i * 2 + 1]);
+        shape.freeze(); // changing the view would not change the store
+        return shape;
+    }
+
+    @Override
+    public void add(Shape shape) {
+        add(shape.getType(), shape.getStartX(), shape.getStartY(), shape.getEndX(), shape.getEndY(),
+                shape.getBorderColourIndex(), shape.getFillColourIndex());
+    }
+
+    /**
+     * Append a shape given its values, without creating a Shape object.
+     * @param type the type of shape.
+     * @param startX start coordinate on x axis
+     * @param startY start coordinate on y axis
+     * @param endX end coordinate on x axis
+     * @param endY end coordinate on y axis
+     * @param borderColour palette index of the border colour.
+     * @param fillColour palette index of the fill colour.
+     */
+    public void add(ShapeType type, int startX, int startY, int endX, int endY, int borderColour, int fillColour) {
+        checkWritable();
+        int slot = first + size;
+        int chunk = slot >>> CHUNK_BITS;
+        prepareChunk(chunk, slot < sharedEnd);
+        int i = slot & CHUNK_MASK;
+        types[chunk][i] = (byte) type.ordinal();
+        int[] chunkCoordinates = coordinates[chunk];
+        int c = i * 4;
+        chunkCoordinates[c] = startX;
+        chunkCoordinates[c + 1] = startY;
+        chunkCoordinates[c + 2] = endX;
+        chunkCoordinates[c + 3] = endY;
+        colours[chunk][i * 2] = borderColour;
+        colours[chunk][i * 2 + 1] = fillColour;
+        size++;
+    }
+
+    @Override
+    public void truncate(int size) {
+        checkWritable();
+        if (size < 0 || size > this.size) {
+            throw new IndexOutOfBoundsException("Size: " + size);
+        }
+        this.size = size; // the values above the new size are simply overwritten by later adds
+    }
+
+    @Override
+    public void removeFirst(int count) {
+        checkWritable();
+        if (count < 0 || count > size) {
+            throw new IndexOutOfBoundsException("Count: " + count);
+        }
+        first += count;
+        size -= count;
+        int dropped = first >>> CHUNK_BITS;
+        if (dropped > 0) {
+            // new arrays of chunks, so snapshots keep the dropped chunks and their own order
+            int length = types.length;
+            types = Arrays.copyOfRange(types, dropped, length + dropped);
+            coordinates = Arrays.copyOfRange(coordinates, dropped, length + dropped);
+            colours = Arrays.copyOfRange(colours, dropped, length + dropped);
+            chunkEpochs = Arrays.copyOfRange(chunkEpochs, dropped, length + dropped);
+            chunksShared = false;
+            first -= dropped << CHUNK_BITS;
+            sharedEnd = Math.max(sharedEnd - (dropped << CHUNK_BITS), 0);
+        }
+    }
+
+    /**
+     * Take a snapshot of the store in constant time. The snapshot shares the chunks of this store,
+     * and the chunks it can see are copied before this store overwrites them.
+     * The snapshot must be handed to other threads in a way which makes the store's writes visible,
+     * such as a volatile field or an executor.
+     * @return an unchangeable store with the same shapes, which later changes to this store do not affect.
+     */
+    @Override
+    public ShapeStore snapshot() {
+        if (snapshot) {
+            return this;
+        }
+        PrimitiveShapeStore copy = new PrimitiveShapeStore(this);
+        chunksShared = true;
+        sharedEnd = Math.max(sharedEnd, first + size);
+        epoch++; // every existing chunk may now be shared
+        return copy;
+    }
+
+    /**
+     * Make sure a chunk exists and can be written.
+     * @param chunk the chunk to write to.
+     * @param shared true if the slot written may be seen by a snapshot.
+     */
+    private void prepareChunk(int chunk, boolean shared) {
+        if (chunk >= types.length) {
+            int length = Math.max(types.length * 2, chunk + 1);
+            types = Arrays.copyOf(types, length);
+            coordinates = Arrays.copyOf(coordinates, length);
+            colours = Arrays.copyOf(colours, length);
+            chunkEpochs = Arrays.copyOf(chunkEpochs, length);
+            chunksShared = false;
+        }
+        if (types[chunk] == null) {
+            // no snapshot has seen this chunk, so it can be set even in shared arrays of chunks
+            types[chunk] = new byte[CHUNK_SHAPES];
+            coordinates[chunk] = new int[CHUNK_SHAPES * 4];
+            colours[chunk] = new int[CHUNK_SHAPES * 2];
+            chunkEpochs[chunk] = epoch;
+        } else if (shared && chunkEpochs[chunk] != epoch) {
+            if (chunksShared) {
+                types = types.clone();
+                coordinates = coordinates.clone();
+                colours = colours.clone();
+                chunksShared = false;
+            }
+            types[chunk] = types[chunk].clone();
+            coordinates[chunk] = coordinates[chunk].clone();
+            colours[chunk] = colours[chunk].clone();
+            chunkEpochs[chunk] = epoch;
+        }
+    }
+
+    /**
+     * Refuse to change a snapshot.
+     */
+    private void checkWritable() {
+        if (snapshot) {
+            throw new UnsupportedOperationException("A snapshot cannot be changed");
+        }
+    }
+}
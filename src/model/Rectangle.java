@@ -19,36 +19,25 @@ public class Rectangle extends Shape {
     }
 
     /**
-     * X coordinate for the start of the rectangle.
-     * @return int X coordinate
+     * Get the type of this shape.
+     * @return ShapeType.RECTANGLE.
      */
-    public int getX() {
-        return Math.min(startX, endX);
+    @Override
+    public ShapeType getType() {
+        return ShapeType.RECTANGLE;
     }
 
     /**
-     * Y coordinate for the end of the rectangle.
-     * @return int Y coordinate
+     * Check whether a point is on the border of the rectangle or inside its filled interior.
+     * @param x x coordinate of the point.
+     * @param y y coordinate of the point.
+     * @param tolerance distance outside the border which still counts as on it.
+     * @return true if the point is on the rectangle.
      */
-    public int getY() {
-        return Math.min(startY, endY);
+    @Override
+    public boolean hitTest(double x, double y, double tolerance) {
+        double limit = 0.5 + tolerance;
+        return x >= getX() - limit && x <= getX() + getWidth() + limit
+                && y >= getY() - limit && y <= getY() + getHeight() + limit;
     }
-
-    /**
-     * Find the height of the rectangle.
-     * @return int height of rectangle.
-     */
-    public int getHeight() {
-        return Math.max(startY, endY) - getY();
-    }
-
-    /**
-     * Find the width of the rectangle.
-     * @return int width of rectangle.
-     */
-    public int getWidth() {
-        return Math.max(startX, endX) - getX();
-    }
-
-
 }
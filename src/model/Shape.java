@@ -4,16 +4,25 @@ package model;
  * An abstract class which outlines how a Shape should be created.
  * All shapes have start and end coordinates, a border colour and a fill colour.
  * The border and fill colour are set to black by default.
+ * Colours are stored as ColourPalette indexes.
+ * The bounding box is worked out whenever the coordinates are set rather than each time it is asked for,
+ * since drawing, culling and indexing ask for it many times per shape. A shape is frozen once it is
+ * committed to a ShapeStore, after which it cannot be changed, so anything worked out from it stays valid.
  *
  * @author Lesleyjane J https://github.com/lesleyjanej
  */
 public abstract class Shape {
-    private SimpleColour borderColour;
-    private SimpleColour fillColour;
+    private int borderColour; // palette index of the border colour
+    private int fillColour; // palette index of the fill colour
     protected int startX;
     protected int startY;
     protected int endX;
     protected int endY;
+    private int x; // left edge of the bounding box
+    private int y; // top edge of the bounding box
+    private int width; // width of the bounding box
+    private int height; // height of the bounding box
+    private boolean frozen; // true once the shape is committed, after which it cannot be changed
 
     /**
      * To instantiate a shape object, specify the start and end coordinates.
@@ -27,17 +36,23 @@ public abstract class Shape {
         this.startY = startY;
         this.endX = endX;
         this.endY = endY;
-        borderColour = new SimpleColour(0,0,0); // black by default
-        fillColour = new SimpleColour(0,0,0); // black by default
-
+        updateBounds();
+        borderColour = ColourPalette.BLACK; // black by default
+        fillColour = ColourPalette.BLACK; // black by default
     }
 
+    /**
+     * Get the type of the shape, which decides how the shape is drawn.
+     * @return the ShapeType of this shape.
+     */
+    public abstract ShapeType getType();
+
     /**
      * Get the border colour of the shape.
      * @return borderColour.
      */
     public SimpleColour getBorderColour() {
-        return borderColour;
+        return ColourPalette.get(borderColour);
     }
 
     /**
@@ -45,6 +60,22 @@ public abstract class Shape {
      * @return fillColour.
      */
     public SimpleColour getFillColour() {
+        return ColourPalette.get(fillColour);
+    }
+
+    /**
+     * Get the palette index of the border colour of the shape.
+     * @return palette index of borderColour.
+     */
+    public int getBorderColourIndex() {
+        return borderColour;
+    }
+
+    /**
+     * Get the palette index of the fill colour of the shape.
+     * @return palette index of fillColour.
+     */
+    public int getFillColourIndex() {
         return fillColour;
     }
 
@@ -80,21 +111,175 @@ public abstract class Shape {
         return endY;
     }
 
+    /**
+     * X coordinate of the left edge of the shape's bounding box.
+     * @return int X coordinate
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * Y coordinate of the top edge of the shape's bounding box.
+     * @return int Y coordinate
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * Find the width of the shape's bounding box.
+     * @return int width of shape.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Find the height of the shape's bounding box.
+     * @return int height of shape.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Check whether the shape's bounding box intersects a rectangle, touching edges included.
+     * @param minX left edge of the rectangle.
+     * @param minY top edge of the rectangle.
+     * @param maxX right edge of the rectangle (inclusive).
+     * @param maxY bottom edge of the rectangle (inclusive).
+     * @return true if they intersect.
+     */
+    public boolean intersects(int minX, int minY, int maxX, int maxY) {
+        return x <= maxX && x + width >= minX && y <= maxY && y + height >= minY;
+    }
+
+    /**
+     * Check whether a point is on the shape as it is drawn, with a border one unit wide.
+     * @param x x coordinate of the point.
+     * @param y y coordinate of the point.
+     * @param tolerance distance from the border which still counts as on the shape, such as a few pixels
+     *                  of the panel converted to units of the drawing.
+     * @return true if the point is on the border, or inside a shape which is filled.
+     */
+    public abstract boolean hitTest(double x, double y, double tolerance);
+
+    /**
+     * Find the distance from a point to a line segment.
+     * @param x x coordinate of the point.
+     * @param y y coordinate of the point.
+     * @param x1 x coordinate of one end of the segment.
+     * @param y1 y coordinate of one end of the segment.
+     * @param x2 x coordinate of the other end of the segment.
+     * @param y2 y coordinate of the other end of the segment.
+     * @return the distance to the nearest point of the segment.
+     */
+    static double distanceToSegment(double x, double y, double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = 0;
+        if (lengthSquared > 0) {
+            // position of the nearest point along the segment, from 0 at one end to 1 at the other
+            t = Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / lengthSquared));
+        }
+        return Math.hypot(x - (x1 + t * dx), y - (y1 + t * dy));
+    }
+
+    /**
+     * Move the end point of a shape which is still being drawn by the user.
+     * Shapes which have been added to a DrawingHandler cannot be changed.
+     * @param endX new end coordinate on x axis
+     * @param endY new end coordinate on y axis
+     */
+    public void setEnd(int endX, int endY) {
+        checkNotFrozen();
+        this.endX = endX;
+        this.endY = endY;
+        updateBounds();
+    }
+
+    /**
+     * Check whether the shape has been committed to a ShapeStore and can no longer be changed.
+     * @return true if the shape is frozen.
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Stop the shape from being changed, once it is committed to a ShapeStore.
+     */
+    void freeze() {
+        frozen = true;
+    }
+
+    /**
+     * Create a new shape of the same type with the same coordinates and colours.
+     * @return the copy of this shape.
+     */
+    public Shape copy() {
+        Shape copy = getType().create(startX, startY, endX, endY);
+        copy.borderColour = borderColour;
+        copy.fillColour = fillColour;
+        return copy;
+    }
+
     /**
      * Set the border colour the for shape given a colour.
      * @param colour An instance of SimpleColour (r,g,b colour).
+     * @throws java.io.UncheckedIOException if the colour is new and the colour palette is full.
      */
     public void setBorderColour(SimpleColour colour) {
-        this.borderColour = colour;
+        checkNotFrozen();
+        this.borderColour = ColourPalette.intern(colour);
     }
 
     /**
      * Set the fill colour the for shape given a colour.
      * @param colour An instance of SimpleColour (r,g,b colour).
+     * @throws java.io.UncheckedIOException if the colour is new and the colour palette is full.
      */
     public void setFillColour(SimpleColour colour) {
-        this.fillColour = colour;
+        checkNotFrozen();
+        this.fillColour = ColourPalette.intern(colour);
+    }
+
+    /**
+     * Set the border colour for the shape given a palette index.
+     * @param index palette index returned by ColourPalette.intern().
+     */
+    public void setBorderColourIndex(int index) {
+        checkNotFrozen();
+        this.borderColour = index;
+    }
+
+    /**
+     * Set the fill colour for the shape given a palette index.
+     * @param index palette index returned by ColourPalette.intern().
+     */
+    public void setFillColourIndex(int index) {
+        checkNotFrozen();
+        this.fillColour = index;
     }
 
+    /**
+     * Work out the bounding box from the start and end coordinates.
+     */
+    private void updateBounds() {
+        x = Math.min(startX, endX);
+        y = Math.min(startY, endY);
+        width = Math.max(startX, endX) - x;
+        height = Math.max(startY, endY) - y;
+    }
 
+    /**
+     * Refuse to change a frozen shape.
+     */
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new UnsupportedOperationException("A committed shape cannot be changed");
+        }
+    }
 }
@@ -0,0 +1,277 @@
+package model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The ShapeIndex class is a spatial index over the bounding boxes of stored shapes.
+ * The drawing area is divided into a uniform grid of square cells, and every cell keeps
+ * the ids of the shapes whose bounding box overlaps it. Shape ids are their z-order
+ * position, so the result of a query is returned in the order the shapes are drawn.
+ * Very large shapes which would overlap a lot of cells are kept in a separate list
+ * that is checked by every query.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public class ShapeIndex {
+    private static final int CELL_SIZE = 64; // width and height of a grid cell in pixels
+    private static final int MAX_CELLS_PER_SHAPE = 256; // larger shapes go into the oversized list
+
+    private final Map<Long, IdList> cells; // grid cells, keyed by packed cell coordinates
+    private final IdList oversized; // ids of shapes which overlap too many cells
+    private int[] bounds; // minX, minY, maxX, maxY for every id
+    private boolean[] present; // true for every id which is currently stored
+    private int idLimit; // one more than the highest id ever stored
+    private int count; // number of ids currently stored
+    private int[] stamps; // last query which visited each id, to skip duplicates
+    private int queryStamp;
+
+    /**
+     * Create a new, empty ShapeIndex.
+     */
+    public ShapeIndex() {
+        cells = new HashMap<>();
+        oversized = new IdList();
+        bounds = new int[64 * 4];
+        present = new boolean[64];
+        stamps = new int[64];
+    }
+
+    /**
+     * Add a shape's bounding box to the index.
+     * @param id the z-order position of the shape, must not already be stored.
+     * @param minX left edge of the bounding box.
+     * @param minY top edge of the bounding box.
+     * @param maxX right edge of the bounding box (inclusive).
+     * @param maxY bottom edge of the bounding box (inclusive).
+     */
+    public void insert(int id, int minX, int minY, int maxX, int maxY) {
+        ensureCapacity(id + 1);
+        bounds[id * 4] = minX;
+        bounds[id * 4 + 1] = minY;
+        bounds[id * 4 + 2] = maxX;
+        bounds[id * 4 + 3] = maxY;
+        present[id] = true;
+        idLimit = Math.max(idLimit, id + 1);
+        count++;
+        int cx0 = cell(minX);
+        int cy0 = cell(minY);
+        int cx1 = cell(maxX);
+        int cy1 = cell(maxY);
+        if ((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) > MAX_CELLS_PER_SHAPE) {
+            oversized.add(id);
+            return;
+        }
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                cells.computeIfAbsent(key(cx, cy), k -> new IdList()).add(id);
+            }
+        }
+    }
+
+    /**
+     * Add a shape to the index using its bounding box.
+     * @param id the z-order position of the shape.
+     * @param shape the shape which is stored at that position.
+     */
+    public void insert(int id, Shape shape) {
+        insert(id, shape.getX(), shape.getY(), shape.getX() + shape.getWidth(), shape.getY() + shape.getHeight());
+    }
+
+    /**
+     * Remove a shape from the index.
+     * @param id the z-order position of the shape.
+     */
+    public void remove(int id) {
+        if (id >= idLimit || !present[id]) {
+            return; // not stored
+        }
+        present[id] = false;
+        count--;
+        int cx0 = cell(bounds[id * 4]);
+        int cy0 = cell(bounds[id * 4 + 1]);
+        int cx1 = cell(bounds[id * 4 + 2]);
+        int cy1 = cell(bounds[id * 4 + 3]);
+        if ((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) > MAX_CELLS_PER_SHAPE) {
+            oversized.remove(id);
+        } else {
+            for (int cy = cy0; cy <= cy1; cy++) {
+                for (int cx = cx0; cx <= cx1; cx++) {
+                    Long key = key(cx, cy);
+                    IdList list = cells.get(key);
+                    if (list != null) {
+                        list.remove(id);
+                        if (list.size == 0) {
+                            cells.remove(key);
+                        }
+                    }
+                }
+            }
+        }
+        // Keep idLimit tight so that removing from the top keeps linear scans short
+        while (idLimit > 0 && !present[idLimit - 1]) {
+            idLimit--;
+        }
+    }
+
+    /**
+     * Remove every shape with an id of at least the given id.
+     * @param id the lowest id to remove.
+     */
+    public void removeFrom(int id) {
+        for (int i = idLimit - 1; i >= id; i--) {
+            remove(i);
+        }
+    }
+
+    /**
+     * Remove every shape from the index.
+     */
+    public void clear() {
+        cells.clear();
+        oversized.size = 0;
+        Arrays.fill(present, 0, idLimit, false);
+        idLimit = 0;
+        count = 0;
+    }
+
+    /**
+     * Get the number of shapes in the index.
+     * @return number of stored ids.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Find all shapes whose bounding box intersects the given rectangle.
+     * @param minX left edge of the rectangle.
+     * @param minY top edge of the rectangle.
+     * @param maxX right edge of the rectangle (inclusive).
+     * @param maxY bottom edge of the rectangle (inclusive).
+     * @return ids of the intersecting shapes in ascending z-order.
+     */
+    public int[] query(int minX, int minY, int maxX, int maxY) {
+        return query(minX, minY, maxX, maxY, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Find the shapes in a range of ids whose bounding box intersects the given rectangle.
+     * @param minX left edge of the rectangle.
+     * @param minY top edge of the rectangle.
+     * @param maxX right edge of the rectangle (inclusive).
+     * @param maxY bottom edge of the rectangle (inclusive).
+     * @param fromId lowest id to return.
+     * @param toId one more than the highest id to return.
+     * @return ids of the intersecting shapes in ascending z-order.
+     */
+    public int[] query(int minX, int minY, int maxX, int maxY, int fromId, int toId) {
+        IdList result = new IdList();
+        int cx0 = cell(minX);
+        int cy0 = cell(minY);
+        int cx1 = cell(maxX);
+        int cy1 = cell(maxY);
+        if ((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) >= cells.size()) {
+            // The rectangle covers most of the drawing, a scan in z-order is cheaper than the grid
+            int end = Math.min(idLimit, toId);
+            for (int id = Math.max(fromId, 0); id < end; id++) {
+                if (present[id] && intersects(id, minX, minY, maxX, maxY)) {
+                    result.add(id);
+                }
+            }
+            return result.toArray();
+        }
+        nextStamp();
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                IdList list = cells.get(key(cx, cy));
+                if (list != null) {
+                    collect(list, result, minX, minY, maxX, maxY, fromId, toId);
+                }
+            }
+        }
+        collect(oversized, result, minX, minY, maxX, maxY, fromId, toId);
+        int[] ids = result.toArray();
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Add the ids from a list that intersect the rectangle and were not yet visited by this query.
+     */
+    private void collect(IdList list, IdList result, int minX, int minY, int maxX, int maxY, int fromId, int toId) {
+        for (int i = 0; i < list.size; i++) {
+            int id = list.ids[i];
+            if (id >= fromId && id < toId && stamps[id] != queryStamp) {
+                stamps[id] = queryStamp;
+                if (intersects(id, minX, minY, maxX, maxY)) {
+                    result.add(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Start a new query, so that every id counts as not yet visited.
+     */
+    private void nextStamp() {
+        queryStamp++;
+        if (queryStamp == 0) { // wrapped around, forget all previous stamps
+            Arrays.fill(stamps, 0);
+            queryStamp = 1;
+        }
+    }
+
+    private boolean intersects(int id, int minX, int minY, int maxX, int maxY) {
+        int i = id * 4;
+        return bounds[i] <= maxX && bounds[i + 2] >= minX && bounds[i + 1] <= maxY && bounds[i + 3] >= minY;
+    }
+
+    private void ensureCapacity(int ids) {
+        if (ids > present.length) {
+            int capacity = Math.max(ids, present.length * 2);
+            bounds = Arrays.copyOf(bounds, capacity * 4);
+            present = Arrays.copyOf(present, capacity);
+            stamps = Arrays.copyOf(stamps, capacity);
+        }
+    }
+
+    private static int cell(int coordinate) {
+        return Math.floorDiv(coordinate, CELL_SIZE);
+    }
+
+    private static Long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    /**
+     * A growable list of ids, used for the contents of a grid cell.
+     */
+    private static class IdList {
+        private int[] ids = new int[4];
+        private int size;
+
+        private void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        private void remove(int id) {
+            // Shapes are usually removed from the top, so search from the end
+            for (int i = size - 1; i >= 0; i--) {
+                if (ids[i] == id) {
+                    System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+                    size--;
+                    return;
+                }
+            }
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A ShapeStore holds the shapes of a drawing in z-order, lowest first.
+ * Shapes are only ever appended to or truncated from the end of the store, which is
+ * what the DrawingHandler needs to implement undo and redo as moves of a single index.
+ * Old shapes which can no longer be restored are discarded from the start of the store.
+ * A store can take a snapshot of itself in constant time, so that other threads can read the shapes
+ * while more are added.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public interface ShapeStore {
+
+    /**
+     * Get the number of stored shapes.
+     * @return number of shapes.
+     */
+    int size();
+
+    /**
+     * Get a stored shape.
+     * @param index position of the shape, from 0 to size() - 1.
+     * @return the shape at that position.
+     */
+    Shape get(int index);
+
+    /**
+     * Append a shape to the end of the store.
+     * @param shape the shape to add.
+     */
+    void add(Shape shape);
+
+    /**
+     * Remove every shape from the given position onwards.
+     * @param size the number of shapes to keep.
+     */
+    void truncate(int size);
+
+    /**
+     * Remove shapes from the start of the store. The remaining shapes move down to position 0.
+     * @param count the number of shapes to remove.
+     */
+    void removeFirst(int count);
+
+    /**
+     * Take an unchangeable copy of the store in constant time, which later changes to this store do not affect.
+     * The copy cannot be changed, its add(), truncate() and removeFirst() throw UnsupportedOperationException.
+     * @return the snapshot.
+     */
+    ShapeStore snapshot();
+
+    /**
+     * Find the shapes in a range of positions whose bounding box intersects a rectangle, without a spatial index.
+     * Every shape in the range is checked, unless the store knows the bounds of groups of shapes and can skip
+     * the groups outside the rectangle.
+     * @param start first position to check.
+     * @param end position after the last position to check.
+     * @param minX left edge of the rectangle.
+     * @param minY top edge of the rectangle.
+     * @param maxX right edge of the rectangle (inclusive).
+     * @param maxY bottom edge of the rectangle (inclusive).
+     * @return positions of the intersecting shapes, in ascending order.
+     */
+    default int[] findIn(int start, int end, int minX, int minY, int maxX, int maxY) {
+        int[] found = new int[16];
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (get(i).intersects(minX, minY, maxX, maxY)) {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = i;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Tell whether findIn() skips the groups of shapes whose bounds are outside the rectangle, so that the store
+     * can be searched without a spatial index. This works best when each shape is drawn near the shape before it,
+     * as in most drawings.
+     * @return true if findIn() skips groups of shapes by their bounds, false if it checks every shape.
+     */
+    default boolean findsByBounds() {
+        return false;
+    }
+
+    /**
+     * Stop reading shapes from a file which is about to be replaced. A store which reads its shapes from
+     * the file reads them into memory and closes the file, for itself and all of its snapshots; other stores
+     * do nothing. The shapes of the store do not change, so nothing needs to be told about it.
+     * Any thread may call this, on the store or on any of its snapshots.
+     * @param file the file to be replaced.
+     * @throws IOException if the shapes cannot be read from the file, or the file cannot be closed.
+     */
+    default void releaseFile(Path file) throws IOException {
+        // the shapes are not read from a file
+    }
+}
@@ -0,0 +1,36 @@
+package model;
+
+/**
+ * The ShapeType enum lists the kinds of shape that the user can draw.
+ * It allows code which handles each kind of shape differently to look up
+ * the handling for a shape instead of testing the shape's class.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public enum ShapeType {
+    LINE,
+    RECTANGLE,
+    ELLIPSE,
+    DIAGONAL_CROSS;
+
+    /**
+     * Create a new shape of this type.
+     * @param startX start coordinate on x axis
+     * @param startY start coordinate on y axis
+     * @param endX end coordinate on x axis
+     * @param endY end coordinate on y axis
+     * @return the new shape.
+     */
+    public Shape create(int startX, int startY, int endX, int endY) {
+        switch (this) {
+            case LINE:
+                return new Line(startX, startY, endX, endY);
+            case RECTANGLE:
+                return new Rectangle(startX, startY, endX, endY);
+            case ELLIPSE:
+                return new Ellipse(startX, startY, endX, endY);
+            default:
+                return new DiagonalCross(startX, startY, endX, endY);
+        }
+    }
+}
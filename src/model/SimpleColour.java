@@ -2,14 +2,14 @@ package model;
 
 /**
  * The SimpleColour class represents an RGB colour
- * by storing the integer values of r,g,b for the colour.
+ * by storing the integer values of r,g,b for the colour packed into one int.
+ * Shapes keep their colours as indexes into the ColourPalette, which holds one
+ * shared SimpleColour for every distinct colour.
  *
  * @author Lesleyjane J https://github.com/lesleyjanej
  */
 public class SimpleColour {
-    private int r;
-    private int g;
-    private int b;
+    private final int rgb; // colour packed as 0xRRGGBB
 
     /**
      * Create a new SimpleColour by specifying the int r,g,b values.
@@ -18,9 +18,7 @@ public class SimpleColour {
      * @param b blue int value for colour
      */
     public SimpleColour(int r, int g, int b) {
-        this.r = r;
-        this.g = g;
-        this.b = b;
+        this.rgb = ((r & 0xFF) << 16) | ((g & 0xFF) << 8) | (b & 0xFF);
     }
 
     /**
@@ -28,7 +26,7 @@ public class SimpleColour {
      * @return int r.
      */
     public int getR() {
-        return r;
+        return rgb >> 16;
     }
 
     /**
@@ -36,7 +34,7 @@ public class SimpleColour {
      * @return int g.
      */
     public int getG() {
-        return g;
+        return (rgb >> 8) & 0xFF;
     }
 
     /**
@@ -44,6 +42,40 @@ public class SimpleColour {
      * @return int b.
      */
     public int getB() {
-        return b;
+        return rgb & 0xFF;
+    }
+
+    /**
+     * Get the colour packed into one int.
+     * @return int colour as 0xRRGGBB.
+     */
+    public int getRGB() {
+        return rgb;
+    }
+
+    /**
+     * Two SimpleColours are equal if their r,g,b values are equal.
+     * @param o the object to compare with.
+     * @return true if o is a SimpleColour with the same r,g,b values.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SimpleColour)) {
+            return false;
+        }
+        SimpleColour other = (SimpleColour) o;
+        return rgb == other.rgb;
+    }
+
+    /**
+     * Hash code based on the r,g,b values.
+     * @return int hash code.
+     */
+    @Override
+    public int hashCode() {
+        return rgb;
     }
 }
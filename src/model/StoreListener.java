@@ -0,0 +1,33 @@
+package model;
+
+/**
+ * A StoreListener is told about every change a DrawingHandler makes to its ShapeStore and
+ * to the range of visible shapes. Replaying these changes in order with the DrawingHandler's
+ * apply methods reproduces the same store and visible range, which makes them suitable
+ * for recording the drawing on disk or sending it elsewhere.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public interface StoreListener {
+
+    /**
+     * Called after the store was truncated to a position and a shape was added there.
+     * The visible range now ends just after the new shape.
+     * @param position store position of the new shape.
+     * @param shape the new shape.
+     */
+    void shapeAppended(int position, Shape shape);
+
+    /**
+     * Called after the range of visible shapes changed without the store changing.
+     * @param start store position of the first visible shape.
+     * @param end store position after the last visible shape.
+     */
+    void visibleRangeChanged(int start, int end);
+
+    /**
+     * Called after shapes which can no longer be made visible were removed from the start of the store.
+     * @param count number of removed shapes, every store position moved down by this much.
+     */
+    void storeCompacted(int count);
+}
@@ -0,0 +1,252 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * The SvgFile class exports drawings as SVG images and imports SVG images as shapes.
+ * Shapes are written in z-order straight into a fixed size buffer which is drained to the file
+ * whenever it fills up, so no document tree or large strings are built and exporting uses the
+ * same amount of memory for any number of shapes.
+ * Consecutive shapes with the same border and fill colour are grouped into one &lt;g&gt; element
+ * which holds the colours, so each shape element only holds its geometry.
+ * The strokes match the DrawingPanel: one pixel wide with square caps, and filled shapes paint their
+ * fill over their border.
+ * SVG images can also be imported, including images drawn by other programs, as far as their elements
+ * can be represented by the shapes of a drawing.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public final class SvgFile {
+    public static final String EXTENSION = "svg"; // file name extension of SVG files
+
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int MAX_ELEMENT_BYTES = 256; // longest element or group tag which is written
+    private static final int MARGIN = 2; // pixels around the shapes covering the stroke width
+    private static final int NO_FILL = -1; // fill colour of a group of shapes without an interior
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes();
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    private SvgFile(FileChannel channel) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    }
+
+    /**
+     * Export shapes to an SVG file, replacing any existing file.
+     * The image is sized to fit the shapes.
+     * @param shapes the shapes to export, lowest z-order first.
+     * @param path the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(List<Shape> shapes, Path path) throws IOException {
+        // Find the size of the image first, so the shapes can be streamed afterwards
+        int width = 0;
+        int height = 0;
+        for (Shape shape : shapes) {
+            width = Math.max(width, shape.getX() + shape.getWidth());
+            height = Math.max(height, shape.getY() + shape.getHeight());
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            SvgFile svg = new SvgFile(channel);
+            svg.writeShapes(shapes, width + MARGIN, height + MARGIN);
+        }
+    }
+
+    /**
+     * Import the shapes of an SVG file, streaming it so that only one batch of shapes is held at a time.
+     * See SvgParser for the elements which are read.
+     * @param path the file to read.
+     * @param listener receives the shapes in batches, together with how much of the file has been read.
+     * @return the number of shapes read.
+     * @throws IOException if the file cannot be read or is not well formed XML.
+     */
+    public static int read(Path path, ImportListener listener) throws IOException {
+        return SvgParser.read(path, listener);
+    }
+
+    /**
+     * Write the document, grouping runs of shapes with the same colours.
+     */
+    private void writeShapes(List<Shape> shapes, int width, int height) throws IOException {
+        put("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        put("<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.1\" width=\"");
+        putInt(width);
+        put("\" height=\"");
+        putInt(height);
+        put("\" viewBox=\"0 0 ");
+        putInt(width);
+        put(" ");
+        putInt(height);
+        put("\" stroke-width=\"1\" stroke-linecap=\"square\" stroke-miterlimit=\"10\" paint-order=\"stroke\">\n");
+        boolean inGroup = false;
+        int groupBorder = 0;
+        int groupFill = 0;
+        for (Shape shape : shapes) {
+            ShapeType type = shape.getType();
+            int border = shape.getBorderColourIndex();
+            int fill = type == ShapeType.LINE || type == ShapeType.DIAGONAL_CROSS ? NO_FILL : shape.getFillColourIndex();
+            if (buffer.remaining() < MAX_ELEMENT_BYTES) {
+                drain();
+            }
+            if (!inGroup || border != groupBorder || fill != groupFill) {
+                if (inGroup) {
+                    put("</g>\n");
+                }
+                put("<g stroke=\"");
+                putColour(border);
+                put("\" fill=\"");
+                if (fill == NO_FILL) {
+                    put("none");
+                } else {
+                    putColour(fill);
+                }
+                put("\">\n");
+                inGroup = true;
+                groupBorder = border;
+                groupFill = fill;
+            }
+            writeShape(shape, type);
+        }
+        if (inGroup) {
+            put("</g>\n");
+        }
+        put("</svg>\n");
+        drain();
+    }
+
+    /**
+     * Write the element for one shape.
+     */
+    private void writeShape(Shape shape, ShapeType type) {
+        switch (type) {
+            case LINE:
+                put("<line x1=\"");
+                putInt(shape.getStartX());
+                put("\" y1=\"");
+                putInt(shape.getStartY());
+                put("\" x2=\"");
+                putInt(shape.getEndX());
+                put("\" y2=\"");
+                putInt(shape.getEndY());
+                put("\"/>\n");
+                break;
+            case RECTANGLE:
+                put("<rect x=\"");
+                putInt(shape.getX());
+                put("\" y=\"");
+                putInt(shape.getY());
+                put("\" width=\"");
+                putInt(shape.getWidth());
+                put("\" height=\"");
+                putInt(shape.getHeight());
+                put("\"/>\n");
+                break;
+            case ELLIPSE:
+                // the centre and radii are whole or half pixels
+                put("<ellipse cx=\"");
+                putHalves(2 * shape.getX() + shape.getWidth());
+                put("\" cy=\"");
+                putHalves(2 * shape.getY() + shape.getHeight());
+                put("\" rx=\"");
+                putHalves(shape.getWidth());
+                put("\" ry=\"");
+                putHalves(shape.getHeight());
+                put("\"/>\n");
+                break;
+            case DIAGONAL_CROSS:
+                // both diagonals of the bounding box, like DiagonalCross.getFirstLine() and getSecondLine()
+                put("<path d=\"M");
+                putInt(shape.getStartX());
+                put(" ");
+                putInt(shape.getStartY());
+                put("L");
+                putInt(shape.getEndX());
+                put(" ");
+                putInt(shape.getEndY());
+                put("M");
+                putInt(shape.getStartX());
+                put(" ");
+                putInt(shape.getEndY());
+                put("L");
+                putInt(shape.getEndX());
+                put(" ");
+                putInt(shape.getStartY());
+                put("\"/>\n");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown shape type: " + type);
+        }
+    }
+
+    /**
+     * Write ASCII text. Only used for constant strings, so nothing is allocated.
+     */
+    private void put(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    /**
+     * Write an int in decimal without creating a string.
+     */
+    private void putInt(int value) {
+        long remaining = value; // a long, so the lowest int can be negated
+        if (remaining < 0) {
+            buffer.put((byte) '-');
+            remaining = -remaining;
+        }
+        long divisor = 1;
+        while (divisor * 10 <= remaining) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            buffer.put((byte) ('0' + remaining / divisor));
+            remaining %= divisor;
+            divisor /= 10;
+        }
+    }
+
+    /**
+     * Write a number of half pixels as a decimal number of pixels, such as 7 as 3.5.
+     */
+    private void putHalves(int halves) {
+        if (halves < 0 && halves % 2 != 0 && halves / 2 == 0) {
+            buffer.put((byte) '-'); // -1 halves is -0.5, which putInt() would write as 0
+        }
+        putInt(halves / 2);
+        if (halves % 2 != 0) {
+            put(".5");
+        }
+    }
+
+    /**
+     * Write a palette colour as #rrggbb.
+     */
+    private void putColour(int paletteIndex) {
+        int rgb = ColourPalette.get(paletteIndex).getRGB();
+        buffer.put((byte) '#');
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            buffer.put(HEX_DIGITS[(rgb >> shift) & 0xF]);
+        }
+    }
+
+    /**
+     * Write the contents of the buffer to the file and empty the buffer.
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
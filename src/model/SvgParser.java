@@ -0,0 +1,749 @@
+package model;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The SvgParser reads the shapes of an SVG image with a streaming XML reader, one element at a time,
+ * and hands them to an ImportListener in batches. Only the current batch and the styles of the open
+ * groups are held in memory, so files of any size can be read.
+ * <p>
+ * line, rect, circle, ellipse, polyline and polygon elements are read, as are paths made of straight
+ * segments. A path of two diagonals, as written by SvgFile, becomes a DiagonalCross, a closed axis aligned
+ * path with a fill becomes a Rectangle, and any other path becomes one Line per segment.
+ * Paths with curves, elements moved by transforms other than translate(), and the contents of defs and
+ * similar elements which are not drawn directly are skipped.
+ * The stroke and fill colours are taken from the element, its style attribute or its enclosing groups.
+ * A rect without a fill becomes its four border lines, and an ellipse without a fill is filled white,
+ * since every Rectangle and Ellipse has a fill.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+final class SvgParser {
+    static final int BATCH_SIZE = 10000; // shapes handed to the listener at a time
+
+    private static final int NONE = -1; // colour value of "none"
+    private static final int UNSET = -2; // colour value which is inherited from the enclosing group
+    private static final int WHITE = 0xFFFFFF;
+    private static final Map<String, Integer> NAMED_COLOURS = new HashMap<>();
+
+    static {
+        NAMED_COLOURS.put("black", 0x000000);
+        NAMED_COLOURS.put("white", 0xFFFFFF);
+        NAMED_COLOURS.put("red", 0xFF0000);
+        NAMED_COLOURS.put("lime", 0x00FF00);
+        NAMED_COLOURS.put("blue", 0x0000FF);
+        NAMED_COLOURS.put("yellow", 0xFFFF00);
+        NAMED_COLOURS.put("cyan", 0x00FFFF);
+        NAMED_COLOURS.put("aqua", 0x00FFFF);
+        NAMED_COLOURS.put("magenta", 0xFF00FF);
+        NAMED_COLOURS.put("fuchsia", 0xFF00FF);
+        NAMED_COLOURS.put("green", 0x008000);
+        NAMED_COLOURS.put("gray", 0x808080);
+        NAMED_COLOURS.put("grey", 0x808080);
+        NAMED_COLOURS.put("silver", 0xC0C0C0);
+        NAMED_COLOURS.put("maroon", 0x800000);
+        NAMED_COLOURS.put("olive", 0x808000);
+        NAMED_COLOURS.put("navy", 0x000080);
+        NAMED_COLOURS.put("purple", 0x800080);
+        NAMED_COLOURS.put("teal", 0x008080);
+        NAMED_COLOURS.put("orange", 0xFFA500);
+    }
+
+    private final ImportListener listener;
+    private final List<Shape> batch = new ArrayList<>(BATCH_SIZE);
+    private final ArrayDeque<Style> styles = new ArrayDeque<>(); // styles of the open elements, innermost first
+    private final long totalBytes;
+    private CountingInputStream input;
+    private int shapeCount; // shapes read so far
+    private int lastRgb = UNSET; // last interned colour, since neighbouring shapes mostly share colours
+    private int lastPaletteIndex;
+
+    // Segments of the path being read, as x1 y1 x2 y2
+    private double[] segments = new double[64];
+    private int segmentCount;
+    private int subpathCount;
+    private boolean closed; // true if the path has a single subpath which was closed
+
+    private SvgParser(ImportListener listener, long totalBytes) {
+        this.listener = listener;
+        this.totalBytes = totalBytes;
+    }
+
+    /**
+     * Read the shapes of an SVG file.
+     * @param path the file to read.
+     * @param listener receives the shapes in batches.
+     * @return the number of shapes read.
+     * @throws IOException if the file cannot be read or is not well formed XML.
+     */
+    static int read(Path path, ImportListener listener) throws IOException {
+        SvgParser parser = new SvgParser(listener, Files.size(path));
+        try (CountingInputStream in = new CountingInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            parser.input = in;
+            parser.parse(in);
+        }
+        return parser.shapeCount;
+    }
+
+    private void parse(InputStream in) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // never fetch DTDs or external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        XMLStreamReader reader = null;
+        try {
+            reader = factory.createXMLStreamReader(in);
+            styles.push(new Style(UNSET, UNSET, 0, 0, false));
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    Style style = styles.peek().derive(reader);
+                    styles.push(style);
+                    if (!style.hidden) {
+                        readElement(reader, style);
+                        if (batch.size() >= BATCH_SIZE && !flush()) {
+                            return;
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    styles.pop();
+                }
+            }
+            flush();
+        } catch (XMLStreamException e) {
+            throw new IOException("Not a valid SVG file: " + e.getMessage(), e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // the colour palette is full
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // the stream itself is closed by read()
+                }
+            }
+        }
+    }
+
+    /**
+     * Hand the current batch to the listener and start a new one.
+     * @return false if the listener asked to stop reading.
+     */
+    private boolean flush() {
+        shapeCount += batch.size();
+        boolean more = listener.shapesRead(batch, Math.min(input.count, totalBytes), totalBytes);
+        batch.clear();
+        return more;
+    }
+
+    /**
+     * Add the shapes of one element to the batch.
+     */
+    private void readElement(XMLStreamReader reader, Style style) {
+        switch (reader.getLocalName()) {
+            case "line":
+                addLine(style, length(reader, "x1", 0), length(reader, "y1", 0),
+                        length(reader, "x2", 0), length(reader, "y2", 0));
+                break;
+            case "rect": {
+                double x = length(reader, "x", 0);
+                double y = length(reader, "y", 0);
+                double width = length(reader, "width", Double.NaN);
+                double height = length(reader, "height", Double.NaN);
+                if (width >= 0 && height >= 0) {
+                    addRectangle(style, x, y, x + width, y + height);
+                }
+                break;
+            }
+            case "circle": {
+                double r = length(reader, "r", Double.NaN);
+                addEllipse(style, length(reader, "cx", 0), length(reader, "cy", 0), r, r);
+                break;
+            }
+            case "ellipse":
+                addEllipse(style, length(reader, "cx", 0), length(reader, "cy", 0),
+                        length(reader, "rx", Double.NaN), length(reader, "ry", Double.NaN));
+                break;
+            case "polyline":
+            case "polygon":
+                segmentCount = 0;
+                subpathCount = 0;
+                closed = false;
+                if (readPoints(reader.getAttributeValue(null, "points"), reader.getLocalName().equals("polygon"))) {
+                    addPath(style);
+                }
+                break;
+            case "path":
+                segmentCount = 0;
+                subpathCount = 0;
+                closed = false;
+                if (readPath(reader.getAttributeValue(null, "d"))) {
+                    addPath(style);
+                }
+                break;
+            default:
+                // groups, the svg element and anything which is not drawn
+        }
+    }
+
+    private void addLine(Style style, double x1, double y1, double x2, double y2) {
+        if (style.stroke() == NONE || Double.isNaN(x1 + y1 + x2 + y2)) {
+            return;
+        }
+        Shape line = ShapeType.LINE.create(round(x1 + style.dx), round(y1 + style.dy),
+                round(x2 + style.dx), round(y2 + style.dy));
+        int border = paletteIndex(style.stroke());
+        line.setBorderColourIndex(border);
+        line.setFillColourIndex(border);
+        batch.add(line);
+    }
+
+    /**
+     * Add a rect, with four lines for its border if it has no fill.
+     */
+    private void addRectangle(Style style, double x1, double y1, double x2, double y2) {
+        if (style.fill() == NONE) {
+            // no interior, so draw the border as lines
+            addLine(style, x1, y1, x2, y1);
+            addLine(style, x2, y1, x2, y2);
+            addLine(style, x2, y2, x1, y2);
+            addLine(style, x1, y2, x1, y1);
+            return;
+        }
+        addFilled(ShapeType.RECTANGLE, style, x1, y1, x2, y2);
+    }
+
+    /**
+     * Add an ellipse. Like a rect, an ellipse with no width or height is kept, since its border is still drawn.
+     */
+    private void addEllipse(Style style, double cx, double cy, double rx, double ry) {
+        if (rx >= 0 && ry >= 0) {
+            addFilled(ShapeType.ELLIPSE, style, cx - rx, cy - ry, cx + rx, cy + ry);
+        }
+    }
+
+    /**
+     * Add a shape with an interior. Without a stroke, the border is drawn in the fill colour.
+     */
+    private void addFilled(ShapeType type, Style style, double x1, double y1, double x2, double y2) {
+        int stroke = style.stroke();
+        int fill = style.fill();
+        if (stroke == NONE && fill == NONE || Double.isNaN(x1 + y1 + x2 + y2)) {
+            return;
+        }
+        Shape shape = type.create(round(x1 + style.dx), round(y1 + style.dy),
+                round(x2 + style.dx), round(y2 + style.dy));
+        shape.setBorderColourIndex(paletteIndex(stroke == NONE ? fill : stroke));
+        shape.setFillColourIndex(paletteIndex(fill == NONE ? WHITE : fill));
+        batch.add(shape);
+    }
+
+    /**
+     * Add the shapes for the segments of a path, polyline or polygon.
+     */
+    private void addPath(Style style) {
+        double[] s = segments;
+        if (subpathCount == 2 && segmentCount == 2
+                && (s[4] == s[0] && s[5] == s[3] && s[6] == s[2] && s[7] == s[1]
+                || s[4] == s[2] && s[5] == s[1] && s[6] == s[0] && s[7] == s[3])) {
+            // the two diagonals of a box, the second drawn in either direction
+            if (style.stroke() != NONE) {
+                Shape cross = ShapeType.DIAGONAL_CROSS.create(round(s[0] + style.dx), round(s[1] + style.dy),
+                        round(s[2] + style.dx), round(s[3] + style.dy));
+                int border = paletteIndex(style.stroke());
+                cross.setBorderColourIndex(border);
+                cross.setFillColourIndex(border);
+                batch.add(cross);
+            }
+            return;
+        }
+        if (closed && segmentCount == 4 && style.fill() != NONE && isAxisAligned(s)) {
+            // the start of the third segment is the corner opposite the start of the first
+            addFilled(ShapeType.RECTANGLE, style, Math.min(s[0], s[8]), Math.min(s[1], s[9]),
+                    Math.max(s[0], s[8]), Math.max(s[1], s[9]));
+            return;
+        }
+        for (int i = 0; i < segmentCount * 4; i += 4) {
+            addLine(style, s[i], s[i + 1], s[i + 2], s[i + 3]);
+        }
+    }
+
+    /**
+     * Check whether four segments go around the edges of an axis aligned rectangle.
+     */
+    private static boolean isAxisAligned(double[] s) {
+        boolean horizontalFirst = s[1] == s[3];
+        for (int i = 0; i < 16; i += 4) {
+            boolean horizontal = s[i + 1] == s[i + 3];
+            boolean vertical = s[i] == s[i + 2];
+            if (horizontal == vertical || horizontal != (horizontalFirst == (i % 8 == 0))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the segments of a polyline or polygon.
+     * @return false if there are none.
+     */
+    private boolean readPoints(String points, boolean close) {
+        if (points == null) {
+            return false;
+        }
+        NumberScanner scanner = new NumberScanner(points);
+        double startX = scanner.next();
+        double startY = scanner.next();
+        double x = startX;
+        double y = startY;
+        while (true) {
+            double nextX = scanner.next();
+            double nextY = scanner.next();
+            if (Double.isNaN(nextY)) {
+                break;
+            }
+            addSegment(x, y, nextX, nextY);
+            x = nextX;
+            y = nextY;
+        }
+        if (close && segmentCount > 0) {
+            addSegment(x, y, startX, startY);
+            closed = true;
+        }
+        subpathCount = 1;
+        return segmentCount > 0;
+    }
+
+    /**
+     * Read the segments of path data made of moveto, lineto and closepath commands.
+     * @return false if the path is empty or has commands for curves.
+     */
+    private boolean readPath(String data) {
+        if (data == null) {
+            return false;
+        }
+        NumberScanner scanner = new NumberScanner(data);
+        double x = 0;
+        double y = 0;
+        double startX = 0;
+        double startY = 0;
+        boolean wasClosed = false;
+        char command;
+        while ((command = scanner.nextCommand()) != 0) {
+            boolean relative = Character.isLowerCase(command);
+            switch (Character.toUpperCase(command)) {
+                case 'M': {
+                    double mx = scanner.next();
+                    double my = scanner.next();
+                    if (Double.isNaN(my)) {
+                        return false;
+                    }
+                    x = relative ? x + mx : mx;
+                    y = relative ? y + my : my;
+                    startX = x;
+                    startY = y;
+                    subpathCount++;
+                    wasClosed = false;
+                    // further pairs of numbers are implicit lineto commands
+                    while (scanner.hasNumber()) {
+                        double lx = scanner.next();
+                        double ly = scanner.next();
+                        if (Double.isNaN(ly)) {
+                            return false;
+                        }
+                        lx = relative ? x + lx : lx;
+                        ly = relative ? y + ly : ly;
+                        addSegment(x, y, lx, ly);
+                        x = lx;
+                        y = ly;
+                    }
+                    break;
+                }
+                case 'L':
+                case 'H':
+                case 'V': {
+                    char type = Character.toUpperCase(command);
+                    do {
+                        double lx = x;
+                        double ly = y;
+                        if (type == 'L' || type == 'H') {
+                            double value = scanner.next();
+                            lx = relative ? x + value : value;
+                        }
+                        if (type == 'L' || type == 'V') {
+                            double value = scanner.next();
+                            ly = relative ? y + value : value;
+                        }
+                        if (Double.isNaN(lx) || Double.isNaN(ly)) {
+                            return false;
+                        }
+                        addSegment(x, y, lx, ly);
+                        x = lx;
+                        y = ly;
+                    } while (scanner.hasNumber());
+                    break;
+                }
+                case 'Z':
+                    if (x != startX || y != startY) {
+                        addSegment(x, y, startX, startY);
+                    }
+                    x = startX;
+                    y = startY;
+                    wasClosed = true;
+                    break;
+                default:
+                    return false; // curves are not supported
+            }
+        }
+        closed = wasClosed && subpathCount == 1
+                || subpathCount == 1 && segmentCount > 2 && x == segments[0] && y == segments[1];
+        return segmentCount > 0;
+    }
+
+    private void addSegment(double x1, double y1, double x2, double y2) {
+        int i = segmentCount * 4;
+        if (i == segments.length) {
+            segments = Arrays.copyOf(segments, segments.length * 2);
+        }
+        segments[i] = x1;
+        segments[i + 1] = y1;
+        segments[i + 2] = x2;
+        segments[i + 3] = y2;
+        segmentCount++;
+    }
+
+    /**
+     * Get the palette index of a colour, remembering the last colour.
+     */
+    private int paletteIndex(int rgb) {
+        if (rgb != lastRgb) {
+            lastPaletteIndex = ColourPalette.intern(rgb);
+            lastRgb = rgb;
+        }
+        return lastPaletteIndex;
+    }
+
+    private static int round(double value) {
+        return (int) Math.round(value);
+    }
+
+    /**
+     * Read a length attribute in pixels.
+     * @return the length, the default if the attribute is missing, or NaN if it cannot be read.
+     */
+    private static double length(XMLStreamReader reader, String name, double defaultValue) {
+        String value = reader.getAttributeValue(null, name);
+        if (value == null) {
+            return defaultValue;
+        }
+        value = value.trim();
+        if (value.endsWith("px")) {
+            value = value.substring(0, value.length() - 2);
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Read a paint value.
+     * @return the colour as 0xRRGGBB, NONE, or UNSET if it is missing or not a plain colour.
+     */
+    private static int paint(String value) {
+        if (value == null) {
+            return UNSET;
+        }
+        value = value.trim().toLowerCase();
+        if (value.equals("none") || value.equals("transparent")) {
+            return NONE;
+        }
+        try {
+            if (value.startsWith("#") && value.length() == 7) {
+                return Integer.parseInt(value.substring(1), 16);
+            }
+            if (value.startsWith("#") && value.length() == 4) {
+                int rgb = Integer.parseInt(value.substring(1), 16);
+                // each digit is repeated, so #abc is #aabbcc
+                return ((rgb & 0xF00) << 12 | (rgb & 0xF0) << 8 | (rgb & 0xF) << 4) * 0x11 / 0x10;
+            }
+            if (value.startsWith("rgb(") && value.endsWith(")")) {
+                String[] parts = value.substring(4, value.length() - 1).split(",");
+                if (parts.length == 3) {
+                    int rgb = 0;
+                    for (String part : parts) {
+                        part = part.trim();
+                        double channel = part.endsWith("%")
+                                ? Double.parseDouble(part.substring(0, part.length() - 1)) * 2.55
+                                : Double.parseDouble(part);
+                        rgb = rgb << 8 | (int) Math.max(0, Math.min(255, Math.round(channel)));
+                    }
+                    return rgb;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return UNSET;
+        }
+        Integer named = NAMED_COLOURS.get(value);
+        return named == null ? UNSET : named; // gradients and other paints are not supported
+    }
+
+    /**
+     * The presentation properties which apply to an element, taken from the element and its groups.
+     */
+    private static final class Style {
+        private final int stroke; // 0xRRGGBB, NONE or UNSET
+        private final int fill; // 0xRRGGBB, NONE or UNSET
+        private final double dx; // translation of the element
+        private final double dy;
+        private final boolean hidden; // true if the element and its contents are not drawn
+
+        private Style(int stroke, int fill, double dx, double dy, boolean hidden) {
+            this.stroke = stroke;
+            this.fill = fill;
+            this.dx = dx;
+            this.dy = dy;
+            this.hidden = hidden;
+        }
+
+        /**
+         * Get the stroke colour, which is none by default.
+         */
+        private int stroke() {
+            return stroke == UNSET ? NONE : stroke;
+        }
+
+        /**
+         * Get the fill colour, which is black by default.
+         */
+        private int fill() {
+            return fill == UNSET ? 0 : fill;
+        }
+
+        /**
+         * Get the style of a child element.
+         * @return this style if the element does not change it.
+         */
+        private Style derive(XMLStreamReader reader) {
+            if (hidden) {
+                return this;
+            }
+            switch (reader.getLocalName()) {
+                case "defs":
+                case "symbol":
+                case "clipPath":
+                case "mask":
+                case "pattern":
+                case "marker":
+                case "linearGradient":
+                case "radialGradient":
+                    return new Style(stroke, fill, dx, dy, true); // only drawn where they are referred to
+                default:
+            }
+            String strokeValue = reader.getAttributeValue(null, "stroke");
+            String fillValue = reader.getAttributeValue(null, "fill");
+            String transform = reader.getAttributeValue(null, "transform");
+            String styleValue = reader.getAttributeValue(null, "style");
+            String display = reader.getAttributeValue(null, "display");
+            if (strokeValue == null && fillValue == null && transform == null && styleValue == null
+                    && display == null) {
+                return this;
+            }
+            if (styleValue != null) {
+                // properties in the style attribute take priority over attributes
+                for (String declaration : styleValue.split(";")) {
+                    int colon = declaration.indexOf(':');
+                    if (colon < 0) {
+                        continue;
+                    }
+                    String property = declaration.substring(0, colon).trim();
+                    String value = declaration.substring(colon + 1).trim();
+                    if (property.equals("stroke")) {
+                        strokeValue = value;
+                    } else if (property.equals("fill")) {
+                        fillValue = value;
+                    } else if (property.equals("display")) {
+                        display = value;
+                    }
+                }
+            }
+            if ("none".equals(display)) {
+                return new Style(stroke, fill, dx, dy, true);
+            }
+            double newDx = dx;
+            double newDy = dy;
+            if (transform != null) {
+                NumberScanner scanner = new NumberScanner(transform.trim());
+                if (!scanner.skip("translate(")) {
+                    return new Style(stroke, fill, dx, dy, true); // scaling and rotating are not supported
+                }
+                double tx = scanner.next();
+                double ty = scanner.hasNumber() ? scanner.next() : 0;
+                if (Double.isNaN(tx) || Double.isNaN(ty) || !scanner.skip(")") || !scanner.atEnd()) {
+                    return new Style(stroke, fill, dx, dy, true);
+                }
+                newDx += tx;
+                newDy += ty;
+            }
+            int newStroke = paint(strokeValue);
+            int newFill = paint(fillValue);
+            return new Style(newStroke == UNSET ? stroke : newStroke, newFill == UNSET ? fill : newFill,
+                    newDx, newDy, false);
+        }
+    }
+
+    /**
+     * Reads the numbers and command letters of path data, points lists and transforms.
+     */
+    private static final class NumberScanner {
+        private final String text;
+        private int position;
+
+        private NumberScanner(String text) {
+            this.text = text;
+        }
+
+        private void skipSeparators() {
+            while (position < text.length()
+                    && (Character.isWhitespace(text.charAt(position)) || text.charAt(position) == ',')) {
+                position++;
+            }
+        }
+
+        private boolean atEnd() {
+            skipSeparators();
+            return position == text.length();
+        }
+
+        /**
+         * Skip the given text if it comes next.
+         */
+        private boolean skip(String expected) {
+            skipSeparators();
+            if (text.startsWith(expected, position)) {
+                position += expected.length();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean hasNumber() {
+            skipSeparators();
+            if (position == text.length()) {
+                return false;
+            }
+            char c = text.charAt(position);
+            return c >= '0' && c <= '9' || c == '-' || c == '+' || c == '.';
+        }
+
+        /**
+         * Get the next command letter.
+         * @return the letter, 0 at the end of the text, or '?' if a number or other character comes next.
+         */
+        private char nextCommand() {
+            skipSeparators();
+            if (position == text.length()) {
+                return 0;
+            }
+            char c = text.charAt(position);
+            if (Character.isLetter(c)) {
+                position++;
+                return c;
+            }
+            return '?';
+        }
+
+        /**
+         * Get the next number.
+         * @return the number, or NaN if no number comes next.
+         */
+        private double next() {
+            if (!hasNumber()) {
+                return Double.NaN;
+            }
+            int start = position;
+            if (text.charAt(position) == '-' || text.charAt(position) == '+') {
+                position++;
+            }
+            boolean dot = false;
+            while (position < text.length()) {
+                char c = text.charAt(position);
+                if (c == '.' && !dot) {
+                    dot = true;
+                } else if (c == 'e' || c == 'E') {
+                    // an exponent, which may have a sign
+                    position++;
+                    if (position < text.length() && (text.charAt(position) == '-' || text.charAt(position) == '+')) {
+                        position++;
+                    }
+                    while (position < text.length() && Character.isDigit(text.charAt(position))) {
+                        position++;
+                    }
+                    break;
+                } else if (!Character.isDigit(c)) {
+                    break; // "1.5.5" and "1-2" are two numbers each
+                }
+                position++;
+            }
+            try {
+                return Double.parseDouble(text.substring(start, position));
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read, to report how much of the file has been read.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
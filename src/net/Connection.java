@@ -0,0 +1,135 @@
+package net;
+
+import model.StoreListener;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * A Connection is one end of a non-blocking socket between a DrawingServer and a DrawingClient,
+ * owned by the thread which selects on its selector. It decodes every complete frame that has
+ * arrived, however the bytes were split into reads, and queues frames to send, writing as much
+ * as the socket takes and waiting for the socket to become writable for the rest.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+class Connection {
+    private static final int READ_BUFFER_BYTES = 1 << 16;
+    private static final long MAX_QUEUED_BYTES = 64L << 20; // a peer which falls this far behind is dropped
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_BYTES); // bytes received but not yet decoded
+    private boolean handshakeReceived;
+    private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>(); // frames waiting to be written
+    private long queuedBytes;
+
+    /**
+     * Register a connected socket with a selector and queue the handshake.
+     * @param channel the connected socket.
+     * @param selector the selector of the thread which owns the connection.
+     * @throws IOException if the socket cannot be configured.
+     */
+    Connection(SocketChannel channel, Selector selector) throws IOException {
+        this.channel = channel;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true); // frames are already batched, so send them straight away
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+        send(Encoder.handshake());
+    }
+
+    /**
+     * Read what has arrived and decode every complete frame.
+     * @param changes told about the changes sent by a server, or null if they are not expected.
+     * @param requests told about the edits sent by a client, or null if they are not expected.
+     * @return false if the peer closed the connection.
+     * @throws IOException if reading fails or the peer sent something which is not valid.
+     */
+    boolean read(StoreListener changes, Protocol.Requests requests) throws IOException {
+        if (channel.read(input) < 0) {
+            return false;
+        }
+        input.flip();
+        if (!handshakeReceived) {
+            if (input.remaining() < Protocol.HANDSHAKE_BYTES) {
+                input.compact();
+                return true;
+            }
+            if (input.getInt() != Protocol.MAGIC || input.getInt() != Protocol.VERSION) {
+                throw new IOException("Not a drawing connection of version " + Protocol.VERSION);
+            }
+            handshakeReceived = true;
+        }
+        int needed = 0; // bytes of the incomplete frame at the start of the input
+        while (input.remaining() >= 4) {
+            int length = input.getInt(input.position());
+            if (length < 0 || length > Protocol.MAX_FRAME_BYTES) {
+                throw new IOException("Frame too long: " + length);
+            }
+            if (input.remaining() < 4 + length) {
+                needed = 4 + length;
+                break;
+            }
+            ByteBuffer frame = input.duplicate();
+            frame.position(input.position() + 4).limit(input.position() + 4 + length);
+            Protocol.decode(frame, changes, requests);
+            input.position(input.position() + 4 + length);
+        }
+        input.compact();
+        if (needed > input.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(needed);
+            input.flip();
+            larger.put(input);
+            input = larger;
+        }
+        return true;
+    }
+
+    /**
+     * Queue frames to send and write as much of them as the socket takes.
+     * The buffer must not be changed afterwards, but a duplicate of a buffer can be sent to several connections.
+     * @param frames the frames, from the buffer's position to its limit.
+     * @throws IOException if writing fails or too much is waiting to be written.
+     */
+    void send(ByteBuffer frames) throws IOException {
+        if (queuedBytes > MAX_QUEUED_BYTES) {
+            throw new IOException("Peer is not reading"); // checked before adding, so a large snapshot can be sent
+        }
+        output.add(frames);
+        queuedBytes += frames.remaining();
+        flush();
+    }
+
+    /**
+     * Write queued frames until the queue is empty or the socket takes no more,
+     * and select for writing while anything is left.
+     * @throws IOException if writing fails.
+     */
+    void flush() throws IOException {
+        while (!output.isEmpty()) {
+            ByteBuffer head = output.peek();
+            queuedBytes -= channel.write(head);
+            if (head.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            output.poll();
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Close the socket. Frames which were not written yet are lost.
+     */
+    void close() {
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // the connection is being dropped anyway
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package net;
+
+import model.DrawingHandler;
+import model.Shape;
+import model.StoreListener;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * The DrawingClient keeps a local drawing the same as the drawing shared by a DrawingServer.
+ * Edits are not made to the local drawing but sent to the server, which makes them in the same order
+ * for every client and sends back the changes they made. Edits can be asked for from any thread and
+ * are not waited for: they are queued and the client's network thread sends everything queued since
+ * its last write together. The changes which arrive in one read are made to the local drawing by one
+ * task given to an executor, such as the Swing event thread, so the drawing is only used by that thread.
+ * The task makes them as one batch, so the drawing's DrawingListeners are told about them once.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public class DrawingClient implements Closeable {
+    private final DrawingHandler drawing;
+    private final Executor applier;
+    private final Selector selector;
+    private final Connection connection;
+    private final Thread thread;
+    private final Object lock = new Object(); // guards requests
+    private final Encoder requests = new Encoder(); // edits not yet given to the network thread
+    private List<Runnable> received = new ArrayList<>(); // changes read but not yet given to the applier
+    private volatile boolean connected = true;
+    private volatile Runnable disconnectListener;
+
+    /**
+     * Remembers the changes decoded by the network thread, to be made to the drawing by the applier.
+     */
+    private final StoreListener receiver = new StoreListener() {
+        @Override
+        public void shapeAppended(int position, Shape shape) {
+            received.add(() -> drawing.applyAppend(position, shape));
+        }
+
+        @Override
+        public void visibleRangeChanged(int start, int end) {
+            received.add(() -> drawing.applyVisibleRange(start, end));
+        }
+
+        @Override
+        public void storeCompacted(int count) {
+            received.add(() -> drawing.applyCompaction(count));
+        }
+    };
+
+    private DrawingClient(DrawingHandler drawing, Executor applier, Selector selector, SocketChannel channel)
+            throws IOException {
+        this.drawing = drawing;
+        this.applier = applier;
+        this.selector = selector;
+        connection = new Connection(channel, selector);
+        thread = new Thread(this::run, "drawing-client");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Connect to a server. The local drawing is replaced by the shared drawing once it arrives,
+     * since the server first sends every shape it stores from position 0.
+     * @param address the address of the server.
+     * @param drawing the local drawing, which must only be used by the applier's thread from now on.
+     * @param applier runs the tasks which change the local drawing, in order, for example SwingUtilities::invokeLater.
+     * @return the connected client.
+     * @throws IOException if the server cannot be reached.
+     */
+    public static DrawingClient connect(InetSocketAddress address, DrawingHandler drawing, Executor applier)
+            throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        Selector selector = null;
+        try {
+            selector = Selector.open();
+            DrawingClient client = new DrawingClient(drawing, applier, selector, channel);
+            client.thread.start();
+            return client;
+        } catch (IOException e) {
+            channel.close();
+            if (selector != null) {
+                selector.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Ask the server to add a shape on top of the visible shapes.
+     * @param shape the shape to add.
+     */
+    public void addShape(Shape shape) {
+        synchronized (lock) {
+            requests.addShape(shape);
+        }
+        selector.wakeup();
+    }
+
+    /**
+     * Ask the server to undo the last command made to the shared drawing, by any client.
+     */
+    public void undo() {
+        request(Protocol.UNDO);
+    }
+
+    /**
+     * Ask the server to redo the last undone command of the shared drawing.
+     */
+    public void redo() {
+        request(Protocol.REDO);
+    }
+
+    /**
+     * Ask the server to clear the shared drawing.
+     */
+    public void clearShapes() {
+        request(Protocol.CLEAR);
+    }
+
+    /**
+     * Check whether the client is still connected. Edits asked for after it disconnected are ignored.
+     * @return true until the connection closes.
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Set the task to run on the applier after the connection closed, for whatever reason.
+     * @param listener the task, or null for none.
+     */
+    public void setDisconnectListener(Runnable listener) {
+        disconnectListener = listener;
+    }
+
+    /**
+     * Disconnect from the server. The local drawing keeps the changes made so far.
+     */
+    @Override
+    public void close() {
+        connected = false;
+        selector.wakeup();
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Queue an edit without arguments and wake the network thread to send it.
+     */
+    private void request(byte message) {
+        synchronized (lock) {
+            requests.request(message);
+        }
+        selector.wakeup();
+    }
+
+    /**
+     * The network thread: send the queued edits and pass the changes which arrive to the applier.
+     */
+    private void run() {
+        try {
+            while (connected) {
+                selector.select();
+                ByteBuffer frames = null;
+                synchronized (lock) {
+                    if (!requests.isEmpty()) {
+                        frames = requests.take();
+                    }
+                }
+                if (frames != null) {
+                    connection.send(frames);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isReadable() && !connection.read(receiver, null)) {
+                        connected = false;
+                    } else if (key.isValid() && key.isWritable()) {
+                        connection.flush();
+                    }
+                }
+                if (!received.isEmpty()) {
+                    List<Runnable> changes = received;
+                    received = new ArrayList<>();
+                    applier.execute(() -> {
+                        // one batch, so the drawing's listeners are told once about everything read together
+                        drawing.beginBatch();
+                        try {
+                            for (Runnable change : changes) {
+                                change.run();
+                            }
+                        } finally {
+                            drawing.commit();
+                        }
+                    });
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Drawing connection lost: " + e.getMessage());
+        } finally {
+            connected = false;
+            connection.close();
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // the connection is closed anyway
+            }
+            Runnable listener = disconnectListener;
+            if (listener != null) {
+                applier.execute(listener);
+            }
+        }
+    }
+}
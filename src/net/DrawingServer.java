@@ -0,0 +1,221 @@
+package net;
+
+import model.DrawingHandler;
+import model.Shape;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The DrawingServer shares a drawing with every DrawingClient connected to it.
+ * One thread owns the drawing and every socket. It makes the edits which clients ask for in the
+ * order they arrive, and the changes they make to the drawing are encoded as they happen. After
+ * each round of reading, the changes are sent to every client as one buffer, so every client sees
+ * the same changes in the same order, however many edits arrived together.
+ * A client which connects later is first sent the whole drawing, then the changes after it.
+ * The drawing must not be used by any other thread while the server runs.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public class DrawingServer implements Closeable {
+    private final DrawingHandler drawing;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Encoder changes = new Encoder(); // changes made since they were last sent
+    private final List<Connection> clients = new ArrayList<>();
+    private final Thread thread;
+    private volatile boolean closed;
+    private volatile int clientCount;
+
+    /**
+     * The edits asked for by clients, made on the server's thread.
+     */
+    private final Protocol.Requests requests = new Protocol.Requests() {
+        @Override
+        public void addShape(Shape shape) {
+            drawing.addShape(shape);
+        }
+
+        @Override
+        public void undo() {
+            drawing.undo();
+        }
+
+        @Override
+        public void redo() {
+            drawing.redo();
+        }
+
+        @Override
+        public void clearShapes() {
+            drawing.clearShapes();
+        }
+    };
+
+    private DrawingServer(DrawingHandler drawing, Selector selector, ServerSocketChannel serverChannel) {
+        this.drawing = drawing;
+        this.selector = selector;
+        this.serverChannel = serverChannel;
+        drawing.addStoreListener(changes);
+        thread = new Thread(this::run, "drawing-server");
+    }
+
+    /**
+     * Start sharing a drawing.
+     * @param address the address to listen on, for example port 0 of the loopback address for any free port.
+     * @param drawing the drawing to share, which is only used by the server's thread from now on.
+     * @return the running server.
+     * @throws IOException if the address cannot be listened on.
+     */
+    public static DrawingServer start(InetSocketAddress address, DrawingHandler drawing) throws IOException {
+        Selector selector = Selector.open();
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(address);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        DrawingServer server = new DrawingServer(drawing, selector, serverChannel);
+        server.thread.start();
+        return server;
+    }
+
+    /**
+     * Get the port which the server listens on, useful when it was started on port 0.
+     * @return the port number.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Get the number of connected clients.
+     * @return number of clients.
+     */
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    /**
+     * Stop sharing the drawing and disconnect every client.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The server's thread: accept clients, make the edits they ask for and send the changes to every client.
+     */
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection client = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable() && !client.read(null, requests)) {
+                            drop(client);
+                        } else if (key.isValid() && key.isWritable()) {
+                            client.flush();
+                        }
+                    } catch (IOException e) {
+                        drop(client);
+                    }
+                }
+                sendChanges();
+            }
+        } catch (IOException e) {
+            System.err.println("Drawing server stopped: " + e.getMessage());
+        } finally {
+            for (Connection client : clients) {
+                client.close();
+            }
+            clients.clear();
+            clientCount = 0;
+            drawing.removeStoreListener(changes);
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                // the server is stopping anyway
+            }
+        }
+    }
+
+    /**
+     * Accept a new client and send it the whole drawing.
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        // the clients already connected must get the changes made before the snapshot, but the new one must not
+        sendChanges();
+        try {
+            Connection client = new Connection(channel, selector);
+            Encoder snapshot = new Encoder();
+            drawing.describeTo(snapshot);
+            client.send(snapshot.take());
+            clients.add(client);
+            clientCount = clients.size();
+        } catch (IOException e) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Send the changes made since they were last sent to every client.
+     */
+    private void sendChanges() {
+        if (changes.isEmpty()) {
+            return;
+        }
+        ByteBuffer frames = changes.take();
+        for (Connection client : new ArrayList<>(clients)) {
+            try {
+                client.send(frames.duplicate());
+            } catch (IOException e) {
+                drop(client);
+            }
+        }
+    }
+
+    /**
+     * Disconnect a client.
+     */
+    private void drop(Connection client) {
+        client.close();
+        clients.remove(client);
+        clientCount = clients.size();
+    }
+}
@@ -0,0 +1,164 @@
+package net;
+
+import model.Shape;
+import model.StoreListener;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The Encoder writes messages of the Protocol into frames in memory, to be sent together later.
+ * As a StoreListener it encodes the changes a drawing makes, so a server adds it to its drawing
+ * to record what every client must repeat. Messages go into the open frame until the frame is
+ * FRAME_BYTES long, then a new frame is started, so no frame is longer than a reader accepts.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+class Encoder implements StoreListener {
+    private static final int FRAME_BYTES = 1 << 16; // a new frame is started once a frame is this long
+
+    private byte[] bytes = new byte[4096];
+    private int size; // number of bytes encoded
+    private int frameStart = -1; // position of the length of the open frame, -1 if there is none
+
+    @Override
+    public void shapeAppended(int position, Shape shape) {
+        startMessage(Protocol.APPEND);
+        writeVarint(position);
+        writeShape(shape);
+    }
+
+    @Override
+    public void visibleRangeChanged(int start, int end) {
+        startMessage(Protocol.RANGE);
+        writeVarint(start);
+        writeVarint(end);
+    }
+
+    @Override
+    public void storeCompacted(int count) {
+        startMessage(Protocol.COMPACT);
+        writeVarint(count);
+    }
+
+    /**
+     * Encode a request to add a shape to the shared drawing.
+     * @param shape the shape to add.
+     */
+    void addShape(Shape shape) {
+        startMessage(Protocol.ADD);
+        writeShape(shape);
+    }
+
+    /**
+     * Encode a request without arguments, such as Protocol.UNDO.
+     * @param message the message to encode.
+     */
+    void request(byte message) {
+        startMessage(message);
+    }
+
+    /**
+     * Check whether there is anything to send.
+     * @return true if no message was encoded since the last take().
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Take the encoded frames, leaving the encoder empty.
+     * @return a buffer holding the frames, ready to be written to a channel.
+     */
+    ByteBuffer take() {
+        endFrame();
+        ByteBuffer frames = ByteBuffer.wrap(Arrays.copyOf(bytes, size));
+        size = 0;
+        if (bytes.length > Protocol.MAX_FRAME_BYTES) {
+            bytes = new byte[4096]; // do not keep the memory of a snapshot or a long burst of changes
+        }
+        return frames;
+    }
+
+    /**
+     * Encode the handshake which starts a connection.
+     * @return a buffer holding the handshake.
+     */
+    static ByteBuffer handshake() {
+        ByteBuffer handshake = ByteBuffer.allocate(Protocol.HANDSHAKE_BYTES);
+        handshake.putInt(Protocol.MAGIC).putInt(Protocol.VERSION).flip();
+        return handshake;
+    }
+
+    /**
+     * Write the message type, in a new frame if the open frame is full.
+     */
+    private void startMessage(byte message) {
+        if (frameStart >= 0 && size - frameStart >= FRAME_BYTES) {
+            endFrame();
+        }
+        if (frameStart < 0) {
+            frameStart = size;
+            ensureCapacity(4);
+            size += 4; // the length is written once the frame is complete
+        }
+        ensureCapacity(1);
+        bytes[size++] = message;
+    }
+
+    /**
+     * Write the length of the open frame.
+     */
+    private void endFrame() {
+        if (frameStart < 0) {
+            return;
+        }
+        int length = size - frameStart - 4;
+        bytes[frameStart] = (byte) (length >>> 24);
+        bytes[frameStart + 1] = (byte) (length >>> 16);
+        bytes[frameStart + 2] = (byte) (length >>> 8);
+        bytes[frameStart + 3] = (byte) length;
+        frameStart = -1;
+    }
+
+    /**
+     * Write a shape: its type, its start point, the distance to its end point and its colours.
+     */
+    private void writeShape(Shape shape) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) shape.getType().ordinal();
+        writeVarint(Protocol.zigzag(shape.getStartX()));
+        writeVarint(Protocol.zigzag(shape.getStartY()));
+        writeVarint(Protocol.zigzag(shape.getEndX() - shape.getStartX()));
+        writeVarint(Protocol.zigzag(shape.getEndY() - shape.getStartY()));
+        writeRGB(shape.getBorderColour().getRGB());
+        writeRGB(shape.getFillColour().getRGB());
+    }
+
+    /**
+     * Write a variable length integer, 7 bits per byte, lowest bits first.
+     */
+    private void writeVarint(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            bytes[size++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+    }
+
+    /**
+     * Write a colour as three bytes of red, green and blue.
+     */
+    private void writeRGB(int rgb) {
+        ensureCapacity(3);
+        bytes[size++] = (byte) (rgb >>> 16);
+        bytes[size++] = (byte) (rgb >>> 8);
+        bytes[size++] = (byte) rgb;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package net;
+
+import model.ColourPalette;
+import model.Shape;
+import model.ShapeType;
+import model.StoreListener;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * The Protocol class describes how a shared drawing is sent between a DrawingServer and its clients.
+ * Each side starts with a handshake of MAGIC and VERSION, then sends frames: an int byte length
+ * followed by any number of messages, so that many changes cost one write and one read.
+ * The server sends the changes its drawing makes to its store, as told to a StoreListener, which the
+ * clients repeat with the DrawingHandler apply methods. Clients send the edits they want made.
+ * Numbers are written as variable length integers, 7 bits per byte with the high bit set on every byte
+ * but the last, so that small positions and the short distance from the start to the end of a shape
+ * take a byte or two. Signed numbers are zigzag encoded first, so small negative numbers are short too.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+final class Protocol {
+    static final int MAGIC = 0x56474431; // "VGD1"
+    static final int VERSION = 1;
+    static final int HANDSHAKE_BYTES = 8;
+    static final int MAX_FRAME_BYTES = 1 << 20; // longer frames are refused, new frames are started well before
+
+    // server to client, the changes told to a StoreListener
+    static final byte APPEND = 1; // varint position, shape
+    static final byte RANGE = 2; // varint start, varint end
+    static final byte COMPACT = 3; // varint count
+    // client to server, the edits of DrawingHandler
+    static final byte ADD = 4; // shape
+    static final byte UNDO = 5;
+    static final byte REDO = 6;
+    static final byte CLEAR = 7;
+
+    private Protocol() {
+        // only static methods
+    }
+
+    /**
+     * The edits which a client can ask the server to make to the shared drawing.
+     */
+    interface Requests {
+
+        /**
+         * Add a shape on top of the visible shapes, as DrawingHandler.addShape() does.
+         * @param shape the shape to add.
+         */
+        void addShape(Shape shape);
+
+        /**
+         * Undo the last command, as DrawingHandler.undo() does.
+         */
+        void undo();
+
+        /**
+         * Redo the last undone command, as DrawingHandler.redo() does.
+         */
+        void redo();
+
+        /**
+         * Clear the visible shapes, as DrawingHandler.clearShapes() does.
+         */
+        void clearShapes();
+    }
+
+    /**
+     * Decode the messages of one frame.
+     * @param frame the messages, from its position to its limit.
+     * @param changes told about the changes sent by a server, or null if they are not expected.
+     * @param requests told about the edits sent by a client, or null if they are not expected.
+     * @throws IOException if the frame is not valid.
+     */
+    static void decode(ByteBuffer frame, StoreListener changes, Requests requests) throws IOException {
+        try {
+            while (frame.hasRemaining()) {
+                byte message = frame.get();
+                if (message == APPEND && changes != null) {
+                    int position = readVarint(frame);
+                    changes.shapeAppended(position, readShape(frame));
+                } else if (message == RANGE && changes != null) {
+                    int start = readVarint(frame);
+                    changes.visibleRangeChanged(start, readVarint(frame));
+                } else if (message == COMPACT && changes != null) {
+                    changes.storeCompacted(readVarint(frame));
+                } else if (message == ADD && requests != null) {
+                    requests.addShape(readShape(frame));
+                } else if (message == UNDO && requests != null) {
+                    requests.undo();
+                } else if (message == REDO && requests != null) {
+                    requests.redo();
+                } else if (message == CLEAR && requests != null) {
+                    requests.clearShapes();
+                } else {
+                    throw new IOException("Unexpected message: " + message);
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated message");
+        }
+    }
+
+    /**
+     * Read a shape written by Encoder.
+     */
+    private static Shape readShape(ByteBuffer frame) throws IOException {
+        ShapeType[] types = ShapeType.values();
+        int type = frame.get();
+        if (type < 0 || type >= types.length) {
+            throw new IOException("Unknown shape type: " + type);
+        }
+        int startX = unzigzag(readVarint(frame));
+        int startY = unzigzag(readVarint(frame));
+        int endX = startX + unzigzag(readVarint(frame));
+        int endY = startY + unzigzag(readVarint(frame));
+        Shape shape = types[type].create(startX, startY, endX, endY);
+        try {
+            shape.setBorderColourIndex(ColourPalette.intern(readRGB(frame)));
+            shape.setFillColourIndex(ColourPalette.intern(readRGB(frame)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // the palette is full, so the peer is dropped
+        }
+        return shape;
+    }
+
+    /**
+     * Read a variable length integer.
+     */
+    static int readVarint(ByteBuffer frame) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = frame.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Read a colour written as three bytes of red, green and blue.
+     */
+    private static int readRGB(ByteBuffer frame) {
+        return (frame.get() & 0xFF) << 16 | (frame.get() & 0xFF) << 8 | frame.get() & 0xFF;
+    }
+
+    /**
+     * Map a signed number to an unsigned one which is small when the number is near zero.
+     */
+    static int zigzag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    /**
+     * Undo zigzag().
+     */
+    static int unzigzag(int n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+}
@@ -0,0 +1,34 @@
+package view;
+
+import model.ColourPalette;
+import model.SimpleColour;
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * The ColourCache class keeps one java.awt.Color for every ColourPalette index,
+ * so that drawing a shape never has to create a new Color.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+class ColourCache {
+    private Color[] colours = new Color[16]; // palette index -> Color, null until first used
+
+    /**
+     * Get the Color for a palette index, creating it on first use.
+     * @param index palette index of the colour.
+     * @return the cached Color.
+     */
+    Color get(int index) {
+        if (index >= colours.length) {
+            colours = Arrays.copyOf(colours, Math.max(index + 1, colours.length * 2));
+        }
+        Color colour = colours[index];
+        if (colour == null) {
+            SimpleColour sc = ColourPalette.get(index);
+            colour = new Color(sc.getRGB());
+            colours[index] = colour;
+        }
+        return colour;
+    }
+}
@@ -0,0 +1,32 @@
+package view;
+
+import model.Shape;
+import java.awt.geom.Path2D;
+
+/**
+ * Draws a diagonal cross as two path segments, one for each diagonal of its bounding box.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+class DiagonalCrossRenderer implements ShapeRenderer {
+
+    @Override
+    public void appendOutline(Shape shape, Path2D outline) {
+        // first line, from the start point to the end point
+        outline.moveTo(shape.getStartX(), shape.getStartY());
+        outline.lineTo(shape.getEndX(), shape.getEndY());
+        // second line, mirroring the first line
+        outline.moveTo(shape.getStartX(), shape.getEndY());
+        outline.lineTo(shape.getEndX(), shape.getStartY());
+    }
+
+    @Override
+    public boolean isFilled() {
+        return false;
+    }
+
+    @Override
+    public void appendFill(Shape shape, Path2D fill) {
+        // a diagonal cross has no interior
+    }
+}
@@ -0,0 +1,86 @@
+package view;
+
+import model.ColourPalette;
+import model.Shape;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The DotRenderer draws the shapes which are smaller than a pixel when the drawing is zoomed out, or only a few
+ * pixels in size in a draft.
+ * Instead of drawing the outline of every tiny shape, the shapes covering each pixel are counted and the
+ * pixel is written once as a dot in the border colour of the topmost of them, more opaque the more shapes
+ * cover it. The density of the shapes stays visible, while each tiny shape only costs a few arithmetic
+ * operations, so drawing the whole of a large drawing takes about as long as drawing part of it.
+ * Dots lie underneath the shapes which are large enough to be drawn normally.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+class DotRenderer {
+    static final double DOT_SIZE = 1; // shapes narrower and lower than a pixel are drawn as dots
+    static final double DRAFT_DOT_SIZE = 16; // the same for drafts drawn while the user zooms or pans
+    private static final int DOT_ALPHA = 64; // opacity which each shape adds to its dot, out of 255
+
+    private int[] counts = new int[0]; // number of shapes on each pixel of the region
+    private int[] pixels = new int[0]; // ARGB of each pixel of the region
+
+    /**
+     * Draw the shapes smaller than a number of pixels as dots into part of an image.
+     * The part of the image must be fully transparent, as it is after being cleared for a redraw.
+     * @param target the image to draw into, of TYPE_INT_ARGB.
+     * @param region the part of the image to draw, nothing outside of it is changed.
+     * @param shapes the shapes to draw, lowest z-order first.
+     * @param viewport maps the coordinates of the shapes to pixels of the image.
+     * @param dotSize shapes narrower and lower than this many pixels are drawn as dots, normally DOT_SIZE.
+     * @return the shapes which are at least dotSize pixels wide or high, lowest z-order first, to be drawn normally.
+     */
+    List<Shape> render(BufferedImage target, Rectangle region, List<Shape> shapes, Viewport viewport, double dotSize) {
+        region = region.intersection(new Rectangle(0, 0, target.getWidth(), target.getHeight()));
+        double scale = viewport.getScale();
+        if (region.isEmpty() || scale >= 1) {
+            return shapes; // only drawings which are zoomed out have dots
+        }
+        int size = region.width * region.height;
+        if (counts.length < size) {
+            counts = new int[size];
+            pixels = new int[size];
+        } else {
+            Arrays.fill(counts, 0, size, 0);
+            Arrays.fill(pixels, 0, size, 0);
+        }
+        List<Shape> larger = new ArrayList<>();
+        int dots = 0;
+        for (Shape shape : shapes) {
+            if (shape.getWidth() * scale >= dotSize || shape.getHeight() * scale >= dotSize) {
+                larger.add(shape);
+                continue;
+            }
+            // the dot covers the pixels under the shape's bounds, at least one
+            int x0 = (int) Math.floor(viewport.toScreenX(shape.getX()));
+            int y0 = (int) Math.floor(viewport.toScreenY(shape.getY()));
+            int x1 = Math.max((int) Math.ceil(viewport.toScreenX(shape.getX() + shape.getWidth())), x0 + 1);
+            int y1 = Math.max((int) Math.ceil(viewport.toScreenY(shape.getY() + shape.getHeight())), y0 + 1);
+            x0 = Math.max(x0 - region.x, 0);
+            y0 = Math.max(y0 - region.y, 0);
+            x1 = Math.min(x1 - region.x, region.width);
+            y1 = Math.min(y1 - region.y, region.height);
+            int rgb = ColourPalette.get(shape.getBorderColourIndex()).getRGB() & 0xFFFFFF;
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    int pixel = y * region.width + x;
+                    int count = ++counts[pixel];
+                    pixels[pixel] = Math.min(count * DOT_ALPHA, 255) << 24 | rgb;
+                    dots++;
+                }
+            }
+        }
+        if (dots > 0) {
+            // only the first width * height pixels are read
+            target.getRaster().setDataElements(region.x, region.y, region.width, region.height, pixels);
+        }
+        return larger;
+    }
+}
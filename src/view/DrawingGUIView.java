@@ -1,14 +1,26 @@
 package view;
 
+import model.AutosaveJournal;
+import model.DrawingFile;
+import model.DrawingHandler;
+import model.SvgFile;
 import javax.swing.JFrame;
 import javax.swing.JScrollPane;
 import javax.swing.JToolBar;
 import javax.swing.JButton;
 import javax.swing.JColorChooser;
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
 
 
 /**
@@ -38,17 +50,52 @@ public class DrawingGUIView implements ActionListener {
     private JButton rectangleBtn;
     private JButton ellipsesBtn;
     private JButton diagonalCrossBtn;
+    private JButton selectBtn;
     private JButton clearBtn;
+    private JButton saveBtn;
+    private JButton openBtn;
+    private JButton importBtn;
+    private JButton exportBtn;
+    private JButton fitBtn;
+    private JButton actualSizeBtn;
+    private JButton statsBtn;
 
     /**
      * Create a new DrawingGUIView.
      */
     public DrawingGUIView() {
+        this(new DrawingHandler(), null);
+    }
+
+    /**
+     * Create a new DrawingGUIView showing an existing drawing.
+     * @param handler the drawing to show, for example one recovered from the autosave.
+     * @param autosave the autosave journal which saves every change, or null to not autosave.
+     */
+    public DrawingGUIView(DrawingHandler handler, AutosaveJournal autosave) {
         this.mainFrame = new JFrame();
         toolbar = new JToolBar();
-        panel = new DrawingPanel();
-        panel.setVisible(false); // initially set to invisible until the user clicks on a shape to draw.
+        panel = new DrawingPanel(handler);
+        // initially set to invisible until the user clicks on a shape to draw, unless there is a drawing to show.
+        panel.setVisible(handler.getShapeCount() > 0);
         drawingPane = new JScrollPane(panel); // scrolling pane is on the panel
+        panel.getMetrics().register(); // publish the render metrics over JMX
+        if (autosave != null) {
+            panel.setAutosave(autosave);
+            // The session ends normally when the window is closed, so the autosave is no longer needed
+            mainFrame.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosing(WindowEvent e) {
+                    try {
+                        autosave.close();
+                    } catch (IOException ex) {
+                        // show dialog box
+                        JOptionPane.showMessageDialog(mainFrame, "Could not remove autosave files: "
+                                + ex.getMessage());
+                    }
+                }
+            });
+        }
         setupComponents();
     }
 
@@ -77,7 +124,15 @@ public class DrawingGUIView implements ActionListener {
         rectangleBtn = new JButton("Rectangle");
         ellipsesBtn = new JButton("Ellipses");
         diagonalCrossBtn = new JButton("Cross");
+        selectBtn = new JButton("Select");
         clearBtn = new JButton("Clear");
+        saveBtn = new JButton("Save");
+        openBtn = new JButton("Open");
+        importBtn = new JButton("Import SVG");
+        exportBtn = new JButton("Export SVG");
+        fitBtn = new JButton("Fit");
+        actualSizeBtn = new JButton("100%");
+        statsBtn = new JButton("Stats");
         // add action listeners for each button
         addActionListenerForButtons(this);
         // add buttons to the toolbar
@@ -89,11 +144,30 @@ public class DrawingGUIView implements ActionListener {
         toolbar.add(rectangleBtn);
         toolbar.add(ellipsesBtn);
         toolbar.add(diagonalCrossBtn);
+        toolbar.add(selectBtn);
         toolbar.add(clearBtn);
+        toolbar.add(saveBtn);
+        toolbar.add(openBtn);
+        toolbar.add(importBtn);
+        toolbar.add(exportBtn);
+        toolbar.add(fitBtn);
+        toolbar.add(actualSizeBtn);
+        toolbar.add(statsBtn);
         // add toolbar to north of main frame
         mainFrame.add(toolbar, BorderLayout.NORTH);
     }
 
+    /**
+     * Show a drawing shared by a DrawingServer instead of the local drawing, and share the changes made to it.
+     * @param address the address of the server.
+     * @throws IOException if the server cannot be reached.
+     */
+    public void shareDrawing(InetSocketAddress address) throws IOException {
+        panel.shareDrawing(address);
+        panel.setVisible(true);
+        mainFrame.setTitle("Shared drawing " + address.getHostString() + ":" + address.getPort());
+    }
+
     /**
      * Add action listeners to the buttons in the toolbar.
      * The actionPerformed() method will handle the events.
@@ -108,7 +182,15 @@ public class DrawingGUIView implements ActionListener {
         rectangleBtn.addActionListener(al);
         ellipsesBtn.addActionListener(al);
         diagonalCrossBtn.addActionListener(al);
+        selectBtn.addActionListener(al);
         clearBtn.addActionListener(al);
+        saveBtn.addActionListener(al);
+        openBtn.addActionListener(al);
+        importBtn.addActionListener(al);
+        exportBtn.addActionListener(al);
+        fitBtn.addActionListener(al);
+        actualSizeBtn.addActionListener(al);
+        statsBtn.addActionListener(al);
     }
 
     /**
@@ -160,10 +242,84 @@ public class DrawingGUIView implements ActionListener {
         else if (e.getSource() == diagonalCrossBtn) {
             panel.buttonSelected("diagonalCrossBtn");
         }
+        else if (e.getSource() == selectBtn) {
+            panel.buttonSelected("selectBtn");
+        }
         else if (e.getSource() == clearBtn) {
             panel.buttonSelected("clearBtn");
             panel.clearCanvas();
         }
+        else if (e.getSource() == saveBtn) {
+            // Show a pop-up window for choosing the file to save to
+            JFileChooser chooser = createFileChooser();
+            if (chooser.showSaveDialog(mainFrame) == JFileChooser.APPROVE_OPTION) {
+                File file = chooser.getSelectedFile();
+                // Add the file extension if the user did not type it
+                if (!file.getName().endsWith("." + DrawingFile.EXTENSION)) {
+                    file = new File(file.getPath() + "." + DrawingFile.EXTENSION);
+                }
+                panel.saveDrawing(file);
+            }
+        }
+        else if (e.getSource() == openBtn) {
+            // Show a pop-up window for choosing the file to open
+            JFileChooser chooser = createFileChooser();
+            if (chooser.showOpenDialog(mainFrame) == JFileChooser.APPROVE_OPTION) {
+                panel.openDrawing(chooser.getSelectedFile());
+            }
+        }
+        else if (e.getSource() == importBtn) {
+            // Show a pop-up window for choosing the SVG file to import
+            JFileChooser chooser = createSvgFileChooser();
+            if (chooser.showOpenDialog(mainFrame) == JFileChooser.APPROVE_OPTION) {
+                panel.importSvg(chooser.getSelectedFile());
+            }
+        }
+        else if (e.getSource() == exportBtn) {
+            // Show a pop-up window for choosing the SVG file to export to
+            JFileChooser chooser = createSvgFileChooser();
+            if (chooser.showSaveDialog(mainFrame) == JFileChooser.APPROVE_OPTION) {
+                File file = chooser.getSelectedFile();
+                // Add the file extension if the user did not type it
+                if (!file.getName().endsWith("." + SvgFile.EXTENSION)) {
+                    file = new File(file.getPath() + "." + SvgFile.EXTENSION);
+                }
+                panel.exportSvg(file);
+            }
+        }
+        else if (e.getSource() == fitBtn) {
+            // Zoom to show the whole drawing
+            panel.zoomToFit();
+        }
+        else if (e.getSource() == actualSizeBtn) {
+            panel.resetZoom();
+        }
+        else if (e.getSource() == statsBtn) {
+            // Show or hide the render metrics overlay
+            panel.setHudVisible(!panel.isHudVisible());
+        }
+    }
+
+    /**
+     * Create a file chooser which shows drawing files.
+     * @return the file chooser.
+     */
+    private JFileChooser createFileChooser() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("Drawings (*." + DrawingFile.EXTENSION + ")",
+                DrawingFile.EXTENSION));
+        return chooser;
+    }
+
+    /**
+     * Create a file chooser which shows SVG images.
+     * @return the file chooser.
+     */
+    private JFileChooser createSvgFileChooser() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("SVG images (*." + SvgFile.EXTENSION + ")",
+                SvgFile.EXTENSION));
+        return chooser;
     }
 
 }
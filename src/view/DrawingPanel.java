@@ -1,25 +1,56 @@
 package view;
 
-import model.DiagonalCross;
+import model.AutosaveJournal;
+import model.DrawingChange;
+import model.DrawingFile;
 import model.DrawingHandler;
-import model.Ellipse;
-import model.Line;
+import model.DrawingListener;
+import model.DrawingSnapshot;
+import model.ImportListener;
 import model.SimpleColour;
-import model.Rectangle;
+import model.SvgFile;
 import model.Shape;
+import model.ShapeType;
+import net.DrawingClient;
+import javax.swing.JDialog;
 import javax.swing.JPanel;
 import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.WindowConstants;
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
 import java.awt.Point;
 import java.awt.Dimension;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Color;
+import java.awt.event.InputEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
-import java.awt.geom.Ellipse2D;
-import java.util.Stack;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The DrawingPanel class displays a graphical user interface to the user
@@ -27,22 +58,125 @@ import java.util.Stack;
  * undo and redo creation of shapes.
  * The class updates and accesses the model component. If a model component
  * changes, then the GUI will repaint to show the change to the user.
+ * The drawing is shown through a Viewport which can be zoomed with the mouse wheel and panned by dragging
+ * with the right or middle mouse button. When zoomed out, shapes smaller than a pixel are drawn as
+ * density dots and thin borders without anti aliasing, so frames take about as long for the whole drawing
+ * as for a small part of it.
+ * While the user zooms, pans or drags, redraws of the cached image are quick drafts without anti aliasing
+ * and with more of the small shapes as dots. Once the input has been idle for REFINE_MILLIS, the whole cached
+ * image is drawn again at full quality on a background thread and swapped in, so the final image is the same
+ * as without drafts.
+ * With the Select button, clicking selects the topmost shape under the pointer and dragging selects the shapes
+ * inside a rubber band, holding shift to add to the selection. Clicks are looked up in a PickBuffer which is
+ * kept up to date alongside the cached image, so picking takes the same time however many shapes there are.
+ * A drawing can be shared with other windows through a DrawingServer. While it is shared, new shapes, undo,
+ * redo and clear are sent to the server instead of changing the drawing, and the drawing changes when the
+ * server sends back the changes of every window, in the same order for all of them.
+ * Other threads can stream shapes into the drawing by offering them to the DrawingHandler. The panel takes
+ * the offered shapes in batches of OFFER_BATCH, letting other events run between batches, and full quality
+ * redraws read a DrawingSnapshot on a background thread, so neither makes the panel wait.
  *
  * @author Lesleyjane J https://github.com/lesleyjanej
  */
 public class DrawingPanel extends JPanel {
+    // Extra pixels around a shape's bounding box covering the stroke width and anti aliasing
+    private static final int DIRTY_MARGIN = 2;
+    // Milliseconds between updates of the shape being drawn, about one display frame
+    private static final int FRAME_MILLIS = 16;
+    // Redraws of the cached image with at least this many shapes are drawn in parallel tiles
+    private static final int TILED_SHAPES = 5000;
+    // Milliseconds between updates of the metrics overlay
+    private static final int HUD_MILLIS = 250;
+    // Distance of the metrics overlay from the corner of the panel, and of its text from its edge
+    private static final int HUD_INSET = 8;
+    private static final Color HUD_BACKGROUND = new Color(0, 0, 0, 160);
+    // Steps of the import progress bar
+    private static final int PROGRESS_STEPS = 1000;
+    // Milliseconds a save may take before a dialog is shown until it is done
+    private static final int SAVE_DIALOG_MILLIS = 300;
+    // Zoom factor of one step of the mouse wheel
+    private static final double ZOOM_STEP = 1.25;
+    // Milliseconds without zooming, panning or dragging before a draft is refined to full quality
+    private static final int REFINE_MILLIS = 250;
+    // Offered shapes added and drawn at a time, before other events get a turn
+    private static final int OFFER_BATCH = 1000;
+    // Pixels the mouse can move while clicking before it drags a rubber band instead
+    private static final int CLICK_DISTANCE = 3;
+    // Selections with more shapes than this are outlined with one box around all of them
+    private static final int MAX_SELECTION_OUTLINES = 1000;
+    private static final Color SELECTION_COLOUR = new Color(0, 120, 215);
+    private static final BasicStroke SELECTION_STROKE = new BasicStroke(1, BasicStroke.CAP_BUTT,
+            BasicStroke.JOIN_MITER, 10, new float[] {4, 4}, 0);
 
     private Point startPoint; // The start point of a user's mouse click
     private Point endPoint; // The release of a mouse click
+    private Point panPoint; // last mouse position while panning, null when not panning
+    private Point selectPoint; // panel position where a selection click or rubber band started, or null
+    private Rectangle selectBand; // rubber band being dragged on the panel, or null
+    private boolean dragPending; // true if endPoint has moved since the shape being drawn was updated
+    private Timer dragFrameTimer; // limits updates of the shape being drawn to one per frame
     private String buttonSelected; // The string of the button from the toolbar which the user selected
     private DrawingHandler dh; // to handle the drawing of the shapes, colour and undo/redo options.
+    private ShapeBatchRenderer renderer; // draws shapes in batches of the same type and colour
+    private TileRenderer tileRenderer; // draws large redraws of the cached image in parallel
+    private DotRenderer dotRenderer; // draws shapes smaller than a pixel as dots when zoomed out
+    private Viewport viewport; // zoom and pan of the drawing
+    private PickBuffer pickBuffer; // topmost shape at each pixel of the panel, for selecting shapes
+    private BitSet selection; // positions in dh.getShapes() of the selected shapes
+    private Rectangle selectionBounds; // bounding box of the selected shapes in the drawing, or null if none
+    private BufferedImage shapeCache; // retained image of all committed shapes
+    private boolean shapeCacheValid; // false when the cached image no longer matches the stored shapes
+    private Rectangle shapeCacheDirty; // region of the cached image which must be redrawn, or null
+    private boolean shapeCacheDraft; // true if part of the cached image is a draft
+    private int shapeCacheVersion; // changed whenever the cached image or the shapes it must show change
+    private boolean progressive = true; // true if drafts are drawn while the user zooms, pans or drags
+    private boolean interacting; // true from a zoom, pan or drag until the input has been idle for REFINE_MILLIS
+    private Timer refineTimer; // ends the interaction once the input has been idle
+    private SwingWorker<BufferedImage, Void> refineWorker; // draws the refined cached image, or null
+    private boolean refineFailed; // true once the user has been told that refining failed
+    private AutosaveJournal autosave; // saves every change for crash recovery, or null
+    private DrawingClient sharing; // sends edits to the server sharing the drawing, or null if not shared
+    private JDialog saveDialog; // shown while a long save runs, or null
+    private final DrawingListener drawingListener = this::drawingChanged; // draws every change to the drawing
+    private final AtomicBoolean offerPending = new AtomicBoolean(); // true while addOfferedShapes() is queued
+    private final Runnable offerListener = this::scheduleOfferedShapes; // run by the threads offering shapes
+    private boolean offerContinuing; // true while offered shapes keep arriving, so they are undone together
+    private RenderMetrics metrics; // frame times, shape counts and input latency of this panel
+    private int shapesDrawn; // shapes drawn on top of the cached image since the last frame was recorded
+    private final BitSet cacheShapesDrawn = new BitSet(); // positions of the shapes redrawn into the cached image since then
+    private boolean shapeCacheRedrawn; // true if part of the cached image was redrawn since then
+    private boolean hudVisible; // true if the metrics overlay is shown
+    private Timer hudTimer; // repaints the metrics overlay while it is shown
+    private Rectangle hudBounds; // area of the metrics overlay when it was last painted
 
     /**
      * Create a new Drawing Panel instance which uses
      * mouse listeners and mouse motion listeners to detect how Shapes should be created and drawn.
      */
     public DrawingPanel() {
-        dh = new DrawingHandler();
+        this(new DrawingHandler());
+    }
+
+    /**
+     * Create a new Drawing Panel instance which shows an existing drawing, for example a recovered one.
+     * @param handler the drawing to show and change.
+     */
+    public DrawingPanel(DrawingHandler handler) {
+        dh = handler;
+        dh.addDrawingListener(drawingListener);
+        dh.setOfferListener(offerListener);
+        renderer = new ShapeBatchRenderer();
+        tileRenderer = new TileRenderer();
+        dotRenderer = new DotRenderer();
+        viewport = new Viewport();
+        pickBuffer = new PickBuffer();
+        selection = new BitSet();
+        metrics = new RenderMetrics();
+        hudTimer = new Timer(HUD_MILLIS, e -> {
+            if (hudBounds != null) {
+                repaint(hudBounds);
+            }
+        });
 
         addMouseListener(new MouseListener() {
             @Override
@@ -50,16 +184,54 @@ public class DrawingPanel extends JPanel {
 
             @Override
             public void mousePressed(MouseEvent e) {
-                startPoint = e.getPoint(); // start point for drawing a shape
+                if (SwingUtilities.isRightMouseButton(e) || SwingUtilities.isMiddleMouseButton(e)) {
+                    panPoint = e.getPoint(); // start panning instead of drawing
+                    return;
+                }
+                if ("selectBtn".equals(buttonSelected)) {
+                    selectPoint = e.getPoint(); // start selecting instead of drawing
+                    return;
+                }
+                // start point for drawing a shape, in the coordinates of the drawing
+                startPoint = new Point(viewport.toDrawingX(e.getX()), viewport.toDrawingY(e.getY()));
+                endPoint = null; // no end point until the mouse is dragged
+                dh.setCurrentShape(null); // the shape is created by the first drag event
             }
 
             @Override
             public void mouseReleased(MouseEvent e) {
-                // When the user has finished drawing a shape, add the shape to the list of shapes
-                if (startPoint != null && endPoint !=null) {
-                    dh.addShape(dh.getCurrentShape());
-                    // Repaint the GUI
-                    repaint();
+                if (panPoint != null) {
+                    panPoint = null;
+                    return;
+                }
+                if (selectPoint != null) {
+                    boolean add = (e.getModifiersEx() & InputEvent.SHIFT_DOWN_MASK) != 0;
+                    if (selectBand == null) {
+                        selectAt(selectPoint.x, selectPoint.y, add);
+                    } else {
+                        repaint(selectBand.x, selectBand.y, selectBand.width + 1, selectBand.height + 1);
+                        selectIn(selectBand, add);
+                    }
+                    selectPoint = null;
+                    selectBand = null;
+                    return;
+                }
+                // Apply the last drag event, which may still be waiting for the next frame
+                dragFrameTimer.stop();
+                if (dragPending) {
+                    updateCurrentShape();
+                }
+                // When the user has finished drawing a shape, add a copy of it to the list of shapes
+                Shape preview = dh.getCurrentShape();
+                if (startPoint != null && endPoint != null && preview != null && sharing != null) {
+                    // the shape is drawn when the server sends it back, in its place among the other windows' shapes
+                    sharing.addShape(preview.copy());
+                    dh.setCurrentShape(null);
+                    repaint(getDirtyBounds(preview));
+                } else if (startPoint != null && endPoint != null && preview != null) {
+                    // Only the new shape is drawn onto the cached image, by drawingChanged()
+                    dh.addShape(preview.copy());
+                    dh.setCurrentShape(null); // the shape is now part of the committed shapes
                 }
             }
 
@@ -72,28 +244,130 @@ public class DrawingPanel extends JPanel {
         addMouseMotionListener(new MouseMotionListener() {
             @Override
             public void mouseDragged(MouseEvent e) {
-                endPoint = e.getPoint(); //update endpoint while the mouse if being dragged
-                // Create a new shape depending on which button was selected.
-                // If the user clicks the line button then we will create a new line.
-                switch (buttonSelected) {
-                    case "lineBtn":
-                        dh.newShape(new Line(startPoint.x, startPoint.y, endPoint.x, endPoint.y));
-                        break;
-                    case "rectangleBtn":
-                        dh.newShape(new model.Rectangle(startPoint.x, startPoint.y, endPoint.x, endPoint.y));
-                        break;
-                    case "ellipseBtn":
-                        dh.newShape(new model.Ellipse(startPoint.x, startPoint.y, endPoint.x, endPoint.y));
-                        break;
-                    case "diagonalCrossBtn":
-                        dh.newShape(new DiagonalCross(startPoint.x, startPoint.y, endPoint.x, endPoint.y));
-                        break;
+                if (panPoint != null) {
+                    interact();
+                    pan(e.getX() - panPoint.x, e.getY() - panPoint.y);
+                    panPoint.setLocation(e.getX(), e.getY());
+                    return;
+                }
+                if (selectPoint != null) {
+                    dragSelectBand(e.getX(), e.getY());
+                    return;
+                }
+                //update endpoint while the mouse if being dragged, reusing the same point
+                if (endPoint == null) {
+                    endPoint = new Point();
+                }
+                endPoint.setLocation(viewport.toDrawingX(e.getX()), viewport.toDrawingY(e.getY()));
+                dragPending = true;
+                interact();
+                metrics.dragEvent(dragFrameTimer.isRunning());
+                // Update the shape straight away unless it was already updated during this frame,
+                // in which case the timer applies the latest end point at the end of the frame.
+                if (!dragFrameTimer.isRunning()) {
+                    updateCurrentShape();
+                    dragFrameTimer.start();
                 }
-                repaint();
             }
             @Override
             public void mouseMoved(MouseEvent e) {}
         });
+        // Zoom in and out around the mouse pointer
+        addMouseWheelListener((MouseWheelEvent e) -> {
+            interact();
+            zoom(Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getX(), e.getY());
+        });
+        dragFrameTimer = new Timer(FRAME_MILLIS, e -> {
+            if (dragPending) {
+                updateCurrentShape();
+            } else {
+                dragFrameTimer.stop(); // the mouse has stopped moving
+            }
+        });
+        refineTimer = new Timer(REFINE_MILLIS, e -> inputIdle());
+        refineTimer.setRepeats(false);
+    }
+
+    /**
+     * Start or continue an interaction, during which the panel is drawn as a quick draft.
+     * The interaction ends REFINE_MILLIS after the last call.
+     */
+    private void interact() {
+        if (progressive) {
+            interacting = true;
+            refineTimer.restart();
+        }
+    }
+
+    /**
+     * End the interaction once the input has been idle, and refine whatever was drawn as a draft.
+     */
+    private void inputIdle() {
+        interacting = false;
+        Shape currentShape = dh.getCurrentShape();
+        if (currentShape != null) {
+            repaint(getDirtyBounds(currentShape)); // with anti aliasing again
+        }
+        refineShapeCache();
+    }
+
+    /**
+     * Update the shape that the user is currently drawing to the latest end point.
+     * The shape is created on the first update of a drag and then reused for the whole drag,
+     * and only the area covered by its previous and new outline is repainted.
+     */
+    private void updateCurrentShape() {
+        dragPending = false;
+        if (startPoint == null || endPoint == null) {
+            return;
+        }
+        Shape preview = dh.getCurrentShape();
+        if (preview == null) {
+            // Create a new shape depending on which button was selected.
+            ShapeType type = getSelectedShapeType();
+            if (type != null) {
+                dh.newShape(type.create(startPoint.x, startPoint.y, endPoint.x, endPoint.y));
+                preview = dh.getCurrentShape();
+                repaint(getDirtyBounds(preview));
+                metrics.inputChanged();
+            }
+            return;
+        }
+        int minX = preview.getX();
+        int minY = preview.getY();
+        int maxX = minX + preview.getWidth();
+        int maxY = minY + preview.getHeight();
+        preview.setEnd(endPoint.x, endPoint.y);
+        // Only repaint the area covered by the previous and the new outline of the shape
+        minX = Math.min(minX, preview.getX());
+        minY = Math.min(minY, preview.getY());
+        maxX = Math.max(maxX, preview.getX() + preview.getWidth());
+        maxY = Math.max(maxY, preview.getY() + preview.getHeight());
+        repaint(getDirtyBounds(minX, minY, maxX - minX, maxY - minY));
+        metrics.inputChanged();
+    }
+
+    /**
+     * Find which type of shape the selected toolbar button draws.
+     * If the user clicks the line button then we will create a new line.
+     * @return the type of shape, or null if the selected button does not draw shapes.
+     */
+    private ShapeType getSelectedShapeType() {
+        if (buttonSelected == null) {
+            return null;
+        }
+        switch (buttonSelected) {
+            case "lineBtn":
+                return ShapeType.LINE;
+            case "rectangleBtn":
+                return ShapeType.RECTANGLE;
+            case "ellipseBtn":
+                return ShapeType.ELLIPSE;
+            case "diagonalCrossBtn":
+                return ShapeType.DIAGONAL_CROSS;
+            default:
+                return null;
+        }
     }
 
     /**
@@ -113,129 +387,572 @@ public class DrawingPanel extends JPanel {
      */
     @Override
     public void paintComponent(Graphics g) {
+        long frameStart = System.nanoTime();
         super.paintComponent(g);
         Graphics2D g2d = (Graphics2D) g; // 2D graphics
 
         // Set anti aliasing for smoother graphics drawing
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
                 RenderingHints.VALUE_ANTIALIAS_ON);
-        // list of all user drawn shapes
-        Stack<Shape> drawnShapes = dh.getShapes();
-        // If the list of user drawn shapes is not empty, then paint them to the GUI
-        if (!drawnShapes.isEmpty()) {
-            // For each saved shape that the user has drawn
-            for (Shape shape : drawnShapes) {
-                // Paint the border colour of each shape
-                paintBorder(shape, g);
-                // Check instance of shape and draw that specific shape (line, rectangle, etc).
-                if (shape instanceof model.Line) {
-                    drawLine(shape, g);
-                } else if (shape instanceof model.Rectangle) {
-                    Rectangle rect = (Rectangle) shape;
-                    drawRect(rect, g);
-                    // paint the fill colour of the rectangle
-                    paintFill(shape, g);
-                    g2d.fillRect(rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight());
-                } else if (shape instanceof model.Ellipse) {
-                    Ellipse ellipse = (Ellipse) shape;
-                    drawEllipse(ellipse, g2d);
-                    // paint the fill colour of the ellipse
-                    paintFill(shape, g);
-                    g2d.fillOval(ellipse.getX(), ellipse.getY(), ellipse.getWidth(), ellipse.getHeight());
-                } else if (shape instanceof DiagonalCross) {
-                    DiagonalCross cross = (DiagonalCross) shape;
-                    drawDiagonalCross(cross, g);
-                }
-            }
+        // Only the area inside the clip needs to be painted
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
         }
+        // Draw all committed shapes with a single blit of the cached image
+        validateShapeCache();
+        g2d.drawImage(shapeCache, clip.x, clip.y, clip.x + clip.width, clip.y + clip.height,
+                clip.x, clip.y, clip.x + clip.width, clip.y + clip.height, null);
         // Get the shape that the user is currently drawing by dragging their mouse
         Shape currentShape = dh.getCurrentShape();
-        if (currentShape != null) {
-            // Paint the border colour of each shape
-            paintBorder(currentShape, g);
-            if (currentShape instanceof Line) {
-                drawLine(currentShape, g);
+        if (currentShape != null && clip.intersects(getDirtyBounds(currentShape))) {
+            Graphics2D shapeGraphics = (Graphics2D) g2d.create();
+            if (interacting) {
+                shapeGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
             }
-            else if (currentShape instanceof Rectangle) {
-                Rectangle rect = (Rectangle) currentShape;
-                drawRect(rect, g);
-                // paint the fill colour
-                paintFill(currentShape, g);
-                g2d.fillRect(rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight());
+            viewport.applyTo(shapeGraphics);
+            renderer.render(shapeGraphics, currentShape);
+            shapeGraphics.dispose();
+            shapesDrawn++;
+        }
+        paintSelection(g2d, clip);
+        // a shape in several redrawn regions, such as both strips of a diagonal pan, is counted once
+        int cacheShapes = cacheShapesDrawn.cardinality();
+        int shapesCulled = shapeCacheRedrawn ? Math.max(dh.getShapeCount() - cacheShapes, 0) : 0;
+        metrics.frameFinished(frameStart, shapesDrawn + cacheShapes, shapesCulled, dh.getShapeCount(),
+                dh.getUndoCount(), dh.getRedoCount());
+        shapesDrawn = 0;
+        cacheShapesDrawn.clear();
+        shapeCacheRedrawn = false;
+        if (hudVisible) {
+            paintHud(g2d);
+        }
+    }
+
+    /**
+     * Outline the selected shapes and the rubber band being dragged.
+     * @param g2d the graphics instance of the panel.
+     * @param clip the area of the panel being painted.
+     */
+    private void paintSelection(Graphics2D g2d, Rectangle clip) {
+        if (selectionBounds == null && selectBand == null) {
+            return;
+        }
+        Graphics2D selectionGraphics = (Graphics2D) g2d.create();
+        selectionGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        selectionGraphics.setColor(SELECTION_COLOUR);
+        selectionGraphics.setStroke(SELECTION_STROKE);
+        if (selectionBounds != null && selection.cardinality() <= MAX_SELECTION_OUTLINES) {
+            List<Shape> shapes = dh.getShapes();
+            for (int i = selection.nextSetBit(0); i >= 0; i = selection.nextSetBit(i + 1)) {
+                Shape shape = shapes.get(i);
+                drawSelectionBox(selectionGraphics, clip,
+                        viewport.toScreen(shape.getX(), shape.getY(), shape.getWidth(), shape.getHeight()));
             }
-            else if (currentShape instanceof Ellipse) {
-                Ellipse ellipse = (Ellipse) currentShape;
-                drawEllipse(ellipse, g2d);
-                // paint the fill colour
-                paintFill(currentShape, g);
-                g2d.fillOval(ellipse.getX(), ellipse.getY(), ellipse.getWidth(), ellipse.getHeight());
+        } else if (selectionBounds != null) {
+            drawSelectionBox(selectionGraphics, clip, viewport.toScreen(selectionBounds.x, selectionBounds.y,
+                    selectionBounds.width, selectionBounds.height));
+        }
+        if (selectBand != null) {
+            selectionGraphics.drawRect(selectBand.x, selectBand.y, selectBand.width, selectBand.height);
+        }
+        selectionGraphics.dispose();
+    }
+
+    /**
+     * Draw a dashed box around the pixels of a selected shape, if it is inside the painted area.
+     * @param g2d graphics set up by paintSelection().
+     * @param clip the area of the panel being painted.
+     * @param box the pixels covered by the shape's bounding box.
+     */
+    private void drawSelectionBox(Graphics2D g2d, Rectangle clip, Rectangle box) {
+        box.grow(DIRTY_MARGIN, DIRTY_MARGIN);
+        if (clip.intersects(box.x, box.y, box.width + 1, box.height + 1)) {
+            g2d.drawRect(box.x, box.y, box.width, box.height);
+        }
+    }
+
+    /**
+     * Draw the metrics overlay in the top left corner of the panel.
+     * @param g2d the graphics instance of the panel.
+     */
+    private void paintHud(Graphics2D g2d) {
+        String[] lines = {
+                "frame " + metrics.getLastFrameMicros() + "us  p50 " + metrics.getFrameMicrosP50()
+                        + "us  p95 " + metrics.getFrameMicrosP95() + "us  max " + metrics.getMaxFrameMicros() + "us",
+                "shapes " + metrics.getShapeCount() + "  drawn " + metrics.getLastFrameShapesDrawn()
+                        + "  culled " + metrics.getLastFrameShapesCulled(),
+                "drag " + Math.round(metrics.getDragEventsPerSecond()) + "/s  coalesced "
+                        + metrics.getCoalescedDragEventCount() + " of " + metrics.getDragEventCount(),
+                "event to paint mean " + metrics.getEventToPaintMeanMicros() + "us  p95 "
+                        + metrics.getEventToPaintP95Micros() + "us",
+                "undo " + metrics.getUndoCount() + "  redo " + metrics.getRedoCount()
+                        + "  zoom " + Math.round(viewport.getScale() * 100) + "%" + (shapeCacheDraft ? "  draft" : "")
+        };
+        FontMetrics fontMetrics = g2d.getFontMetrics();
+        int width = 0;
+        for (String line : lines) {
+            width = Math.max(width, fontMetrics.stringWidth(line));
+        }
+        int lineHeight = fontMetrics.getHeight();
+        Rectangle bounds = new Rectangle(HUD_INSET, HUD_INSET, width + 2 * HUD_INSET, lines.length * lineHeight + 2 * HUD_INSET);
+        // The overlay grows when the numbers get longer, so the next update must cover the widest overlay
+        hudBounds = hudBounds == null ? bounds : hudBounds.union(bounds);
+        g2d.setColor(HUD_BACKGROUND);
+        g2d.fill(bounds);
+        g2d.setColor(Color.WHITE);
+        int y = bounds.y + HUD_INSET + fontMetrics.getAscent();
+        for (String line : lines) {
+            g2d.drawString(line, bounds.x + HUD_INSET, y);
+            y += lineHeight;
+        }
+    }
+
+    /**
+     * Show or hide the overlay with the render and input metrics.
+     * @param visible true to show the overlay.
+     */
+    public void setHudVisible(boolean visible) {
+        hudVisible = visible;
+        if (visible) {
+            hudTimer.start();
+        } else {
+            hudTimer.stop();
+            if (hudBounds != null) {
+                repaint(hudBounds); // remove the overlay
             }
-            else if (currentShape instanceof DiagonalCross) {
-                DiagonalCross cross = (DiagonalCross) currentShape;
-                drawDiagonalCross(cross, g);
+        }
+        hudBounds = null;
+        repaint();
+    }
+
+    /**
+     * Check whether the metrics overlay is shown.
+     * @return true if the overlay is shown.
+     */
+    public boolean isHudVisible() {
+        return hudVisible;
+    }
+
+    /**
+     * Get the render and input metrics of this panel.
+     * @return the metrics.
+     */
+    public RenderMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Find the area of the panel which is affected by drawing a shape, including
+     * the stroke width and anti aliasing around its bounding box.
+     * @param shape the shape which is drawn, may be null.
+     * @return the affected area, or null if there is no shape.
+     */
+    private Rectangle getDirtyBounds(Shape shape) {
+        if (shape == null) {
+            return null;
+        }
+        return getDirtyBounds(shape.getX(), shape.getY(), shape.getWidth(), shape.getHeight());
+    }
+
+    /**
+     * Find the area of the panel which is affected by drawing inside a rectangle of the drawing.
+     * The stroke is one unit of the drawing wide, so the margin grows when zoomed in.
+     * @param x left edge of the rectangle in the drawing.
+     * @param y top edge of the rectangle in the drawing.
+     * @param width width of the rectangle in the drawing.
+     * @param height height of the rectangle in the drawing.
+     * @return the affected area of the panel.
+     */
+    private Rectangle getDirtyBounds(int x, int y, int width, int height) {
+        Rectangle bounds = viewport.toScreen(x, y, width, height);
+        int margin = (int) Math.ceil(DIRTY_MARGIN * Math.max(1, viewport.getScale()));
+        bounds.setBounds(bounds.x - margin, bounds.y - margin,
+                bounds.width + 2 * margin + 1, bounds.height + 2 * margin + 1);
+        return bounds;
+    }
+
+    /**
+     * Find the topmost shape under a pixel of the panel.
+     * @param x x coordinate on the panel.
+     * @param y y coordinate on the panel.
+     * @return position of the shape in dh.getShapes(), or PickBuffer.NONE if there is no shape under the pixel.
+     */
+    private int pick(int x, int y) {
+        pickBuffer.setSize(Math.max(getWidth(), 1), Math.max(getHeight(), 1));
+        return pickBuffer.pick(x, y, dh, viewport);
+    }
+
+    /**
+     * Find the topmost shape under a pixel of the panel, using the exact geometry of the shapes:
+     * the distance to lines and crosses, the equation of ellipses and the interior of rectangles,
+     * with a few pixels of tolerance around the borders.
+     * @param x x coordinate on the panel.
+     * @param y y coordinate on the panel.
+     * @return the shape, or null if there is no shape under the pixel.
+     */
+    public Shape getShapeAt(int x, int y) {
+        int index = pick(x, y);
+        return index == PickBuffer.NONE ? null : dh.getShapes().get(index);
+    }
+
+    /**
+     * Select the topmost shape under a pixel of the panel, as found by getShapeAt().
+     * @param x x coordinate on the panel.
+     * @param y y coordinate on the panel.
+     * @param add true to add the shape to the selection, or remove it if it is already selected,
+     *            false to replace the selection with it.
+     */
+    public void selectAt(int x, int y, boolean add) {
+        int index = pick(x, y);
+        if (!add) {
+            selection.clear();
+        }
+        if (index != PickBuffer.NONE) {
+            selection.flip(index);
+        }
+        selectionChanged();
+    }
+
+    /**
+     * Select the shapes whose bounding box is entirely inside a rectangle of the panel.
+     * @param region the rectangle, in panel coordinates.
+     * @param add true to add the shapes to the selection, false to replace the selection with them.
+     */
+    public void selectIn(Rectangle region, boolean add) {
+        if (!add) {
+            selection.clear();
+        }
+        Rectangle area = viewport.toDrawing(region);
+        List<Shape> shapes = dh.getShapes();
+        for (int index : dh.getShapeIndexesIn(area.x, area.y, area.width, area.height)) {
+            Shape shape = shapes.get(index);
+            if (shape.getX() >= area.x && shape.getY() >= area.y
+                    && shape.getX() + shape.getWidth() <= area.x + area.width
+                    && shape.getY() + shape.getHeight() <= area.y + area.height) {
+                selection.set(index);
+            }
+        }
+        selectionChanged();
+    }
+
+    /**
+     * Get the selected shapes.
+     * @return the selected shapes, in the order they were added.
+     */
+    public List<Shape> getSelectedShapes() {
+        List<Shape> shapes = dh.getShapes();
+        List<Shape> selected = new ArrayList<>(selection.cardinality());
+        for (int i = selection.nextSetBit(0); i >= 0; i = selection.nextSetBit(i + 1)) {
+            selected.add(shapes.get(i));
+        }
+        return selected;
+    }
+
+    /**
+     * Deselect every shape.
+     */
+    public void clearSelection() {
+        selection.clear();
+        selectionChanged();
+    }
+
+    /**
+     * Update the outline of the selection.
+     */
+    private void selectionChanged() {
+        selectionBounds = null;
+        List<Shape> shapes = dh.getShapes();
+        for (int i = selection.nextSetBit(0); i >= 0; i = selection.nextSetBit(i + 1)) {
+            Shape shape = shapes.get(i);
+            Rectangle bounds = new Rectangle(shape.getX(), shape.getY(), shape.getWidth(), shape.getHeight());
+            if (selectionBounds == null) {
+                selectionBounds = bounds;
+            } else {
+                selectionBounds.add(bounds);
             }
         }
+        repaint();
+    }
 
+    /**
+     * Stretch the rubber band to the mouse pointer, once it has moved far enough from where it was pressed.
+     * @param x x coordinate of the pointer on the panel.
+     * @param y y coordinate of the pointer on the panel.
+     */
+    private void dragSelectBand(int x, int y) {
+        if (selectBand == null && Math.abs(x - selectPoint.x) < CLICK_DISTANCE
+                && Math.abs(y - selectPoint.y) < CLICK_DISTANCE) {
+            return; // still a click
+        }
+        Rectangle dirty = selectBand;
+        selectBand = new Rectangle(Math.min(x, selectPoint.x), Math.min(y, selectPoint.y),
+                Math.abs(x - selectPoint.x), Math.abs(y - selectPoint.y));
+        dirty = dirty == null ? selectBand : dirty.union(selectBand);
+        repaint(dirty.x, dirty.y, dirty.width + 1, dirty.height + 1);
     }
 
     /**
-     * Draw the line to the GUI.
-     * @param shape the line which is being drawn.
-     * @param g the graphics instance which is used to paint to the GUI.
+     * Make sure the cached image matches the panel size and the stored shapes.
+     * The cached image is only redrawn after it has been invalidated or the panel has been resized,
+     * and then only inside the invalidated region.
      */
-    private void drawLine(Shape shape, Graphics g) {
-        g.drawLine(shape.getStartX(), shape.getStartY(), shape.getEndX(), shape.getEndY());
+    private void validateShapeCache() {
+        int width = Math.max(getWidth(), 1);
+        int height = Math.max(getHeight(), 1);
+        if (shapeCache == null || shapeCache.getWidth() != width || shapeCache.getHeight() != height) {
+            shapeCache = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            shapeCacheValid = false;
+        }
+        Rectangle region;
+        if (!shapeCacheValid) {
+            region = new Rectangle(0, 0, width, height);
+        } else if (shapeCacheDirty != null) {
+            region = shapeCacheDirty.intersection(new Rectangle(0, 0, width, height));
+        } else {
+            return; // cached image is up to date
+        }
+        if (!region.isEmpty()) {
+            drawShapeCache(region);
+        }
+        shapeCacheValid = true;
+        shapeCacheDirty = null;
     }
 
     /**
-     * Draw the rectangle to the GUI.
-     * @param rect the rectangle which is being drawn.
-     * @param g the graphics instance which is used to paint to the GUI.
+     * Redraw part of the cached image from the stored shapes.
+     * @param region the area of the panel to redraw.
      */
-    private void drawRect(Rectangle rect, Graphics g) {
-        g.drawRect(rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight());
+    private void drawShapeCache(Rectangle region) {
+        Graphics2D g2d = shapeCache.createGraphics();
+        // Clear the previous contents to fully transparent pixels
+        g2d.setComposite(AlphaComposite.Clear);
+        g2d.fill(region);
+        g2d.dispose();
+        // Only the saved shapes which overlap the redrawn region are looked up and drawn
+        Rectangle area = viewport.toDrawing(region);
+        int[] positions = dh.getShapeIndexesIn(area.x - DIRTY_MARGIN, area.y - DIRTY_MARGIN,
+                area.width + 2 * DIRTY_MARGIN, area.height + 2 * DIRTY_MARGIN);
+        List<Shape> visible = dh.getShapes();
+        List<Shape> shapes = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            shapes.add(visible.get(position));
+            cacheShapesDrawn.set(position);
+        }
+        shapeCacheRedrawn = true;
+        renderShapes(shapeCache, region, shapes, viewport, interacting, dotRenderer, renderer);
+        shapeCacheVersion++;
+        if (interacting) {
+            shapeCacheDraft = true;
+        } else if (region.contains(0, 0, shapeCache.getWidth(), shapeCache.getHeight())) {
+            shapeCacheDraft = false; // every draft pixel was drawn again
+        }
     }
 
     /**
-     * Draw the ellipse to the GUI.
-     * @param ellipse the ellipse which is being drawn.
-     * @param g2d the 2d graphics instance which is used to paint to the GUI.
+     * Draw shapes into a cleared part of an image, with the smallest shapes as dots and many shapes in
+     * parallel tiles. Only the arguments and the TileRenderer are used, so it can run on a background thread.
+     * @param target the image to draw into.
+     * @param region the part of the image to draw, which must be fully transparent.
+     * @param shapes the shapes which overlap the region, lowest z-order first.
+     * @param view maps the coordinates of the shapes to pixels of the image.
+     * @param draft true to draw a quick draft without anti aliasing and with more of the small shapes as dots.
+     * @param dots draws the small shapes as dots.
+     * @param batchRenderer draws the other shapes when there are too few for tiles.
      */
-    private void drawEllipse(Ellipse ellipse, Graphics2D g2d) {
-        Ellipse2D e2d = new Ellipse2D.Double(ellipse.getX(), ellipse.getY(), ellipse.getWidth(), ellipse.getHeight());
-        g2d.draw(e2d);
+    private void renderShapes(BufferedImage target, Rectangle region, List<Shape> shapes, Viewport view,
+                              boolean draft, DotRenderer dots, ShapeBatchRenderer batchRenderer) {
+        // When zoomed out, the smallest shapes become dots underneath the other shapes
+        shapes = dots.render(target, region, shapes, view, draft ? DotRenderer.DRAFT_DOT_SIZE : DotRenderer.DOT_SIZE);
+        if (shapes.size() >= TILED_SHAPES) {
+            tileRenderer.render(target, region, shapes, view, draft);
+        } else {
+            Graphics2D g2d = target.createGraphics();
+            g2d.clip(region);
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    draft ? RenderingHints.VALUE_ANTIALIAS_OFF : RenderingHints.VALUE_ANTIALIAS_ON);
+            view.applyTo(g2d);
+            batchRenderer.render(g2d, shapes);
+            g2d.dispose();
+        }
+    }
+
+    /**
+     * Draw the whole cached image again at full quality on a background thread if part of it is a draft,
+     * and swap it in when it is done. If the shapes or the viewport changed in the meantime the result
+     * is thrown away and the refinement starts again.
+     */
+    private void refineShapeCache() {
+        if (!shapeCacheDraft || interacting || refineWorker != null) {
+            return;
+        }
+        int version = shapeCacheVersion;
+        Viewport view = viewport.copy();
+        Rectangle region = new Rectangle(0, 0, shapeCache.getWidth(), shapeCache.getHeight());
+        // The background thread finds the shapes in the snapshot, so the panel does not wait for it
+        DrawingSnapshot snapshot = dh.snapshot();
+        refineWorker = new SwingWorker<BufferedImage, Void>() {
+            @Override
+            protected BufferedImage doInBackground() {
+                Rectangle area = view.toDrawing(region);
+                List<Shape> shapes = snapshot.getShapesIn(area.x - DIRTY_MARGIN, area.y - DIRTY_MARGIN,
+                        area.width + 2 * DIRTY_MARGIN, area.height + 2 * DIRTY_MARGIN);
+                BufferedImage image = new BufferedImage(region.width, region.height, BufferedImage.TYPE_INT_ARGB);
+                ShapeBatchRenderer batchRenderer = new ShapeBatchRenderer();
+                batchRenderer.setThinOutlines(view.getScale() < 1);
+                renderShapes(image, region, shapes, view, false, new DotRenderer(), batchRenderer);
+                return image;
+            }
+
+            @Override
+            protected void done() {
+                refineWorker = null;
+                try {
+                    BufferedImage refined = get();
+                    if (version == shapeCacheVersion) {
+                        shapeCache = refined;
+                        shapeCacheDraft = false;
+                        repaint();
+                        return;
+                    }
+                } catch (ExecutionException e) {
+                    // keep the draft, which shows the same shapes, and only tell the user the first time
+                    if (!refineFailed) {
+                        refineFailed = true;
+                        // show dialog box
+                        JOptionPane.showMessageDialog(DrawingPanel.this, "Could not refine the drawing: "
+                                + e.getCause().getMessage());
+                    }
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                refineShapeCache();
+            }
+        };
+        refineWorker.execute();
     }
 
     /**
-     * Draw the diagonal cross to the GUI.
-     * @param cross the diagonal cross which is being drawn.
-     * @param g the graphics instance which is used to paint to the GUI.
+     * Choose whether the panel is drawn as a quick draft while the user zooms, pans or drags,
+     * and refined to full quality once the input is idle.
+     * @param enabled true for drafts, which is the default, false to always draw at full quality.
      */
-    private void drawDiagonalCross(DiagonalCross cross, Graphics g) {
-        Line l1 = cross.getFirstLine();
-        g.drawLine(l1.getStartX(), l1.getStartY(), l1.getEndX(), l1.getEndY());
-        Line l2 = cross.getSecondLine();
-        g.drawLine(l2.getStartX(), l2.getStartY(), l2.getEndX(), l2.getEndY());
+    public void setProgressiveRendering(boolean enabled) {
+        progressive = enabled;
+        if (!enabled && interacting) {
+            refineTimer.stop();
+            inputIdle();
+        }
     }
 
     /**
-     * Paint the shape's border to the GUI in the set colour.
-     * @param shape the shape which is being shown on the panel.
-     * @param g the graphics instance which is used to paint to the GUI.
+     * Check whether the panel is drawn as a quick draft while the user zooms, pans or drags.
+     * @return true if drafts are drawn.
      */
-    private void paintBorder(Shape shape, Graphics g) {
-        SimpleColour colour = shape.getBorderColour(); // get border colour of shape
-        g.setColor(new Color(colour.getR(), colour.getG(), colour.getB())); // set the paint colour to be the same as the shapes colour
+    public boolean isProgressiveRendering() {
+        return progressive;
     }
 
     /**
-     * Paint the shape's fill to the GUI in the set colour.
-     * @param shape the shape which is being shown on the panel.
-     * @param g the graphics instance which is used to paint to the GUI.
+     * Move the cached image with the drawing after panning, so that only the uncovered edges are redrawn.
+     * @param dx pixels the drawing moved right.
+     * @param dy pixels the drawing moved down.
      */
-    private void paintFill(Shape shape, Graphics g) {
-        SimpleColour fill = shape.getFillColour(); // get fill colour of shape
-        g.setColor(new Color(fill.getR(), fill.getG(), fill.getB())); // set the paint colour for the GUI to be the same
+    private void scrollShapeCache(int dx, int dy) {
+        int width = shapeCache.getWidth();
+        int height = shapeCache.getHeight();
+        if (!shapeCacheValid || shapeCacheDirty != null || Math.abs(dx) >= width || Math.abs(dy) >= height) {
+            invalidateShapeCache();
+            return;
+        }
+        pickBuffer.invalidate(); // redrawn where it is next picked
+        shapeCacheVersion++;
+        Graphics2D g2d = shapeCache.createGraphics();
+        g2d.setComposite(AlphaComposite.Src); // replace the pixels, rather than blending over them
+        g2d.copyArea(0, 0, width, height, dx, dy);
+        g2d.dispose();
+        if (dx != 0) {
+            drawShapeCache(new Rectangle(dx > 0 ? 0 : width + dx, 0, Math.abs(dx), height));
+        }
+        if (dy != 0) {
+            drawShapeCache(new Rectangle(0, dy > 0 ? 0 : height + dy, width, Math.abs(dy)));
+        }
+    }
+
+    /**
+     * Draw a newly committed shape on top of the cached image.
+     * If the cached image is already out of date it will be redrawn in full on the next paint instead.
+     * @param shape the shape which was added to the stored shapes.
+     */
+    private void appendToShapeCache(Shape shape) {
+        if (viewport.getScale() < 1) {
+            // the shape may be drawn as a dot underneath the other shapes, so redraw its area
+            invalidateShapeCache(getDirtyBounds(shape));
+            return;
+        }
+        shapeCacheVersion++;
+        if (shapeCache != null && shapeCacheValid) {
+            Graphics2D g2d = shapeCache.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            viewport.applyTo(g2d);
+            renderer.render(g2d, shape);
+            g2d.dispose();
+            shapesDrawn++;
+        }
+        // the shape is on top of all other shapes, at the last position
+        pickBuffer.append(shape, dh.getShapeCount() - 1, viewport);
+    }
+
+    /**
+     * Draw newly committed shapes on top of the cached image, in parallel tiles if there are many.
+     * Shapes smaller than a pixel are drawn in full rather than as dots until their area is next redrawn.
+     * If the cached image is already out of date it will be redrawn in full on the next paint instead.
+     * @param shapes the shapes which were added to the stored shapes, lowest z-order first.
+     * @return the area of the panel covered by the shapes.
+     */
+    private Rectangle appendToShapeCache(List<Shape> shapes) {
+        Rectangle bounds = getDirtyBounds(shapes.get(0));
+        for (Shape shape : shapes) {
+            bounds.add(getDirtyBounds(shape));
+        }
+        shapeCacheVersion++;
+        if (shapeCache != null && shapeCacheValid) {
+            if (shapes.size() >= TILED_SHAPES) {
+                tileRenderer.render(shapeCache, bounds, shapes, viewport);
+            } else {
+                Graphics2D g2d = shapeCache.createGraphics();
+                g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                viewport.applyTo(g2d);
+                renderer.render(g2d, shapes);
+                g2d.dispose();
+            }
+            shapesDrawn += shapes.size();
+        }
+        pickBuffer.invalidate(bounds);
+        return bounds;
+    }
+
+    /**
+     * Mark the cached image of the committed shapes as out of date.
+     * Must be called whenever shapes are removed from or re-added to the model.
+     */
+    private void invalidateShapeCache() {
+        shapeCacheValid = false;
+        shapeCacheDirty = null;
+        shapeCacheVersion++;
+        pickBuffer.invalidate();
+    }
+
+    /**
+     * Mark part of the cached image of the committed shapes as out of date.
+     * @param region the area of the panel which must be redrawn.
+     */
+    private void invalidateShapeCache(Rectangle region) {
+        shapeCacheDirty = shapeCacheDirty == null ? region : shapeCacheDirty.union(region);
+        shapeCacheVersion++;
+        pickBuffer.invalidate(region);
     }
 
     /**
@@ -245,7 +962,12 @@ public class DrawingPanel extends JPanel {
      */
     public void setBorderColour(Color c) {
         SimpleColour sc = new SimpleColour(c.getRed(), c.getGreen(), c.getBlue());
-        dh.setChosenBorderColour(sc);
+        try {
+            dh.setChosenBorderColour(sc);
+        } catch (UncheckedIOException e) {
+            // show dialog box
+            JOptionPane.showMessageDialog(this, "Could not choose colour: " + e.getCause().getMessage());
+        }
     }
 
     /**
@@ -255,7 +977,12 @@ public class DrawingPanel extends JPanel {
      */
     public void setFillColour(Color c) {
         SimpleColour sc = new SimpleColour(c.getRed(), c.getGreen(), c.getBlue());
-        dh.setChosenFillColour(sc);
+        try {
+            dh.setChosenFillColour(sc);
+        } catch (UncheckedIOException e) {
+            // show dialog box
+            JOptionPane.showMessageDialog(this, "Could not choose colour: " + e.getCause().getMessage());
+        }
     }
 
     /**
@@ -268,10 +995,14 @@ public class DrawingPanel extends JPanel {
 
     /**
      * Clear the drawing panel canvas.
-     * Deletes all stores shapes permanently.
+     * Deletes all visible shapes, the clear can be undone.
      */
     public void clearCanvas() {
-        dh.clearShapes(); // delete all stored shapes
+        if (sharing != null) {
+            sharing.clearShapes(); // the shapes are deleted when the server sends the change back
+        } else {
+            dh.clearShapes(); // delete all visible shapes
+        }
         this.removeAll();
         revalidate();
         repaint();
@@ -281,34 +1012,434 @@ public class DrawingPanel extends JPanel {
     }
 
     /**
-     * Undo the creation of new shapes.
-     * Can keep undoing until there are no shapes left on the panel.
+     * Zoom in or out, keeping the point of the drawing under a pixel in place.
+     * @param factor amount to zoom by, above 1 to zoom in and below 1 to zoom out.
+     * @param x x coordinate on the panel which stays in place.
+     * @param y y coordinate on the panel which stays in place.
+     */
+    public void zoom(double factor, int x, int y) {
+        if (viewport.zoom(factor, x, y)) {
+            viewportChanged();
+        }
+    }
+
+    /**
+     * Zoom and pan so that every visible shape is shown.
+     */
+    public void zoomToFit() {
+        List<Shape> shapes = dh.getShapes();
+        if (shapes.isEmpty()) {
+            viewport.reset();
+        } else {
+            Rectangle bounds = null;
+            for (Shape shape : shapes) {
+                Rectangle shapeBounds = new Rectangle(shape.getX(), shape.getY(), shape.getWidth(), shape.getHeight());
+                bounds = bounds == null ? shapeBounds : bounds.union(shapeBounds);
+            }
+            // leave room for the stroke around the outermost shapes
+            bounds.grow(DIRTY_MARGIN, DIRTY_MARGIN);
+            viewport.fit(bounds, Math.max(getWidth(), 1), Math.max(getHeight(), 1));
+        }
+        viewportChanged();
+    }
+
+    /**
+     * Show the drawing at its actual size, without zooming or panning.
+     */
+    public void resetZoom() {
+        viewport.reset();
+        viewportChanged();
+    }
+
+    /**
+     * Move the drawing across the panel.
+     * The cached image is moved along, so only the uncovered edges of the panel are drawn again.
+     * @param dx pixels to move the drawing right.
+     * @param dy pixels to move the drawing down.
+     */
+    public void pan(int dx, int dy) {
+        if (dx == 0 && dy == 0) {
+            return;
+        }
+        viewport.pan(dx, dy);
+        if (shapeCache != null) {
+            scrollShapeCache(dx, dy);
+        }
+        metrics.inputChanged();
+        repaint();
+    }
+
+    /**
+     * Get the current zoom.
+     * @return pixels per unit of the drawing, 1 when shown at its actual size.
+     */
+    public double getZoom() {
+        return viewport.getScale();
+    }
+
+    /**
+     * Redraw everything after zooming.
+     */
+    private void viewportChanged() {
+        // borders thinner than a pixel are drawn without anti aliasing
+        renderer.setThinOutlines(viewport.getScale() < 1);
+        invalidateShapeCache();
+        metrics.inputChanged();
+        repaint();
+    }
+
+    /**
+     * Save every change to the drawing in an autosave journal, so it can be recovered after a crash.
+     * The user is told if autosaving stops because the files cannot be written.
+     * @param journal the autosave journal to write to.
+     */
+    public void setAutosave(AutosaveJournal journal) {
+        autosave = journal;
+        autosave.setFailureListener(e -> SwingUtilities.invokeLater(() ->
+                // show dialog box
+                JOptionPane.showMessageDialog(this, "Autosave stopped: " + e.getMessage()
+                        + "\nIt tries again after more changes, or when another drawing is opened.")));
+        autosave.attach(dh);
+    }
+
+    /**
+     * Save the visible shapes to a drawing file.
+     * The shapes are written on a background thread under another name, and then moved into place. If the
+     * drawing was opened from the file being replaced, its shapes are read into memory and the file is closed
+     * first, since an open file cannot be replaced on Windows. A save which takes longer than SAVE_DIALOG_MILLIS
+     * shows a dialog until it is done, which also keeps the window from being closed before then.
+     * @param file the file chosen by the user.
+     */
+    public void saveDrawing(File file) {
+        Path path = file.toPath();
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        DrawingSnapshot snapshot = dh.snapshot();
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                snapshot.releaseFile(path);
+                DrawingFile.write(snapshot.getShapes(), temporary);
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                if (saveDialog != null) {
+                    saveDialog.dispose();
+                    saveDialog = null;
+                }
+                try {
+                    get();
+                } catch (ExecutionException e) {
+                    try {
+                        Files.deleteIfExists(temporary);
+                    } catch (IOException deleteError) {
+                        // the save error is the one shown to the user
+                    }
+                    // show dialog box
+                    JOptionPane.showMessageDialog(DrawingPanel.this, "Could not save drawing: "
+                            + e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        worker.execute();
+        try {
+            worker.get(SAVE_DIALOG_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // a modal dialog, which done() closes
+            saveDialog = new JOptionPane("Saving " + file.getName() + "...", JOptionPane.INFORMATION_MESSAGE,
+                    JOptionPane.DEFAULT_OPTION, null, new Object[0]).createDialog(this, "Save");
+            saveDialog.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+            saveDialog.setVisible(true);
+        } catch (ExecutionException e) {
+            // done() shows the error
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Export the visible shapes as an SVG image.
+     * @param file the file chosen by the user.
+     */
+    public void exportSvg(File file) {
+        try {
+            SvgFile.write(dh.getShapes(), file.toPath());
+        } catch (IOException e) {
+            // show dialog box
+            JOptionPane.showMessageDialog(this, "Could not export drawing: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Add the shapes of an SVG image on top of the drawing.
+     * The file is read on a background thread, and each batch of shapes is stored and drawn by the
+     * event dispatch thread before the next batch is read, so large files are imported with little memory
+     * while the panel stays responsive. A progress dialog is shown for long imports, which can be cancelled
+     * to keep the shapes imported so far. The whole import is undone in one step.
+     * If another drawing is opened or the drawing is shared before the import finishes, the rest of it is dropped.
+     * @param file the file chosen by the user.
+     */
+    public void importSvg(File file) {
+        if (sharing != null) {
+            JOptionPane.showMessageDialog(this, "Cannot import into a shared drawing");
+            return;
+        }
+        DrawingHandler target = dh; // the drawing the shapes are imported into
+        ProgressMonitor progress = new ProgressMonitor(this, "Importing " + file.getName(), null, 0, PROGRESS_STEPS);
+        SwingWorker<Integer, Void> worker = new SwingWorker<Integer, Void>() {
+            private boolean continuing; // true once the first batch has been stored
+            private boolean cancelled; // set by the event dispatch thread when the user cancels
+
+            @Override
+            protected Integer doInBackground() throws Exception {
+                ImportListener listener = (batch, bytesRead, totalBytes) -> {
+                    try {
+                        // Wait for each batch to be stored, so batches never pile up in memory
+                        SwingUtilities.invokeAndWait(() -> {
+                            if (dh != target || sharing != null) {
+                                cancelled = true; // the batches must not go into a different or shared drawing
+                                return;
+                            }
+                            addImportedShapes(batch, continuing);
+                            continuing |= !batch.isEmpty();
+                            progress.setProgress((int) (bytesRead * PROGRESS_STEPS / Math.max(totalBytes, 1)));
+                            progress.setNote(dh.getShapeCount() + " shapes");
+                            cancelled = progress.isCanceled();
+                        });
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    } catch (InvocationTargetException e) {
+                        throw new IllegalStateException(e.getCause());
+                    }
+                    return !cancelled;
+                };
+                return SvgFile.read(file.toPath(), listener);
+            }
+
+            @Override
+            protected void done() {
+                progress.close();
+                try {
+                    get();
+                } catch (ExecutionException e) {
+                    // show dialog box
+                    JOptionPane.showMessageDialog(DrawingPanel.this, "Could not import drawing: "
+                            + e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    /**
+     * Add a batch of the shapes offered to the drawing by other threads and draw them, then come back for the
+     * next batch after the events which arrived in the meantime, so the panel stays responsive however fast
+     * shapes are offered. Shapes offered without a pause are undone in one step.
+     */
+    private void addOfferedShapes() {
+        offerPending.set(false); // shapes offered from now on need another turn
+        List<Shape> batch = dh.takeOfferedShapes(OFFER_BATCH);
+        if (sharing != null) {
+            for (Shape shape : batch) {
+                sharing.addShape(shape); // drawn when the server sends them back
+            }
+        } else if (!batch.isEmpty()) {
+            addImportedShapes(batch, offerContinuing);
+            offerContinuing = true;
+        }
+        if (dh.hasOfferedShapes()) {
+            scheduleOfferedShapes();
+        } else {
+            offerContinuing = false;
+        }
+    }
+
+    /**
+     * Queue addOfferedShapes() on the event dispatch thread, unless it is queued already.
+     * May be called by any thread.
+     */
+    private void scheduleOfferedShapes() {
+        if (offerPending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::addOfferedShapes);
+        }
+    }
+
+    /**
+     * Store a batch of imported or offered shapes and draw them.
+     * @param batch the shapes, lowest z-order first.
+     * @param continuing true if the shapes continue the import of the last batch.
+     */
+    private void addImportedShapes(List<Shape> batch, boolean continuing) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        dh.addShapes(batch, continuing); // drawn onto the cached image by drawingChanged()
+    }
+
+    /**
+     * Replace the current drawing with the shapes of a drawing file.
+     * The chosen border and fill colours are kept, the undo history starts again.
+     * The shapes are read from the file as they come into view, by the bounds of each page of the file,
+     * and the other pages are decoded on a background thread while the page cache has room.
+     * Files without page bounds are loaded in full and indexed on a background thread.
+     * @param file the file chosen by the user.
+     */
+    public void openDrawing(File file) {
+        if (sharing != null) {
+            JOptionPane.showMessageDialog(this, "Cannot open a drawing while the drawing is shared");
+            return;
+        }
+        DrawingHandler opened;
+        try {
+            opened = new DrawingHandler(DrawingFile.open(file.toPath()));
+        } catch (IOException e) {
+            // show dialog box
+            JOptionPane.showMessageDialog(this, "Could not open drawing: " + e.getMessage());
+            return;
+        }
+        opened.buildIndex(task -> {
+            Thread thread = new Thread(task, "drawing-indexer");
+            thread.setDaemon(true);
+            thread.start();
+        });
+        opened.setChosenBorderColour(dh.getChosenBorderColour());
+        opened.setChosenFillColour(dh.getChosenFillColour());
+        dh.setOfferListener(null); // shapes offered to the replaced drawing are dropped
+        dh.removeDrawingListener(drawingListener);
+        dh = opened;
+        dh.addDrawingListener(drawingListener);
+        dh.setOfferListener(offerListener);
+        selection.clear();
+        selectionBounds = null;
+        viewport.reset();
+        renderer.setThinOutlines(false);
+        if (autosave != null) {
+            autosave.attach(dh); // the autosave now follows the opened drawing
+        }
+        invalidateShapeCache();
+        repaint();
+    }
+
+    /**
+     * Share the drawing with the other windows connected to a DrawingServer.
+     * The drawing is replaced by the shared drawing once the server has sent it.
+     * @param address the address of the server.
+     * @throws IOException if the server cannot be reached.
+     */
+    public void shareDrawing(InetSocketAddress address) throws IOException {
+        stopSharing();
+        // the changes sent by the server are drawn by drawingChanged(), once for each read
+        sharing = DrawingClient.connect(address, dh, SwingUtilities::invokeLater);
+        DrawingClient client = sharing;
+        sharing.setDisconnectListener(() -> {
+            if (sharing == client) {
+                stopSharing();
+                JOptionPane.showMessageDialog(this, "Lost the connection to the shared drawing");
+            }
+        });
+    }
+
+    /**
+     * Stop sharing the drawing. The drawing keeps the shapes shared so far and can be changed on its own again.
+     */
+    public void stopSharing() {
+        if (sharing == null) {
+            return;
+        }
+        DrawingClient client = sharing;
+        sharing = null;
+        client.close();
+    }
+
+    /**
+     * Check whether the drawing is shared through a DrawingServer.
+     * @return true while connected to the server.
+     */
+    public boolean isSharing() {
+        return sharing != null && sharing.isConnected();
+    }
+
+    /**
+     * Draw the changes to the visible shapes, however they were made: shapes added on top are drawn onto
+     * the cached image, and any other change redraws the area it covers, or the whole image after changes
+     * too large to measure. A batch of changes, such as a whole import batch, is drawn once.
+     * @param change summary of the changes.
+     */
+    private void drawingChanged(DrawingChange change) {
+        if (change.isAppendOnly()) {
+            List<Shape> shapes = dh.getShapes();
+            int count = shapes.size();
+            if (change.getAddedCount() == 1) {
+                Shape shape = shapes.get(count - 1);
+                appendToShapeCache(shape);
+                repaint(getDirtyBounds(shape));
+            } else {
+                repaint(appendToShapeCache(new ArrayList<>(shapes.subList(count - change.getAddedCount(), count))));
+            }
+        } else {
+            if (change.isBounded()) {
+                // Only the area which was covered by the shapes which appeared or disappeared has to be redrawn
+                Rectangle dirty = getDirtyBounds(change.getMinX(), change.getMinY(),
+                        change.getMaxX() - change.getMinX(), change.getMaxY() - change.getMinY());
+                invalidateShapeCache(dirty);
+                repaint(dirty);
+            } else {
+                invalidateShapeCache();
+                repaint();
+            }
+            if (!selection.isEmpty()) {
+                // the selected shapes which were removed are no longer selected, the others may have been replaced
+                int count = dh.getShapeCount();
+                if (selection.length() > count) {
+                    selection.clear(count, selection.length());
+                }
+                selectionChanged();
+            }
+        }
+        if (dh.getShapeCount() > 0) {
+            setVisible(true);
+        }
+        metrics.inputChanged();
+    }
+
+    /**
+     * Undo the creation of new shapes or the clearing of the canvas.
+     * Can keep undoing until there are no actions left to undo.
      */
     public void undo() {
-        // If undo is null then there were no shapes to remove from the panel.
+        if (sharing != null) {
+            sharing.undo(); // undoes the last command of any window, when the server receives it
+            return;
+        }
+        // The change is drawn by drawingChanged(). If undo is null then there were no actions to undo.
         if (dh.undo() == null) {
             // show dialog box
             JOptionPane.showMessageDialog(this, "No action to undo");
         }
-        else {
-            repaint();
-        }
     }
 
     /**
-     * Redo the deletion of a shape.
-     * If shapes were removed using the undo() function then they can be re-added until
-     * there are no more shapes to re-add.
+     * Redo an undone action.
+     * If actions were undone using the undo() function then they can be redone until
+     * there are no more actions to redo.
      */
     public void redoShape() {
-        // If redo is null then there are no more shapes to be re-added to the panel.
+        if (sharing != null) {
+            sharing.redo();
+            return;
+        }
+        // The change is drawn by drawingChanged(). If redo is null then there are no more actions to redo.
         if (dh.redo() == null) {
             // show dialog box
             JOptionPane.showMessageDialog(this, "No action to redo");
         }
-        else {
-            repaint();
-        }
     }
 
 
@@ -0,0 +1,155 @@
+package view;
+
+import model.DrawingFile;
+import model.Shape;
+import model.ShapeStore;
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The DrawingRasterizer draws drawing files into images without a window, so it also works
+ * when the program runs headless. It draws with the same ShapeBatchRenderer and rendering
+ * hints as the DrawingPanel, on a white background.
+ * Many files can be rasterized at once, spread over one thread per processor. When there are
+ * fewer files than processors, each image is split into tiles which are drawn in parallel instead.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public class DrawingRasterizer {
+    private static final int MARGIN = 2; // pixels around the shapes covering the stroke width, when no size is given
+
+    private final ShapeBatchRenderer renderer;
+    private final TileRenderer tileRenderer; // draws the image in parallel tiles, or null to draw on this thread
+
+    /**
+     * Create a new DrawingRasterizer which draws on the calling thread.
+     * A rasterizer must only be used by one thread at a time.
+     */
+    public DrawingRasterizer() {
+        this(false);
+    }
+
+    /**
+     * Create a new DrawingRasterizer. A rasterizer must only be used by one thread at a time.
+     * @param tiled true to draw each image in parallel tiles, giving the same pixels.
+     */
+    public DrawingRasterizer(boolean tiled) {
+        renderer = new ShapeBatchRenderer();
+        tileRenderer = tiled ? new TileRenderer() : null;
+    }
+
+    /**
+     * Draw every shape of a store into a new image.
+     * @param store the shapes to draw, lowest z-order first.
+     * @param width width of the image, or 0 to fit the shapes.
+     * @param height height of the image, or 0 to fit the shapes.
+     * @return the image.
+     */
+    public BufferedImage render(ShapeStore store, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            // Fit the image to the bottom right corner of the shapes, like a panel showing the whole drawing
+            int maxX = 0;
+            int maxY = 0;
+            for (int i = 0; i < store.size(); i++) {
+                Shape shape = store.get(i);
+                maxX = Math.max(maxX, shape.getX() + shape.getWidth());
+                maxY = Math.max(maxY, shape.getY() + shape.getHeight());
+            }
+            width = width > 0 ? width : maxX + MARGIN;
+            height = height > 0 ? height : maxY + MARGIN;
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, width, height);
+        List<Shape> shapes = new AbstractList<Shape>() {
+            @Override
+            public Shape get(int i) {
+                return store.get(i);
+            }
+
+            @Override
+            public int size() {
+                return store.size();
+            }
+        };
+        if (tileRenderer != null) {
+            tileRenderer.render(image, new Rectangle(0, 0, width, height), shapes);
+        } else {
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            renderer.render(g2d, shapes);
+        }
+        g2d.dispose();
+        return image;
+    }
+
+    /**
+     * Read a drawing file and write it as a PNG image.
+     * @param input the drawing file.
+     * @param output the PNG file to write.
+     * @param width width of the image, or 0 to fit the shapes.
+     * @param height height of the image, or 0 to fit the shapes.
+     * @throws IOException if a file cannot be read or written.
+     */
+    public void renderFile(Path input, Path output, int width, int height) throws IOException {
+        BufferedImage image = render(DrawingFile.read(input), width, height);
+        if (!ImageIO.write(image, "png", output.toFile())) {
+            throw new IOException("No PNG image writer available");
+        }
+    }
+
+    /**
+     * Rasterize many drawing files concurrently, using one thread per processor.
+     * Errors are reported for each file and do not stop the other files.
+     * @param inputs the drawing files.
+     * @param outputs the PNG file to write for each drawing file.
+     * @param width width of the images, or 0 to fit each drawing.
+     * @param height height of the images, or 0 to fit each drawing.
+     * @return the number of files which could not be rasterized.
+     */
+    public static int renderFiles(List<Path> inputs, List<Path> outputs, int width, int height) {
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), Math.max(inputs.size(), 1));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // Files alone cannot keep every processor busy, so split each image into tiles as well
+        boolean tiled = inputs.size() < Runtime.getRuntime().availableProcessors();
+        // One rasterizer per thread, since the renderer keeps the batch being drawn
+        ThreadLocal<DrawingRasterizer> rasterizers = ThreadLocal.withInitial(() -> new DrawingRasterizer(tiled));
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            Path input = inputs.get(i);
+            Path output = outputs.get(i);
+            results.add(executor.submit(() -> {
+                rasterizers.get().renderFile(input, output, width, height);
+                return null;
+            }));
+        }
+        int failures = 0;
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                results.get(i).get();
+            } catch (ExecutionException e) {
+                System.err.println("Could not render " + inputs.get(i) + ": " + e.getCause().getMessage());
+                failures++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures += results.size() - i;
+                break;
+            }
+        }
+        executor.shutdownNow();
+        return failures;
+    }
+}
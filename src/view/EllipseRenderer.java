@@ -0,0 +1,49 @@
+package view;
+
+import model.Shape;
+import java.awt.geom.Path2D;
+
+/**
+ * Draws an ellipse fitted into its bounding box, with a filled interior.
+ * The ellipse is appended as the same four cubic curves which Ellipse2D is drawn with, worked out
+ * straight from the shape's bounding box, so no path iterator is created for each ellipse.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+class EllipseRenderer implements ShapeRenderer {
+    // Distance of the control points of a cubic curve approximating a quarter of a circle, as in Ellipse2D
+    private static final double CONTROL = 0.5522847498307933;
+    private static final double NEAR = 0.5 - CONTROL * 0.5; // control points as a fraction of the width or height
+    private static final double FAR = 0.5 + CONTROL * 0.5;
+
+    @Override
+    public void appendOutline(Shape shape, Path2D outline) {
+        appendEllipse(shape, outline);
+    }
+
+    @Override
+    public boolean isFilled() {
+        return true;
+    }
+
+    @Override
+    public void appendFill(Shape shape, Path2D fill) {
+        appendEllipse(shape, fill);
+    }
+
+    /**
+     * Append the ellipse as four curves, one quarter at a time clockwise from its right edge.
+     */
+    private void appendEllipse(Shape shape, Path2D path) {
+        double x = shape.getX();
+        double y = shape.getY();
+        double w = shape.getWidth();
+        double h = shape.getHeight();
+        path.moveTo(x + w, y + 0.5 * h);
+        path.curveTo(x + w, y + FAR * h, x + FAR * w, y + h, x + 0.5 * w, y + h);
+        path.curveTo(x + NEAR * w, y + h, x, y + FAR * h, x, y + 0.5 * h);
+        path.curveTo(x, y + NEAR * h, x + NEAR * w, y, x + 0.5 * w, y);
+        path.curveTo(x + FAR * w, y, x + w, y + NEAR * h, x + w, y + 0.5 * h);
+        path.closePath();
+    }
+}
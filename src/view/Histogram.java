@@ -0,0 +1,107 @@
+package view;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of durations with one bucket per power of two microseconds, so recording a value
+ * is a few arithmetic operations and needs no allocation. Bucket 0 holds durations below 2 microseconds,
+ * bucket i holds durations from 2^i up to 2^(i+1) microseconds, and the last bucket holds everything longer.
+ * Values are recorded by a single thread; other threads may read slightly out of date values.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+class Histogram {
+    static final int BUCKETS = 24; // the last bucket starts at about 8 seconds
+
+    private final long[] counts = new long[BUCKETS];
+    private volatile long count;
+    private volatile long totalNanos;
+    private volatile long maxNanos;
+    private volatile long lastNanos;
+
+    /**
+     * Add a duration to the histogram.
+     * @param nanos the duration in nanoseconds.
+     */
+    void record(long nanos) {
+        long micros = Math.max(nanos / 1000, 1);
+        int bucket = Math.min(63 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+        counts[bucket]++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        lastNanos = nanos;
+        count++; // written last, so a reader which sees the count also sees the bucket
+    }
+
+    /**
+     * Remove every recorded duration.
+     */
+    void clear() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+        lastNanos = 0;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    long getLastMicros() {
+        return lastNanos / 1000;
+    }
+
+    long getMaxMicros() {
+        return maxNanos / 1000;
+    }
+
+    long getMeanMicros() {
+        long n = count;
+        return n == 0 ? 0 : totalNanos / n / 1000;
+    }
+
+    /**
+     * Estimate a percentile of the recorded durations.
+     * @param percentile the percentile, from 0 to 100.
+     * @return the upper limit of the bucket holding the percentile in microseconds, at most the longest
+     * duration, or 0 if nothing was recorded.
+     */
+    long getPercentileMicros(double percentile) {
+        long[] snapshot = getCounts();
+        long total = 0;
+        for (long c : snapshot) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                // the longest duration is a tighter limit when it lies in the same bucket
+                return Math.min(bucketLimitMicros(i), getMaxMicros());
+            }
+        }
+        return getMaxMicros();
+    }
+
+    /**
+     * Get a copy of the number of durations in each bucket.
+     * @return count of each bucket.
+     */
+    long[] getCounts() {
+        return counts.clone();
+    }
+
+    /**
+     * Get the upper limit of a bucket.
+     * @param bucket the bucket number.
+     * @return the shortest duration in microseconds which is above the bucket.
+     */
+    static long bucketLimitMicros(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 2L << bucket;
+    }
+}
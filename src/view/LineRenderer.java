@@ -0,0 +1,28 @@
+package view;
+
+import model.Shape;
+import java.awt.geom.Path2D;
+
+/**
+ * Draws a line as a single path segment.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+class LineRenderer implements ShapeRenderer {
+
+    @Override
+    public void appendOutline(Shape shape, Path2D outline) {
+        outline.moveTo(shape.getStartX(), shape.getStartY());
+        outline.lineTo(shape.getEndX(), shape.getEndY());
+    }
+
+    @Override
+    public boolean isFilled() {
+        return false;
+    }
+
+    @Override
+    public void appendFill(Shape shape, Path2D fill) {
+        // a line has no interior
+    }
+}
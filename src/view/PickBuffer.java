@@ -0,0 +1,315 @@
+package view;
+
+import model.DrawingHandler;
+import model.Shape;
+import model.ShapeType;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The PickBuffer finds the topmost shape under a pixel of the panel without searching the drawing.
+ * It is an offscreen image the size of the panel in which the shapes are drawn like in the cached image,
+ * but without anti aliasing and with each shape in a colour which is its position in the drawing plus one,
+ * so every pixel holds the topmost shape covering it, or 0 if there is none. Borders are drawn PICK_RADIUS
+ * pixels wider on each side, so lines and crosses can be picked without hitting them exactly.
+ * <p>
+ * The buffer is kept up to date alongside the cached image: committed shapes are drawn straight into it and
+ * areas which the cached image redraws are marked as out of date. Out of date tiles are only redrawn when a
+ * pixel inside them is picked, so painting never waits for the buffer and a pick costs one tile at most.
+ * The shape found in the buffer is then confirmed with its exact geometry.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+class PickBuffer {
+    static final int NONE = -1; // returned when no shape is picked
+    static final int PICK_RADIUS = 3; // pixels around a border which still pick the shape
+
+    private static final int TILE_SIZE = 64; // pixels along each side of the tiles which are redrawn separately
+    private static final int CODES = 0xFFFFFF; // shape positions which fit into the colour of a pixel
+    // Pixels around a shape's bounding box which its drawing can cover, matching the panel's margin
+    private static final int MARGIN = PICK_RADIUS + 2;
+
+    private final ShapeRenderer[] renderers; // renderer for each ShapeType, indexed by ordinal
+    private final Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO); // reused for every shape
+    private BufferedImage image; // shape position plus one for every pixel, TYPE_INT_RGB
+    private int[] pixels; // the data of the image
+    private boolean[] dirtyTiles = new boolean[0]; // true for every tile which must be redrawn before picking
+    private int columns; // number of tiles across the image
+
+    /**
+     * Create an empty pick buffer, which is sized by setSize().
+     */
+    PickBuffer() {
+        renderers = new ShapeRenderer[ShapeType.values().length];
+        renderers[ShapeType.LINE.ordinal()] = new LineRenderer();
+        renderers[ShapeType.RECTANGLE.ordinal()] = new RectangleRenderer();
+        renderers[ShapeType.ELLIPSE.ordinal()] = new EllipseRenderer();
+        renderers[ShapeType.DIAGONAL_CROSS.ordinal()] = new DiagonalCrossRenderer();
+    }
+
+    /**
+     * Match the size of the panel. A new size makes the whole buffer out of date.
+     * @param width width of the panel.
+     * @param height height of the panel.
+     */
+    void setSize(int width, int height) {
+        if (image != null && image.getWidth() == width && image.getHeight() == height) {
+            return;
+        }
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        dirtyTiles = new boolean[columns * ((height + TILE_SIZE - 1) / TILE_SIZE)];
+        invalidate();
+    }
+
+    /**
+     * Mark the whole buffer as out of date, after shapes were removed or the viewport changed.
+     */
+    void invalidate() {
+        Arrays.fill(dirtyTiles, true);
+    }
+
+    /**
+     * Mark part of the buffer as out of date.
+     * @param region the area of the panel which no longer matches the shapes.
+     */
+    void invalidate(Rectangle region) {
+        if (image == null) {
+            return;
+        }
+        region = region.intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+        if (region.isEmpty()) {
+            return;
+        }
+        for (int row = region.y / TILE_SIZE; row <= (region.y + region.height - 1) / TILE_SIZE; row++) {
+            for (int column = region.x / TILE_SIZE; column <= (region.x + region.width - 1) / TILE_SIZE; column++) {
+                dirtyTiles[row * columns + column] = true;
+            }
+        }
+    }
+
+    /**
+     * Draw a newly committed shape on top of the buffer.
+     * @param shape the shape which was added to the drawing.
+     * @param index position of the shape in the drawing.
+     * @param viewport maps the coordinates of the shape to pixels of the panel.
+     */
+    void append(Shape shape, int index, Viewport viewport) {
+        if (image == null) {
+            return;
+        }
+        Rectangle bounds = getBounds(shape, viewport)
+                .intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+        if (bounds.isEmpty()) {
+            return;
+        }
+        if (isDot(shape, viewport.getScale())) {
+            fillDot(bounds, shape, index, viewport);
+            return;
+        }
+        Graphics2D g2d = createGraphics(bounds, viewport);
+        draw(g2d, shape, index);
+        g2d.dispose();
+    }
+
+    /**
+     * Find the topmost shape whose exact geometry is within PICK_RADIUS pixels of a pixel.
+     * The drawn shapes can differ from their exact geometry by up to a pixel at their edges, so the shapes
+     * found at the pixel and its eight neighbours are the candidates, and the topmost of them which passes
+     * its exact hit test is picked.
+     * @param x x coordinate on the panel.
+     * @param y y coordinate on the panel.
+     * @param dh the drawing shown by the panel.
+     * @param viewport maps the coordinates of the shapes to pixels of the panel.
+     * @return position of the shape in the drawing, or NONE if there is no shape at the pixel.
+     */
+    int pick(int x, int y, DrawingHandler dh, Viewport viewport) {
+        if (image == null || x < 0 || y < 0 || x >= image.getWidth() || y >= image.getHeight()) {
+            return NONE;
+        }
+        Point2D.Double point = viewport.toDrawing(x, y);
+        double tolerance = PICK_RADIUS / viewport.getScale();
+        List<Shape> shapes = dh.getShapes();
+        int picked = NONE;
+        boolean covered = false; // true if any of the pixels is covered by a shape
+        for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, image.getHeight() - 1); ny++) {
+            for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, image.getWidth() - 1); nx++) {
+                int code = read(nx, ny, dh, viewport);
+                if (code == 0) {
+                    continue;
+                }
+                covered = true;
+                // Drawings with more shapes than there are colours share each colour between several shapes,
+                // the topmost of them is checked first
+                for (int index = code - 1 + Math.max(shapes.size() - code, 0) / CODES * CODES;
+                     index > picked; index -= CODES) {
+                    if (index < shapes.size() && shapes.get(index).hitTest(point.x, point.y, tolerance)) {
+                        picked = index;
+                    }
+                }
+            }
+        }
+        if (picked != NONE || !covered) {
+            return picked;
+        }
+        // A shape is close to the point but hidden underneath others, so check the few shapes around the point
+        int radius = (int) Math.ceil(tolerance) + 1;
+        int[] indexes = dh.getShapeIndexesIn((int) Math.floor(point.x) - radius, (int) Math.floor(point.y) - radius,
+                2 * radius, 2 * radius);
+        for (int i = indexes.length - 1; i >= 0; i--) {
+            if (shapes.get(indexes[i]).hitTest(point.x, point.y, tolerance)) {
+                return indexes[i];
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Read one pixel of the buffer, redrawing its tile first if it is out of date.
+     * @param x x coordinate on the panel.
+     * @param y y coordinate on the panel.
+     * @param dh the drawing shown by the panel.
+     * @param viewport maps the coordinates of the shapes to pixels of the panel.
+     * @return position plus one of the topmost shape drawn at the pixel, possibly shared with other shapes,
+     *         or 0 if there is none.
+     */
+    private int read(int x, int y, DrawingHandler dh, Viewport viewport) {
+        int tile = (y / TILE_SIZE) * columns + x / TILE_SIZE;
+        if (dirtyTiles[tile]) {
+            drawTile(tile, dh, viewport);
+            dirtyTiles[tile] = false;
+        }
+        return pixels[y * image.getWidth() + x] & CODES;
+    }
+
+    /**
+     * Redraw one tile of the buffer from the stored shapes.
+     * @param tile the tile, numbered row by row.
+     * @param dh the drawing shown by the panel.
+     * @param viewport maps the coordinates of the shapes to pixels of the panel.
+     */
+    private void drawTile(int tile, DrawingHandler dh, Viewport viewport) {
+        Rectangle region = new Rectangle(tile % columns * TILE_SIZE, tile / columns * TILE_SIZE, TILE_SIZE, TILE_SIZE)
+                .intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+        int width = image.getWidth();
+        for (int y = region.y; y < region.y + region.height; y++) {
+            Arrays.fill(pixels, y * width + region.x, y * width + region.x + region.width, 0); // no shape
+        }
+        Rectangle area = viewport.toDrawing(region);
+        // the border is half a unit of the drawing plus MARGIN pixels wide outside the bounding box
+        int margin = (int) Math.ceil(MARGIN / viewport.getScale()) + 1;
+        int[] indexes = dh.getShapeIndexesIn(area.x - margin, area.y - margin,
+                area.width + 2 * margin, area.height + 2 * margin);
+        List<Shape> shapes = dh.getShapes();
+        double scale = viewport.getScale();
+        Graphics2D g2d = createGraphics(region, viewport);
+        // Unlike in the cached image, dots stay in z-order with the other shapes, so the topmost shape is picked
+        for (int index : indexes) {
+            Shape shape = shapes.get(index);
+            if (isDot(shape, scale)) {
+                fillDot(region, shape, index, viewport);
+            } else {
+                draw(g2d, shape, index);
+            }
+        }
+        g2d.dispose();
+    }
+
+    /**
+     * Create graphics which draw the shapes into part of the buffer.
+     * Pixels are covered if the point of the drawing they show is inside a shape, as found by
+     * Viewport.toDrawing(), so the buffer agrees with the exact hit tests.
+     * @param region the part of the buffer to draw into.
+     * @param viewport maps the coordinates of the shapes to pixels of the panel.
+     * @return the graphics, which must be disposed.
+     */
+    private Graphics2D createGraphics(Rectangle region, Viewport viewport) {
+        Graphics2D g2d = image.createGraphics();
+        g2d.clip(region);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+        // pixels are filled when their centre is inside a shape, and pixel x shows the drawing at x
+        g2d.translate(0.5, 0.5);
+        viewport.applyTo(g2d);
+        // one unit of the drawing plus PICK_RADIUS pixels on each side
+        g2d.setStroke(new BasicStroke((float) (1 + 2 * PICK_RADIUS / viewport.getScale())));
+        return g2d;
+    }
+
+    /**
+     * Draw a shape with its border and interior in the colour of its position.
+     * @param g2d graphics created by createGraphics().
+     * @param shape the shape to draw.
+     * @param index position of the shape in the drawing.
+     */
+    private void draw(Graphics2D g2d, Shape shape, int index) {
+        ShapeRenderer renderer = renderers[shape.getType().ordinal()];
+        g2d.setColor(new Color(index % CODES + 1));
+        path.reset();
+        renderer.appendOutline(shape, path);
+        g2d.draw(path);
+        if (renderer.isFilled()) {
+            path.reset();
+            renderer.appendFill(shape, path);
+            g2d.fill(path);
+        }
+    }
+
+    /**
+     * Write the pixels of a shape which is drawn as a dot, covering the pixels under its bounds like the DotRenderer
+     * and PICK_RADIUS pixels around them.
+     * @param region the part of the buffer being redrawn, nothing outside of it is changed.
+     * @param shape the shape drawn as a dot.
+     * @param index position of the shape in the drawing.
+     * @param viewport maps the coordinates of the shape to pixels of the panel.
+     */
+    private void fillDot(Rectangle region, Shape shape, int index, Viewport viewport) {
+        int x0 = (int) Math.floor(viewport.toScreenX(shape.getX()));
+        int y0 = (int) Math.floor(viewport.toScreenY(shape.getY()));
+        int x1 = Math.max((int) Math.ceil(viewport.toScreenX(shape.getX() + shape.getWidth())), x0 + 1);
+        int y1 = Math.max((int) Math.ceil(viewport.toScreenY(shape.getY() + shape.getHeight())), y0 + 1);
+        // PICK_RADIUS pixels around the dot also pick the shape, like around the borders of other shapes
+        x0 = Math.max(x0 - PICK_RADIUS, region.x);
+        y0 = Math.max(y0 - PICK_RADIUS, region.y);
+        x1 = Math.min(x1 + PICK_RADIUS, region.x + region.width);
+        y1 = Math.min(y1 + PICK_RADIUS, region.y + region.height);
+        int code = index % CODES + 1;
+        for (int y = y0; y < y1; y++) {
+            Arrays.fill(pixels, y * image.getWidth() + x0, y * image.getWidth() + Math.max(x1, x0), code | 0xFF000000);
+        }
+    }
+
+    /**
+     * Check whether a shape is drawn as a dot at a zoom.
+     * @param shape the shape.
+     * @param scale pixels per unit of the drawing.
+     * @return true if the shape is smaller than DotRenderer.DOT_SIZE pixels in both directions when zoomed out.
+     */
+    private static boolean isDot(Shape shape, double scale) {
+        return scale < 1 && shape.getWidth() * scale < DotRenderer.DOT_SIZE
+                && shape.getHeight() * scale < DotRenderer.DOT_SIZE;
+    }
+
+    /**
+     * Find the pixels of the buffer which drawing a shape can cover.
+     * @param shape the shape.
+     * @param viewport maps the coordinates of the shape to pixels of the panel.
+     * @return the area of the panel.
+     */
+    private static Rectangle getBounds(Shape shape, Viewport viewport) {
+        Rectangle bounds = viewport.toScreen(shape.getX(), shape.getY(), shape.getWidth(), shape.getHeight());
+        int margin = (int) Math.ceil(MARGIN * Math.max(1, viewport.getScale()));
+        bounds.grow(margin, margin);
+        return bounds;
+    }
+}
@@ -0,0 +1,43 @@
+package view;
+
+import model.Shape;
+import java.awt.geom.Path2D;
+
+/**
+ * Draws a rectangle as a closed path around its bounding box, with a filled interior.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+class RectangleRenderer implements ShapeRenderer {
+
+    @Override
+    public void appendOutline(Shape shape, Path2D outline) {
+        appendRect(shape, outline);
+    }
+
+    @Override
+    public boolean isFilled() {
+        return true;
+    }
+
+    @Override
+    public void appendFill(Shape shape, Path2D fill) {
+        appendRect(shape, fill);
+    }
+
+    /**
+     * Append the bounding box of the shape as a clockwise closed path,
+     * so that overlapping rectangles in one path are filled as their union.
+     */
+    private void appendRect(Shape shape, Path2D path) {
+        int x = shape.getX();
+        int y = shape.getY();
+        int right = x + shape.getWidth();
+        int bottom = y + shape.getHeight();
+        path.moveTo(x, y);
+        path.lineTo(right, y);
+        path.lineTo(right, bottom);
+        path.lineTo(x, bottom);
+        path.closePath();
+    }
+}
@@ -0,0 +1,256 @@
+package view;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * The RenderMetrics class measures how responsive a DrawingPanel is: how long each frame takes to paint,
+ * how many shapes each frame draws and skips, how often the mouse is dragged, and how long it takes
+ * for an input event to be painted. It also keeps the shape and undo counts of the drawing.
+ * <p>
+ * Measurements are recorded by the event dispatch thread with a couple of clock reads per frame or
+ * event and no allocation, so they can always be left on. They are read through the
+ * RenderMetricsMXBean interface over JMX and by the panel's on-canvas overlay.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public class RenderMetrics implements RenderMetricsMXBean {
+    public static final String OBJECT_NAME = "vectordrawing:type=RenderMetrics";
+
+    private static final long RATE_WINDOW_NANOS = 1_000_000_000L; // window for the drag event rate
+
+    private final Histogram frameTimes = new Histogram();
+    private final Histogram eventToPaint = new Histogram();
+    private volatile long lastFrameShapesDrawn;
+    private volatile long lastFrameShapesCulled;
+    private volatile long totalShapesDrawn;
+    private volatile long totalShapesCulled;
+    private volatile long dragEvents;
+    private volatile long coalescedDragEvents;
+    private volatile double dragEventsPerSecond;
+    private volatile int shapeCount;
+    private volatile int undoCount;
+    private volatile int redoCount;
+    private volatile boolean resetRequested; // set by reset(), applied by the event dispatch thread
+
+    // Only used by the event dispatch thread
+    private long pendingInputNanos; // time of the oldest input event which has not been painted, 0 if none
+    private long rateWindowStart;
+    private long rateWindowEvents;
+
+    /**
+     * Publish the metrics on the platform MBean server under OBJECT_NAME.
+     * Problems are reported but do not stop the program, since the metrics are optional.
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            System.err.println("Could not publish render metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Record a painted frame. Any input event waiting to be painted counts as painted by this frame.
+     * @param startNanos System.nanoTime() when painting started.
+     * @param shapesDrawn shapes drawn for this frame.
+     * @param shapesCulled shapes skipped for this frame because they are outside the redrawn area.
+     * @param shapes visible shapes in the drawing.
+     * @param undos actions which can be undone.
+     * @param redos actions which can be redone.
+     */
+    void frameFinished(long startNanos, int shapesDrawn, int shapesCulled, int shapes, int undos, int redos) {
+        long now = System.nanoTime();
+        applyReset();
+        frameTimes.record(now - startNanos);
+        if (pendingInputNanos != 0) {
+            eventToPaint.record(now - pendingInputNanos);
+            pendingInputNanos = 0;
+        }
+        lastFrameShapesDrawn = shapesDrawn;
+        lastFrameShapesCulled = shapesCulled;
+        totalShapesDrawn += shapesDrawn;
+        totalShapesCulled += shapesCulled;
+        shapeCount = shapes;
+        undoCount = undos;
+        redoCount = redos;
+    }
+
+    /**
+     * Record an input event which changes what is painted, such as a drag updating the shape being drawn.
+     * The time until the next frame is recorded as its event to paint latency.
+     */
+    void inputChanged() {
+        if (pendingInputNanos == 0) {
+            pendingInputNanos = System.nanoTime(); // later events are painted by the same frame
+        }
+    }
+
+    /**
+     * Record a mouseDragged event.
+     * @param coalesced true if the event was merged into a later update of the shape being drawn.
+     */
+    void dragEvent(boolean coalesced) {
+        applyReset();
+        long now = System.nanoTime();
+        dragEvents++;
+        if (coalesced) {
+            coalescedDragEvents++;
+        }
+        if (rateWindowEvents == 0 || now - rateWindowStart > 2 * RATE_WINDOW_NANOS) {
+            // a new drag, the time since the last drag does not count
+            rateWindowStart = now;
+            rateWindowEvents = 0;
+        }
+        rateWindowEvents++;
+        if (now - rateWindowStart >= RATE_WINDOW_NANOS) {
+            dragEventsPerSecond = rateWindowEvents * 1e9 / (now - rateWindowStart);
+            rateWindowStart = now;
+            rateWindowEvents = 0;
+        }
+    }
+
+    private void applyReset() {
+        if (resetRequested) {
+            resetRequested = false;
+            frameTimes.clear();
+            eventToPaint.clear();
+            totalShapesDrawn = 0;
+            totalShapesCulled = 0;
+            dragEvents = 0;
+            coalescedDragEvents = 0;
+            dragEventsPerSecond = 0;
+            rateWindowEvents = 0;
+        }
+    }
+
+    @Override
+    public long getFrameCount() {
+        return frameTimes.getCount();
+    }
+
+    @Override
+    public long getLastFrameMicros() {
+        return frameTimes.getLastMicros();
+    }
+
+    @Override
+    public long getMeanFrameMicros() {
+        return frameTimes.getMeanMicros();
+    }
+
+    @Override
+    public long getMaxFrameMicros() {
+        return frameTimes.getMaxMicros();
+    }
+
+    @Override
+    public long getFrameMicrosP50() {
+        return frameTimes.getPercentileMicros(50);
+    }
+
+    @Override
+    public long getFrameMicrosP95() {
+        return frameTimes.getPercentileMicros(95);
+    }
+
+    @Override
+    public long getFrameMicrosP99() {
+        return frameTimes.getPercentileMicros(99);
+    }
+
+    @Override
+    public long[] getFrameTimeHistogram() {
+        return frameTimes.getCounts();
+    }
+
+    @Override
+    public long[] getHistogramBucketLimitsMicros() {
+        long[] limits = new long[Histogram.BUCKETS];
+        for (int i = 0; i < limits.length; i++) {
+            limits[i] = Histogram.bucketLimitMicros(i);
+        }
+        return limits;
+    }
+
+    @Override
+    public long getLastFrameShapesDrawn() {
+        return lastFrameShapesDrawn;
+    }
+
+    @Override
+    public long getLastFrameShapesCulled() {
+        return lastFrameShapesCulled;
+    }
+
+    @Override
+    public long getTotalShapesDrawn() {
+        return totalShapesDrawn;
+    }
+
+    @Override
+    public long getTotalShapesCulled() {
+        return totalShapesCulled;
+    }
+
+    @Override
+    public long getDragEventCount() {
+        return dragEvents;
+    }
+
+    @Override
+    public long getCoalescedDragEventCount() {
+        return coalescedDragEvents;
+    }
+
+    @Override
+    public double getDragEventsPerSecond() {
+        return dragEventsPerSecond;
+    }
+
+    @Override
+    public long getEventToPaintCount() {
+        return eventToPaint.getCount();
+    }
+
+    @Override
+    public long getEventToPaintMeanMicros() {
+        return eventToPaint.getMeanMicros();
+    }
+
+    @Override
+    public long getEventToPaintP95Micros() {
+        return eventToPaint.getPercentileMicros(95);
+    }
+
+    @Override
+    public long getEventToPaintMaxMicros() {
+        return eventToPaint.getMaxMicros();
+    }
+
+    @Override
+    public long[] getEventToPaintHistogram() {
+        return eventToPaint.getCounts();
+    }
+
+    @Override
+    public int getShapeCount() {
+        return shapeCount;
+    }
+
+    @Override
+    public int getUndoCount() {
+        return undoCount;
+    }
+
+    @Override
+    public int getRedoCount() {
+        return redoCount;
+    }
+
+    @Override
+    public void reset() {
+        resetRequested = true;
+    }
+}
@@ -0,0 +1,137 @@
+package view;
+
+/**
+ * The management interface of RenderMetrics, published over JMX so the responsiveness of
+ * a running drawing program can be watched with tools such as JConsole.
+ * Durations are in microseconds. Histograms have one bucket per power of two microseconds,
+ * with the upper limit of each bucket given by getHistogramBucketLimitsMicros().
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public interface RenderMetricsMXBean {
+
+    /**
+     * @return number of frames painted.
+     */
+    long getFrameCount();
+
+    /**
+     * @return time taken by the last paintComponent() call.
+     */
+    long getLastFrameMicros();
+
+    /**
+     * @return mean time taken by paintComponent().
+     */
+    long getMeanFrameMicros();
+
+    /**
+     * @return longest time taken by paintComponent().
+     */
+    long getMaxFrameMicros();
+
+    /**
+     * @return time within which half of the frames were painted.
+     */
+    long getFrameMicrosP50();
+
+    /**
+     * @return time within which 95% of the frames were painted.
+     */
+    long getFrameMicrosP95();
+
+    /**
+     * @return time within which 99% of the frames were painted.
+     */
+    long getFrameMicrosP99();
+
+    /**
+     * @return number of frames in each bucket of paint times.
+     */
+    long[] getFrameTimeHistogram();
+
+    /**
+     * @return upper limit of each histogram bucket.
+     */
+    long[] getHistogramBucketLimitsMicros();
+
+    /**
+     * @return shapes drawn for the last frame, including shapes drawn onto the cached image since the frame before.
+     */
+    long getLastFrameShapesDrawn();
+
+    /**
+     * @return shapes skipped for the last frame because they are outside the redrawn area.
+     */
+    long getLastFrameShapesCulled();
+
+    /**
+     * @return shapes drawn by every frame.
+     */
+    long getTotalShapesDrawn();
+
+    /**
+     * @return shapes skipped by every frame because they are outside the redrawn area.
+     */
+    long getTotalShapesCulled();
+
+    /**
+     * @return number of mouseDragged events.
+     */
+    long getDragEventCount();
+
+    /**
+     * @return number of mouseDragged events which were merged into a later update of the shape being drawn.
+     */
+    long getCoalescedDragEventCount();
+
+    /**
+     * @return mouseDragged events per second, measured over the last second of dragging.
+     */
+    double getDragEventsPerSecond();
+
+    /**
+     * @return number of input events whose effect has been painted.
+     */
+    long getEventToPaintCount();
+
+    /**
+     * @return mean time from an input event changing the drawing to the change being painted.
+     */
+    long getEventToPaintMeanMicros();
+
+    /**
+     * @return time within which 95% of input events were painted.
+     */
+    long getEventToPaintP95Micros();
+
+    /**
+     * @return longest time from an input event changing the drawing to the change being painted.
+     */
+    long getEventToPaintMaxMicros();
+
+    /**
+     * @return number of input events in each bucket of event to paint times.
+     */
+    long[] getEventToPaintHistogram();
+
+    /**
+     * @return number of visible shapes in the drawing at the last frame.
+     */
+    int getShapeCount();
+
+    /**
+     * @return number of actions which could be undone at the last frame.
+     */
+    int getUndoCount();
+
+    /**
+     * @return number of actions which could be redone at the last frame.
+     */
+    int getRedoCount();
+
+    /**
+     * Start every measurement again. Takes effect at the next frame or event.
+     */
+    void reset();
+}
@@ -0,0 +1,274 @@
+package view;
+
+import model.Shape;
+import model.ShapeType;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Path2D;
+import java.util.List;
+
+/**
+ * The ShapeBatchRenderer draws shapes in z-order while grouping consecutive shapes of the
+ * same type, border colour and fill colour into one path. Each group is drawn with one
+ * draw call for the borders and one fill call for the interiors, and the graphics colour
+ * is only changed when it differs from the previous group.
+ * Filled shapes draw their border before their interior, so a group of filled shapes is ended
+ * before a shape which overlaps an earlier shape of the group, keeping the z-order correct.
+ * When zoomed out, borders thinner than a pixel can be drawn without anti aliasing, which is faster
+ * and keeps them visible.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public class ShapeBatchRenderer {
+    private final ShapeRenderer[] renderers; // renderer for each ShapeType, indexed by ordinal
+    private final Path2D.Float outline; // borders of the current batch
+    private final Path2D.Float fill; // interiors of the current batch
+    private final ColourCache colourCache; // Color for each palette index
+
+    private Graphics2D g2d; // graphics being drawn to, between begin() and end()
+    private ShapeRenderer batchRenderer; // renderer of the current batch, null if the batch is empty
+    private ShapeType batchType;
+    private int batchBorder; // palette index of the border colour of the batch
+    private int batchFill; // palette index of the fill colour of the batch
+    private boolean batchOverlapCheck; // true if shapes overlapping the batch must start a new batch
+    private int batchMinX, batchMinY, batchMaxX, batchMaxY; // bounds of the current batch
+    private int currentColour; // palette index of the colour last set on the graphics, -1 if unknown
+    private boolean thinOutlines; // true if borders are drawn without anti aliasing
+
+    private int drawCalls; // draw and fill calls since begin()
+    private int colourChanges; // colour changes since begin()
+    private int shapeCount; // shapes added since begin()
+
+    /**
+     * Create a new ShapeBatchRenderer with a renderer for every type of shape.
+     */
+    public ShapeBatchRenderer() {
+        renderers = new ShapeRenderer[ShapeType.values().length];
+        renderers[ShapeType.LINE.ordinal()] = new LineRenderer();
+        renderers[ShapeType.RECTANGLE.ordinal()] = new RectangleRenderer();
+        renderers[ShapeType.ELLIPSE.ordinal()] = new EllipseRenderer();
+        renderers[ShapeType.DIAGONAL_CROSS.ordinal()] = new DiagonalCrossRenderer();
+        outline = new Path2D.Float(Path2D.WIND_NON_ZERO);
+        fill = new Path2D.Float(Path2D.WIND_NON_ZERO);
+        colourCache = new ColourCache();
+    }
+
+    /**
+     * Draw a list of shapes in order.
+     * @param g2d the 2d graphics instance which is used to paint the shapes.
+     * @param shapes the shapes to draw, lowest z-order first.
+     */
+    public void render(Graphics2D g2d, List<Shape> shapes) {
+        begin(g2d);
+        for (Shape shape : shapes) {
+            add(shape);
+        }
+        end();
+    }
+
+    /**
+     * Draw a single shape.
+     * @param g2d the 2d graphics instance which is used to paint the shape.
+     * @param shape the shape to draw.
+     */
+    public void render(Graphics2D g2d, Shape shape) {
+        begin(g2d);
+        add(shape);
+        end();
+    }
+
+    /**
+     * Start drawing shapes to a graphics instance. Shapes are added with add() and
+     * any remaining batch is drawn by end().
+     * @param g2d the 2d graphics instance which is used to paint the shapes.
+     */
+    public void begin(Graphics2D g2d) {
+        this.g2d = g2d;
+        currentColour = -1; // the colour of the graphics is unknown
+        drawCalls = 0;
+        colourChanges = 0;
+        shapeCount = 0;
+    }
+
+    /**
+     * Choose whether borders are drawn without anti aliasing, for borders thinner than a pixel.
+     * Interiors are always drawn with the anti aliasing set on the graphics.
+     * @param thin true to draw borders without anti aliasing.
+     */
+    public void setThinOutlines(boolean thin) {
+        thinOutlines = thin;
+    }
+
+    /**
+     * Add the next shape in z-order. The shape is drawn when its batch ends.
+     * @param shape the shape to draw.
+     */
+    public void add(Shape shape) {
+        add(shape, batchRenderer != null && !continuesBatch(shape));
+    }
+
+    /**
+     * Add the next shape in z-order, with the batches decided by the caller.
+     * Used to draw part of a list of shapes with the batches given by planBatches() for the whole list,
+     * so every part is drawn exactly as it would be when drawing the whole list.
+     * @param shape the shape to draw.
+     * @param startsBatch true if the shape starts a new batch.
+     */
+    void add(Shape shape, boolean startsBatch) {
+        if (startsBatch) {
+            flush();
+        }
+        ShapeRenderer renderer = extendBatch(shape);
+        renderer.appendOutline(shape, outline);
+        if (renderer.isFilled()) {
+            renderer.appendFill(shape, fill);
+        }
+        shapeCount++;
+    }
+
+    /**
+     * Find the batch which add() puts each shape of a list into, without drawing anything.
+     * @param shapes the shapes to draw, lowest z-order first.
+     * @return the batch number of each shape, counting from 0.
+     */
+    int[] planBatches(List<Shape> shapes) {
+        int[] batches = new int[shapes.size()];
+        int batch = -1;
+        batchRenderer = null;
+        for (int i = 0; i < batches.length; i++) {
+            Shape shape = shapes.get(i);
+            if (batchRenderer == null || !continuesBatch(shape)) {
+                batchRenderer = null;
+                batch++;
+            }
+            extendBatch(shape);
+            batches[i] = batch;
+        }
+        batchRenderer = null;
+        return batches;
+    }
+
+    /**
+     * Finish drawing, drawing the last batch.
+     */
+    public void end() {
+        flush();
+        g2d = null;
+    }
+
+    /**
+     * Get the number of draw and fill calls made since begin().
+     * @return number of draw calls.
+     */
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    /**
+     * Get the number of times the graphics colour was changed since begin().
+     * @return number of colour changes.
+     */
+    public int getColourChanges() {
+        return colourChanges;
+    }
+
+    /**
+     * Get the number of shapes added since begin().
+     * @return number of shapes drawn.
+     */
+    public int getShapeCount() {
+        return shapeCount;
+    }
+
+    /**
+     * Add a shape's bounds to the current batch, or start a new batch with the shape if there is none.
+     * @return the renderer for the shape.
+     */
+    private ShapeRenderer extendBatch(Shape shape) {
+        ShapeRenderer renderer = renderers[shape.getType().ordinal()];
+        int minX = shape.getX();
+        int minY = shape.getY();
+        int maxX = minX + shape.getWidth();
+        int maxY = minY + shape.getHeight();
+        if (batchRenderer == null) {
+            // start a new batch with this shape
+            batchRenderer = renderer;
+            batchType = shape.getType();
+            batchBorder = shape.getBorderColourIndex();
+            batchFill = shape.getFillColourIndex();
+            // with the same border and fill colour the drawing order inside the batch does not matter
+            batchOverlapCheck = renderer.isFilled() && batchBorder != batchFill;
+            batchMinX = minX;
+            batchMinY = minY;
+            batchMaxX = maxX;
+            batchMaxY = maxY;
+        } else {
+            batchMinX = Math.min(batchMinX, minX);
+            batchMinY = Math.min(batchMinY, minY);
+            batchMaxX = Math.max(batchMaxX, maxX);
+            batchMaxY = Math.max(batchMaxY, maxY);
+        }
+        return renderer;
+    }
+
+    /**
+     * Check whether a shape can join the current batch without changing the result.
+     */
+    private boolean continuesBatch(Shape shape) {
+        if (shape.getType() != batchType || shape.getBorderColourIndex() != batchBorder) {
+            return false;
+        }
+        if (!batchRenderer.isFilled()) {
+            return true;
+        }
+        if (shape.getFillColourIndex() != batchFill) {
+            return false;
+        }
+        int minX = shape.getX();
+        int minY = shape.getY();
+        int maxX = minX + shape.getWidth();
+        int maxY = minY + shape.getHeight();
+        // the border of this shape must not be covered by the interior of an earlier shape in the batch,
+        // the extra pixel accounts for the stroke width
+        return !batchOverlapCheck || minX > batchMaxX + 1 || maxX < batchMinX - 1
+                || minY > batchMaxY + 1 || maxY < batchMinY - 1;
+    }
+
+    /**
+     * Draw the current batch and start an empty one.
+     */
+    private void flush() {
+        if (batchRenderer == null) {
+            return;
+        }
+        setColour(batchBorder);
+        if (thinOutlines) {
+            Object antialiasing = g2d.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+            g2d.draw(outline);
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialiasing);
+        } else {
+            g2d.draw(outline);
+        }
+        drawCalls++;
+        if (batchRenderer.isFilled()) {
+            setColour(batchFill);
+            g2d.fill(fill);
+            drawCalls++;
+        }
+        outline.reset();
+        fill.reset();
+        batchRenderer = null;
+    }
+
+    /**
+     * Set the graphics colour, unless it is already set to that colour.
+     */
+    private void setColour(int colour) {
+        if (colour != currentColour) {
+            g2d.setColor(colourCache.get(colour));
+            currentColour = colour;
+            colourChanges++;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package view;
+
+import model.Shape;
+import java.awt.geom.Path2D;
+
+/**
+ * A ShapeRenderer knows how to turn one type of shape into geometry that can be drawn.
+ * The geometry is appended to a path, so that many shapes of the same type and colour
+ * can be drawn with a single draw or fill call.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+interface ShapeRenderer {
+
+    /**
+     * Append the border of the shape to a path.
+     * @param shape the shape which is being drawn.
+     * @param outline the path holding the borders of the current batch.
+     */
+    void appendOutline(Shape shape, Path2D outline);
+
+    /**
+     * Whether shapes of this type have an interior that is painted in the fill colour.
+     * @return true if appendFill() should be used.
+     */
+    boolean isFilled();
+
+    /**
+     * Append the interior of the shape to a path.
+     * @param shape the shape which is being drawn.
+     * @param fill the path holding the interiors of the current batch.
+     */
+    void appendFill(Shape shape, Path2D fill);
+}
@@ -0,0 +1,217 @@
+package view;
+
+import model.Shape;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The TileRenderer draws shapes into an image in parallel. The image is split into square tiles,
+ * every tile is given only the shapes whose bounds overlap it, and the tiles are drawn on a
+ * ForkJoinPool into separate images which are then copied into the target image.
+ * <p>
+ * The result is the same as drawing all shapes with one ShapeBatchRenderer: the batches are planned
+ * once for the whole list, every tile starts with the pixels of the target image underneath it,
+ * and every tile draws the same batches, limited to the shapes which can touch the tile.
+ * The rasterizer normally splits curves where they cross the clip, which moves the edges of ellipses
+ * cut by a tile border by a fraction of a pixel. DrawingMain turns this off with the
+ * sun.java2d.renderer.clip.subdivider property so that the tiles match exactly.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+public class TileRenderer {
+    private static final int TILE_SIZE = 256; // width and height of a tile in pixels
+    private static final int MARGIN = 2; // extra pixels around a shape's bounds covering the stroke width and anti aliasing
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Create a new TileRenderer which draws on the common ForkJoinPool.
+     */
+    public TileRenderer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a new TileRenderer which draws on the given pool.
+     * @param pool the pool which runs the tiles.
+     */
+    public TileRenderer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Draw shapes with anti aliasing on top of part of an image.
+     * @param target the image to draw into.
+     * @param region the part of the image to draw, nothing outside of it is changed.
+     * @param shapes the shapes to draw, lowest z-order first.
+     */
+    public void render(BufferedImage target, Rectangle region, List<Shape> shapes) {
+        render(target, region, shapes, null);
+    }
+
+    /**
+     * Draw shapes with anti aliasing on top of part of an image, zoomed and panned by a viewport.
+     * When zoomed out, borders are drawn without anti aliasing.
+     * @param target the image to draw into.
+     * @param region the part of the image to draw, nothing outside of it is changed.
+     * @param shapes the shapes to draw, lowest z-order first.
+     * @param viewport maps the coordinates of the shapes to pixels of the image, or null if they are the same.
+     */
+    void render(BufferedImage target, Rectangle region, List<Shape> shapes, Viewport viewport) {
+        render(target, region, shapes, viewport, false);
+    }
+
+    /**
+     * Draw shapes on top of part of an image, zoomed and panned by a viewport, optionally as a quick draft.
+     * @param target the image to draw into.
+     * @param region the part of the image to draw, nothing outside of it is changed.
+     * @param shapes the shapes to draw, lowest z-order first.
+     * @param viewport maps the coordinates of the shapes to pixels of the image, or null if they are the same.
+     * @param draft true to draw everything without anti aliasing.
+     */
+    void render(BufferedImage target, Rectangle region, List<Shape> shapes, Viewport viewport, boolean draft) {
+        region = region.intersection(new Rectangle(0, 0, target.getWidth(), target.getHeight()));
+        if (region.isEmpty() || shapes.isEmpty()) {
+            return;
+        }
+        double scale = viewport == null ? 1 : viewport.getScale();
+        int margin = (int) Math.ceil(MARGIN * Math.max(1, scale)); // the stroke is as wide as one unit of the drawing
+        int columns = (region.width + TILE_SIZE - 1) / TILE_SIZE;
+        int rows = (region.height + TILE_SIZE - 1) / TILE_SIZE;
+        int[] batches = new ShapeBatchRenderer().planBatches(shapes);
+        // Give every tile the positions of the shapes which overlap it, in z-order
+        int[][] tileShapes = new int[columns * rows][];
+        int[] tileCounts = new int[columns * rows];
+        for (int i = 0; i < shapes.size(); i++) {
+            Shape shape = shapes.get(i);
+            // the pixels under the shape's bounds, as found by Viewport.toScreen() without creating a Rectangle
+            int minX = shape.getX();
+            int minY = shape.getY();
+            int maxX = minX + shape.getWidth();
+            int maxY = minY + shape.getHeight();
+            if (viewport != null) {
+                minX = (int) Math.floor(viewport.toScreenX(shape.getX()));
+                minY = (int) Math.floor(viewport.toScreenY(shape.getY()));
+                maxX = (int) Math.ceil(viewport.toScreenX((double) shape.getX() + shape.getWidth()));
+                maxY = (int) Math.ceil(viewport.toScreenY((double) shape.getY() + shape.getHeight()));
+            }
+            int column0 = Math.max(Math.floorDiv(minX - margin - region.x, TILE_SIZE), 0);
+            int row0 = Math.max(Math.floorDiv(minY - margin - region.y, TILE_SIZE), 0);
+            int column1 = Math.min(Math.floorDiv(maxX + margin - region.x, TILE_SIZE), columns - 1);
+            int row1 = Math.min(Math.floorDiv(maxY + margin - region.y, TILE_SIZE), rows - 1);
+            for (int row = row0; row <= row1; row++) {
+                for (int column = column0; column <= column1; column++) {
+                    int tile = row * columns + column;
+                    if (tileShapes[tile] == null) {
+                        tileShapes[tile] = new int[16];
+                    } else if (tileCounts[tile] == tileShapes[tile].length) {
+                        tileShapes[tile] = Arrays.copyOf(tileShapes[tile], tileCounts[tile] * 2);
+                    }
+                    tileShapes[tile][tileCounts[tile]++] = i;
+                }
+            }
+        }
+        BufferedImage[] tileImages = new BufferedImage[columns * rows];
+        pool.invoke(new TileTask(target, region, viewport, draft, columns, shapes, batches, tileShapes, tileCounts,
+                tileImages, 0, tileImages.length));
+        // Copy the drawn tiles into the target, replacing the pixels underneath
+        for (int tile = 0; tile < tileImages.length; tile++) {
+            if (tileImages[tile] != null) {
+                target.getRaster().setRect(region.x + tile % columns * TILE_SIZE, region.y + tile / columns * TILE_SIZE,
+                        tileImages[tile].getRaster());
+            }
+        }
+    }
+
+    /**
+     * Draws a range of tiles, splitting the range in half until a single tile is left.
+     */
+    private static class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L; // never serialized, only run by the fork join pool
+
+        private final BufferedImage target;
+        private final Rectangle region;
+        private final Viewport viewport; // null if shapes are drawn without zooming or panning
+        private final boolean draft; // true if shapes are drawn without anti aliasing
+        private final int columns;
+        private final List<Shape> shapes;
+        private final int[] batches; // batch number of each shape
+        private final int[][] tileShapes; // positions of the shapes overlapping each tile
+        private final int[] tileCounts; // number of shapes overlapping each tile
+        private final BufferedImage[] tileImages; // the drawn image of each tile, null if it has no shapes
+        private final int from;
+        private final int to;
+
+        private TileTask(BufferedImage target, Rectangle region, Viewport viewport, boolean draft, int columns,
+                         List<Shape> shapes, int[] batches, int[][] tileShapes, int[] tileCounts,
+                         BufferedImage[] tileImages, int from, int to) {
+            this.target = target;
+            this.region = region;
+            this.viewport = viewport;
+            this.draft = draft;
+            this.columns = columns;
+            this.shapes = shapes;
+            this.batches = batches;
+            this.tileShapes = tileShapes;
+            this.tileCounts = tileCounts;
+            this.tileImages = tileImages;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileTask(target, region, viewport, draft, columns, shapes, batches, tileShapes, tileCounts,
+                                tileImages, from, middle),
+                        new TileTask(target, region, viewport, draft, columns, shapes, batches, tileShapes, tileCounts,
+                                tileImages, middle, to));
+            } else if (tileCounts[from] > 0) {
+                renderTile(from);
+            }
+        }
+
+        /**
+         * Draw the shapes overlapping one tile into a new image holding a copy of the target's pixels.
+         */
+        private void renderTile(int tile) {
+            int x = region.x + tile % columns * TILE_SIZE;
+            int y = region.y + tile / columns * TILE_SIZE;
+            int width = Math.min(TILE_SIZE, region.x + region.width - x);
+            int height = Math.min(TILE_SIZE, region.y + region.height - y);
+            ColorModel colorModel = target.getColorModel();
+            BufferedImage image = new BufferedImage(colorModel, target.getRaster().createCompatibleWritableRaster(width, height),
+                    colorModel.isAlphaPremultiplied(), null);
+            image.getRaster().setRect(-x, -y, target.getRaster());
+            Graphics2D g2d = image.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    draft ? RenderingHints.VALUE_ANTIALIAS_OFF : RenderingHints.VALUE_ANTIALIAS_ON);
+            g2d.translate(-x, -y);
+            g2d.clipRect(x, y, width, height);
+            ShapeBatchRenderer renderer = new ShapeBatchRenderer();
+            if (viewport != null) {
+                viewport.applyTo(g2d);
+                renderer.setThinOutlines(viewport.getScale() < 1);
+            }
+            renderer.begin(g2d);
+            int[] positions = tileShapes[tile];
+            int batch = -1;
+            for (int i = 0; i < tileCounts[tile]; i++) {
+                int position = positions[i];
+                renderer.add(shapes.get(position), batches[position] != batch);
+                batch = batches[position];
+            }
+            renderer.end();
+            g2d.dispose();
+            tileImages[tile] = image;
+        }
+    }
+}
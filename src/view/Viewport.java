@@ -0,0 +1,188 @@
+package view;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+
+/**
+ * The Viewport class maps the coordinates of a drawing to the pixels of a panel, with a scale for zooming
+ * and an offset for panning: a point x of the drawing is shown at pixel x * scale + offsetX.
+ * Shapes are stored in drawing coordinates, so zooming and panning never change the drawing.
+ * Panning moves the offset by whole pixels, so the pixels already drawn can be moved instead of drawn again.
+ *
+ * @author Lesleyjane J https://github.com/lesleyjanej
+ */
+class Viewport {
+    static final double MIN_SCALE = 1.0 / 1024; // furthest zoom out
+    static final double MAX_SCALE = 64; // furthest zoom in
+
+    private double scale = 1; // pixels per unit of the drawing
+    private double offsetX; // pixel where the x origin of the drawing is shown
+    private double offsetY; // pixel where the y origin of the drawing is shown
+
+    /**
+     * Create a copy of the viewport, which is not changed by later zooming and panning of this one.
+     * @return the copy.
+     */
+    Viewport copy() {
+        Viewport copy = new Viewport();
+        copy.scale = scale;
+        copy.offsetX = offsetX;
+        copy.offsetY = offsetY;
+        return copy;
+    }
+
+    /**
+     * Get the zoom of the viewport.
+     * @return pixels per unit of the drawing, 1 when not zoomed.
+     */
+    double getScale() {
+        return scale;
+    }
+
+    /**
+     * Check whether drawing coordinates are the same as panel coordinates.
+     * @return true if the viewport is neither zoomed nor panned.
+     */
+    boolean isIdentity() {
+        return scale == 1 && offsetX == 0 && offsetY == 0;
+    }
+
+    /**
+     * Get the pixel column showing an x coordinate of the drawing.
+     * @param x x coordinate of the drawing.
+     * @return x coordinate on the panel.
+     */
+    double toScreenX(double x) {
+        return x * scale + offsetX;
+    }
+
+    /**
+     * Get the pixel row showing a y coordinate of the drawing.
+     * @param y y coordinate of the drawing.
+     * @return y coordinate on the panel.
+     */
+    double toScreenY(double y) {
+        return y * scale + offsetY;
+    }
+
+    /**
+     * Get the x coordinate of the drawing shown at a pixel column, rounded to a whole unit.
+     * @param x x coordinate on the panel.
+     * @return x coordinate of the drawing.
+     */
+    int toDrawingX(int x) {
+        return (int) Math.floor((x - offsetX) / scale + 0.5);
+    }
+
+    /**
+     * Get the y coordinate of the drawing shown at a pixel row, rounded to a whole unit.
+     * @param y y coordinate on the panel.
+     * @return y coordinate of the drawing.
+     */
+    int toDrawingY(int y) {
+        return (int) Math.floor((y - offsetY) / scale + 0.5);
+    }
+
+    /**
+     * Get the point of the drawing shown at a pixel, like toDrawingX() and toDrawingY() but without rounding.
+     * @param x x coordinate on the panel.
+     * @param y y coordinate on the panel.
+     * @return the point in drawing coordinates.
+     */
+    Point2D.Double toDrawing(int x, int y) {
+        return new Point2D.Double((x - offsetX) / scale, (y - offsetY) / scale);
+    }
+
+    /**
+     * Find the pixels showing a rectangle of the drawing.
+     * @param x left edge of the rectangle in the drawing.
+     * @param y top edge of the rectangle in the drawing.
+     * @param width width of the rectangle in the drawing.
+     * @param height height of the rectangle in the drawing.
+     * @return the smallest rectangle of whole pixels covering it.
+     */
+    Rectangle toScreen(int x, int y, int width, int height) {
+        int minX = (int) Math.floor(toScreenX(x));
+        int minY = (int) Math.floor(toScreenY(y));
+        int maxX = (int) Math.ceil(toScreenX((double) x + width));
+        int maxY = (int) Math.ceil(toScreenY((double) y + height));
+        return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * Find the part of the drawing shown by a rectangle of pixels.
+     * @param region the pixels of the panel.
+     * @return the smallest rectangle of whole drawing units covering them.
+     */
+    Rectangle toDrawing(Rectangle region) {
+        int minX = (int) Math.floor((region.x - offsetX) / scale);
+        int minY = (int) Math.floor((region.y - offsetY) / scale);
+        int maxX = (int) Math.ceil((region.x + region.width - offsetX) / scale);
+        int maxY = (int) Math.ceil((region.y + region.height - offsetY) / scale);
+        return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * Make a graphics instance draw in drawing coordinates.
+     * @param g2d graphics which draws in panel coordinates.
+     */
+    void applyTo(Graphics2D g2d) {
+        if (!isIdentity()) {
+            g2d.translate(offsetX, offsetY);
+            g2d.scale(scale, scale);
+        }
+    }
+
+    /**
+     * Zoom in or out, keeping the point of the drawing under a pixel in place.
+     * @param factor amount to multiply the scale by, above 1 to zoom in.
+     * @param x x coordinate on the panel which stays in place.
+     * @param y y coordinate on the panel which stays in place.
+     * @return true if the scale changed, false if it was already at its limit.
+     */
+    boolean zoom(double factor, int x, int y) {
+        double newScale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * factor));
+        if (newScale == scale) {
+            return false;
+        }
+        offsetX = x - (x - offsetX) * newScale / scale;
+        offsetY = y - (y - offsetY) * newScale / scale;
+        scale = newScale;
+        return true;
+    }
+
+    /**
+     * Move the drawing by whole pixels.
+     * @param dx pixels to move the drawing right.
+     * @param dy pixels to move the drawing down.
+     */
+    void pan(int dx, int dy) {
+        offsetX += dx;
+        offsetY += dy;
+    }
+
+    /**
+     * Zoom and pan so that a rectangle of the drawing fills a panel, centred, without zooming in further
+     * than one pixel per unit.
+     * @param bounds the rectangle of the drawing to show.
+     * @param width width of the panel.
+     * @param height height of the panel.
+     */
+    void fit(Rectangle bounds, int width, int height) {
+        scale = Math.min((double) width / Math.max(bounds.width, 1), (double) height / Math.max(bounds.height, 1));
+        scale = Math.max(MIN_SCALE, Math.min(1, scale));
+        // whole pixel offsets, so later pans keep the pixels of the drawing in the same place
+        offsetX = Math.round((width - bounds.width * scale) / 2 - bounds.x * scale);
+        offsetY = Math.round((height - bounds.height * scale) / 2 - bounds.y * scale);
+    }
+
+    /**
+     * Show the drawing without zooming or panning.
+     */
+    void reset() {
+        scale = 1;
+        offsetX = 0;
+        offsetY = 0;
+    }
+}